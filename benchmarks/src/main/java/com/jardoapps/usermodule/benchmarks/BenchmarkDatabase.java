@@ -0,0 +1,178 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.jdbc.Work;
+
+import com.jardoapps.usermodule.jpa.entities.LogInRecordEntity;
+import com.jardoapps.usermodule.jpa.entities.PasswordResetTokenEntity;
+import com.jardoapps.usermodule.jpa.entities.UserEntity;
+
+/**
+ * Creates an in-memory HSQLDB database with the usermodule-jpa schema for
+ * the benchmarks which run real queries.
+ */
+class BenchmarkDatabase {
+
+	private BenchmarkDatabase() {
+	}
+
+	static SessionFactory create(String name) {
+		return build("jdbc:hsqldb:mem:" + name, "create");
+	}
+
+	/**
+	 * Opens a database in the temporary directory, whose tables are stored on
+	 * disk (HSQLDB CACHED tables), so that they can be larger than the heap.
+	 * The database is kept for the following forks, the schema is created
+	 * only when it doesn't exist yet.
+	 */
+	static SessionFactory open(String name) {
+		File file = new File(new File(System.getProperty("java.io.tmpdir"), "usermodule-benchmarks"), name);
+		return build("jdbc:hsqldb:file:" + file.getPath()
+				+ ";hsqldb.default_table_type=cached;hsqldb.cache_rows=1000000;hsqldb.cache_size=1000000;hsqldb.log_data=false;shutdown=true", "update");
+	}
+
+	private static SessionFactory build(String url, String schemaAction) {
+		Configuration configuration = new Configuration();
+		configuration.setProperty("hibernate.connection.url", url);
+		configuration.setProperty("hibernate.connection.username", "sa");
+		configuration.setProperty("hibernate.connection.password", "");
+		configuration.setProperty("hibernate.connection.driver_class", "org.hsqldb.jdbcDriver");
+		configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+		configuration.setProperty("hibernate.hbm2ddl.auto", schemaAction);
+		configuration.addAnnotatedClass(UserEntity.class);
+		configuration.addAnnotatedClass(PasswordResetTokenEntity.class);
+		configuration.addAnnotatedClass(LogInRecordEntity.class);
+		return configuration.buildSessionFactory();
+	}
+
+	private static void doWork(SessionFactory sessionFactory, Work work) {
+		Session session = sessionFactory.openSession();
+		try {
+			session.beginTransaction();
+			session.doWork(work);
+			session.getTransaction().commit();
+		} finally {
+			session.close();
+		}
+	}
+
+	static int countUsers(SessionFactory sessionFactory) {
+		Session session = sessionFactory.openSession();
+		try {
+			return ((Number) session.createQuery("SELECT count(*) FROM UserEntity").getSingleResult()).intValue();
+		} finally {
+			session.close();
+		}
+	}
+
+	/**
+	 * Inserts confirmed users with ids 1 to count, named "user{id}" with
+	 * email "user{id}@example.com", by plain JDBC batches. Every batch is
+	 * committed, so that large tables don't need a huge transaction.
+	 */
+	static void insertUsers(SessionFactory sessionFactory, final int count) {
+		doWork(sessionFactory, new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				String sql = "INSERT INTO um_user (id, name, email, reg_date, confirmed, deleted, rank) VALUES (?, ?, ?, ?, true, false, 2)";
+				PreparedStatement statement = connection.prepareStatement(sql);
+				Timestamp now = new Timestamp(System.currentTimeMillis());
+				for (int id = 1; id <= count; id++) {
+					statement.setInt(1, id);
+					statement.setString(2, "user" + id);
+					statement.setString(3, "user" + id + "@example.com");
+					statement.setTimestamp(4, now);
+					statement.addBatch();
+					if (id % 10000 == 0) {
+						statement.executeBatch();
+						connection.commit();
+					}
+				}
+				if (count % 10000 != 0) {
+					statement.executeBatch();
+				}
+				statement.close();
+			}
+		});
+	}
+
+	/**
+	 * Inserts rowsPerUser password reset tokens (only the newest one valid)
+	 * and rowsPerUser log in records for every step-th of the users inserted
+	 * by {@link #insertUsers(SessionFactory, int)}.
+	 */
+	static void insertUserActivity(SessionFactory sessionFactory, final int userCount, final int step, final int rowsPerUser) {
+		doWork(sessionFactory, new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement tokens = connection
+						.prepareStatement("INSERT INTO um_password_reset_token (id, user_id, date_time, token_key, valid) VALUES (?, ?, ?, ?, ?)");
+				PreparedStatement records = connection
+						.prepareStatement("INSERT INTO um_login_record (id, user_id, date_time, ip, successful) VALUES (?, ?, ?, '127.0.0.1', true)");
+				long now = System.currentTimeMillis();
+				int batchSize = 0;
+				for (int userId = step; userId <= userCount; userId += step) {
+					for (int i = 0; i < rowsPerUser; i++) {
+						long id = (long) userId * rowsPerUser + i;
+						Timestamp time = new Timestamp(now - (rowsPerUser - i) * 60000L);
+
+						tokens.setLong(1, id);
+						tokens.setInt(2, userId);
+						tokens.setTimestamp(3, time);
+						tokens.setString(4, Long.toHexString(id));
+						tokens.setBoolean(5, i == rowsPerUser - 1);
+						tokens.addBatch();
+
+						records.setLong(1, id);
+						records.setInt(2, userId);
+						records.setTimestamp(3, time);
+						records.addBatch();
+						batchSize++;
+					}
+					if (batchSize >= 10000) {
+						tokens.executeBatch();
+						records.executeBatch();
+						connection.commit();
+						batchSize = 0;
+					}
+				}
+				if (batchSize > 0) {
+					tokens.executeBatch();
+					records.executeBatch();
+				}
+				tokens.close();
+				records.close();
+			}
+		});
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.jardoapps.usermodule.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jardoapps.usermodule.utils.EmailUtils;
+
+/**
+ * Measures the cost of classifying a log in identifier as an email address or
+ * a user name:
+ * 
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar EmailValidation -prof gc
+ * </pre>
+ * 
+ * The {@code regex} benchmark reproduces the check used before 0.2.0
+ * ({@link String#matches(String)}, which compiles the pattern on every call),
+ * {@code cachedPattern} uses a precompiled pattern.
+ * 
+ * @since 0.2.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailValidationBenchmark {
+
+	private static final Pattern EMAIL_PATTERN = Pattern.compile(EmailUtils.EMAIL_REGEX);
+
+	@Param({ "valid.user@example.co.uk", "valid_user123" })
+	private String identifier;
+
+	@Benchmark
+	public boolean regex() {
+		return identifier.matches(EmailUtils.EMAIL_REGEX);
+	}
+
+	@Benchmark
+	public boolean cachedPattern() {
+		return EMAIL_PATTERN.matcher(identifier).matches();
+	}
+
+	@Benchmark
+	public boolean isEmailValid() {
+		return EmailUtils.isEmailValid(identifier);
+	}
+
+}
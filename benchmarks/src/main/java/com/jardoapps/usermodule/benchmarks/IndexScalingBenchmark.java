@@ -0,0 +1,149 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jardoapps.usermodule.jpa.entities.PasswordResetTokenEntity;
+import com.jardoapps.usermodule.jpa.entities.UserEntity;
+
+/**
+ * Measures the indexed look ups at growing table sizes, their times should
+ * stay flat:
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar IndexScaling -p userCount=10000,1000000
+ * </pre>
+ *
+ * Every tenth user has five password reset tokens and five log in records.
+ * The schema is created by Hibernate from the entities, including their
+ * indexes. The tables are stored on disk in the temporary directory
+ * (directory usermodule-benchmarks, a few GB for 10 million users), they
+ * are filled by the first fork of each size and reused by the others.
+ *
+ * @since 0.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx4g", "-XX:+UseParallelGC" })
+public class IndexScalingBenchmark {
+
+	private static final int ACTIVITY_STEP = 10;
+
+	private static final int ACTIVITY_ROWS_PER_USER = 5;
+
+	private static final String NEWEST_LOG_IN_RECORDS = "SELECT r.time, r.ip, r.successful FROM LogInRecordEntity r WHERE r.userId = :userId ORDER BY r.time DESC";
+
+	@Param({ "10000", "100000", "1000000", "10000000" })
+	private int userCount;
+
+	private SessionFactory sessionFactory;
+
+	private EntityManager entityManager;
+
+	private final Random random = new Random(42);
+
+	@Setup
+	public void setUp() {
+		sessionFactory = BenchmarkDatabase.open("indexScaling" + userCount);
+		int existingUserCount = BenchmarkDatabase.countUsers(sessionFactory);
+		if (existingUserCount == 0) {
+			BenchmarkDatabase.insertUsers(sessionFactory, userCount);
+			BenchmarkDatabase.insertUserActivity(sessionFactory, userCount, ACTIVITY_STEP, ACTIVITY_ROWS_PER_USER);
+		} else if (existingUserCount != userCount) {
+			throw new IllegalStateException("Incomplete benchmark database with " + existingUserCount + " users, delete it and run again.");
+		}
+		entityManager = sessionFactory.createEntityManager();
+		System.gc();
+	}
+
+	@TearDown
+	public void tearDown() {
+		entityManager.close();
+		sessionFactory.close();
+	}
+
+	/**
+	 * Returns id of a random user with password reset tokens and log in
+	 * records.
+	 */
+	private int randomActiveUserId() {
+		return (random.nextInt(userCount / ACTIVITY_STEP) + 1) * ACTIVITY_STEP;
+	}
+
+	@Benchmark
+	public Object findByEmail() {
+		Query query = entityManager.createNamedQuery(UserEntity.QUERY_FIND_BY_EMAIL);
+		query.setParameter("email", "user" + randomActiveUserId() + "@example.com");
+		query.setMaxResults(1);
+		Object result = query.getSingleResult();
+		entityManager.clear();
+		return result;
+	}
+
+	@Benchmark
+	public Object findByName() {
+		Query query = entityManager.createNamedQuery(UserEntity.QUERY_FIND_BY_NAME);
+		query.setParameter("name", "user" + randomActiveUserId());
+		query.setMaxResults(1);
+		Object result = query.getSingleResult();
+		entityManager.clear();
+		return result;
+	}
+
+	@Benchmark
+	public Object getNewestToken() {
+		Query query = entityManager.createNamedQuery(PasswordResetTokenEntity.QUERY_FIND_NEWEST);
+		query.setParameter("email", "user" + randomActiveUserId() + "@example.com");
+		query.setMaxResults(1);
+		Object result = query.getSingleResult();
+		entityManager.clear();
+		return result;
+	}
+
+	@Benchmark
+	public Object newestLogInRecords() {
+		Query query = entityManager.createQuery(NEWEST_LOG_IN_RECORDS);
+		query.setParameter("userId", randomActiveUserId());
+		query.setMaxResults(ACTIVITY_ROWS_PER_USER);
+		return query.getResultList();
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.jpa.entities.UserEntity;
+
+/**
+ * Compares the per call cost of the two hottest DAO queries when they are
+ * created from a JPQL string and when they are created from the named
+ * queries declared on {@link UserEntity}:
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar NamedQuery
+ * </pre>
+ *
+ * The queries run against an in-memory HSQLDB database holding a single
+ * user, so the database round trip is as cheap as possible and the
+ * difference is dominated by the query creation.
+ *
+ * @since 0.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NamedQueryBenchmark {
+
+	private static final String FIND_BY_EMAIL = "FROM UserEntity u WHERE u.email = :email AND u.deleted = false";
+
+	private static final String GET_USER_PASSWORD = "SELECT u.passwordHash, u.passwordSalt, u.binaryPasswordHash, u.binaryPasswordSalt FROM UserEntity u WHERE u.id= :id AND u.deleted = false";
+
+	private static final String EMAIL = "user@domain.com";
+
+	private SessionFactory sessionFactory;
+
+	private EntityManager entityManager;
+
+	private int userId;
+
+	@Setup
+	public void setUp() {
+		sessionFactory = BenchmarkDatabase.create("namedQuery");
+
+		UserEntity user = new UserEntity();
+		user.setName("user");
+		user.setEmail(EMAIL);
+		user.setRegistrationDate(new Date());
+		user.setRegistrationConfirmed(true);
+		user.setPassword(new UserPassword(new byte[32], new byte[32]), true);
+
+		entityManager = sessionFactory.createEntityManager();
+		entityManager.getTransaction().begin();
+		entityManager.persist(user);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+		userId = user.getId();
+	}
+
+	@TearDown
+	public void tearDown() {
+		entityManager.close();
+		sessionFactory.close();
+	}
+
+	private Object findByEmail(Query query) {
+		query.setParameter("email", EMAIL);
+		query.setMaxResults(1);
+		Object result = query.getSingleResult();
+		entityManager.clear();
+		return result;
+	}
+
+	private Object getUserPassword(Query query) {
+		query.setParameter("id", userId);
+		return query.getSingleResult();
+	}
+
+	@Benchmark
+	public Object findByEmailString() {
+		return findByEmail(entityManager.createQuery(FIND_BY_EMAIL));
+	}
+
+	@Benchmark
+	public Object findByEmailNamed() {
+		return findByEmail(entityManager.createNamedQuery(UserEntity.QUERY_FIND_BY_EMAIL));
+	}
+
+	@Benchmark
+	public Object getUserPasswordString() {
+		return getUserPassword(entityManager.createQuery(GET_USER_PASSWORD));
+	}
+
+	@Benchmark
+	public Object getUserPasswordNamed() {
+		return getUserPassword(entityManager.createNamedQuery(UserEntity.QUERY_GET_PASSWORD));
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.jardoapps.usermodule.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jardoapps.usermodule.PasswordHasherSha256;
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.utils.HexUtils;
+
+/**
+ * Measures the cost of verifying a SHA-256 password hash. Run with the GC
+ * profiler to see the allocations per verification:
+ * 
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar PasswordVerification -prof gc
+ * </pre>
+ * 
+ * The {@code legacy} benchmark reproduces the verification used before 0.2.0
+ * (encoding the strings with {@link String#getBytes(String)}, converting the
+ * digest to a hexadecimal string and comparing it with
+ * {@link String#equalsIgnoreCase(String)}).
+ * 
+ * @since 0.2.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasswordVerificationBenchmark {
+
+	// password = 'password'
+	private static final String STORED_PASSWORD_HASH = "C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD";
+	private static final String STORED_PASSWORD_SALT = "7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008";
+
+	private PasswordHasherSha256 hasher;
+
+	private MessageDigest sha256;
+
+	private UserPassword storedPassword;
+
+	private String password;
+
+	@Setup
+	public void setUp() throws NoSuchAlgorithmException {
+		hasher = new PasswordHasherSha256();
+		sha256 = MessageDigest.getInstance("SHA-256");
+		storedPassword = new UserPassword(STORED_PASSWORD_HASH, STORED_PASSWORD_SALT);
+		password = "password";
+	}
+
+	@Benchmark
+	public boolean legacy() throws UnsupportedEncodingException {
+		sha256.reset();
+		sha256.update(storedPassword.getSalt().getBytes("UTF-16"));
+		String hash = HexUtils.toHex(sha256.digest(password.getBytes("UTF-16")));
+		return hash.equalsIgnoreCase(storedPassword.getHash());
+	}
+
+	@Benchmark
+	public boolean isPasswordValid() {
+		return hasher.isPasswordValid(password, storedPassword);
+	}
+
+}
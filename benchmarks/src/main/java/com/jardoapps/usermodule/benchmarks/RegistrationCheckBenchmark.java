@@ -0,0 +1,152 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jardoapps.usermodule.jpa.entities.UserEntity;
+
+/**
+ * Compares the registration checks which count the matching users with the
+ * existence checks and the combined user name and email check:
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar RegistrationCheck
+ * </pre>
+ *
+ * The users are stored in an in-memory HSQLDB table without any index on
+ * the email and name columns, the taken emails are picked uniformly at
+ * random.
+ *
+ * @since 0.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g", "-XX:+UseParallelGC" })
+public class RegistrationCheckBenchmark {
+
+	private static final String COUNT_BY_EMAIL = "SELECT count(*) FROM UserEntity u WHERE u.email = :email AND u.deleted = false";
+
+	private static final String COUNT_BY_NAME = "SELECT count(*) FROM UserEntity u WHERE u.name = :name AND u.deleted = false";
+
+	private static final String FREE_EMAIL = "free@example.com";
+
+	private static final String FREE_NAME = "free";
+
+	@Param({ "5000000" })
+	private int userCount;
+
+	private SessionFactory sessionFactory;
+
+	private EntityManager entityManager;
+
+	private final Random random = new Random(42);
+
+	@Setup
+	public void setUp() {
+		sessionFactory = BenchmarkDatabase.create("registrationCheck");
+		BenchmarkDatabase.insertUsers(sessionFactory, userCount);
+		entityManager = sessionFactory.createEntityManager();
+		System.gc();
+	}
+
+	@TearDown
+	public void tearDown() {
+		entityManager.close();
+		sessionFactory.close();
+	}
+
+	private String randomTakenEmail() {
+		return "user" + (random.nextInt(userCount) + 1) + "@example.com";
+	}
+
+	private boolean countByEmail(String email) {
+		Query query = entityManager.createQuery(COUNT_BY_EMAIL);
+		query.setParameter("email", email);
+		return (Long) query.getSingleResult() > 0;
+	}
+
+	private boolean countByName(String name) {
+		Query query = entityManager.createQuery(COUNT_BY_NAME);
+		query.setParameter("name", name);
+		return (Long) query.getSingleResult() > 0;
+	}
+
+	private boolean existsByEmail(String email) {
+		Query query = entityManager.createNamedQuery(UserEntity.QUERY_GET_ID_BY_EMAIL);
+		query.setParameter("email", email);
+		query.setMaxResults(1);
+		return !query.getResultList().isEmpty();
+	}
+
+	@Benchmark
+	public boolean takenEmailCount() {
+		return countByEmail(randomTakenEmail());
+	}
+
+	@Benchmark
+	public boolean takenEmailExists() {
+		return existsByEmail(randomTakenEmail());
+	}
+
+	@Benchmark
+	public boolean freeEmailCount() {
+		return countByEmail(FREE_EMAIL);
+	}
+
+	@Benchmark
+	public boolean freeEmailExists() {
+		return existsByEmail(FREE_EMAIL);
+	}
+
+	@Benchmark
+	public boolean freeNameAndEmailCounts() {
+		return countByName(FREE_NAME) || countByEmail(FREE_EMAIL);
+	}
+
+	@Benchmark
+	public Object freeNameAndEmailCombined() {
+		Query query = entityManager.createNamedQuery(UserEntity.QUERY_GET_REGISTRATION_CONFLICT);
+		query.setParameter("email", FREE_EMAIL);
+		query.setParameter("name", FREE_NAME);
+		return query.getSingleResult();
+	}
+
+}
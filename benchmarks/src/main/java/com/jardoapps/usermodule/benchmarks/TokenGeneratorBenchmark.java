@@ -0,0 +1,118 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.jardoapps.usermodule.benchmarks;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jardoapps.usermodule.utils.HexUtils;
+import com.jardoapps.usermodule.utils.SecureTokenGenerator;
+
+/**
+ * Measures the throughput of generating 32 byte tokens (password salts) from
+ * 1, 8 and 32 threads:
+ * 
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar TokenGenerator
+ * </pre>
+ * 
+ * The {@code shared} benchmarks use a single {@code SHA1PRNG} instance, which
+ * was used by {@code UserManager} before 0.2.0.
+ * 
+ * @since 0.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenGeneratorBenchmark {
+
+	private static final int TOKEN_LENGTH = 32;
+
+	private SecureRandom sharedRandom;
+
+	private SecureTokenGenerator tokenGenerator;
+
+	@Setup
+	public void setUp() throws NoSuchAlgorithmException {
+		sharedRandom = SecureRandom.getInstance("SHA1PRNG");
+		sharedRandom.nextBytes(new byte[1]);
+		tokenGenerator = new SecureTokenGenerator();
+	}
+
+	private String generateShared() {
+		byte[] bytes = new byte[TOKEN_LENGTH];
+		sharedRandom.nextBytes(bytes);
+		return HexUtils.toHex(bytes);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String shared1() {
+		return generateShared();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public String shared8() {
+		return generateShared();
+	}
+
+	@Benchmark
+	@Threads(32)
+	public String shared32() {
+		return generateShared();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String striped1() {
+		return tokenGenerator.generateToken(TOKEN_LENGTH);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public String striped8() {
+		return tokenGenerator.generateToken(TOKEN_LENGTH);
+	}
+
+	@Benchmark
+	@Threads(32)
+	public String striped32() {
+		return tokenGenerator.generateToken(TOKEN_LENGTH);
+	}
+
+}
@@ -0,0 +1,283 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.benchmarks;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import com.jardoapps.usermodule.EmailSender;
+import com.jardoapps.usermodule.EmailSenderDummyImpl;
+import com.jardoapps.usermodule.PasswordHasher;
+import com.jardoapps.usermodule.PasswordHasherPbkdf2;
+import com.jardoapps.usermodule.PasswordHasherSha256;
+import com.jardoapps.usermodule.ResultCode;
+import com.jardoapps.usermodule.SessionModel;
+import com.jardoapps.usermodule.SessionModelImpl;
+import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserImportListener;
+import com.jardoapps.usermodule.UserManagementPropertiesImpl;
+import com.jardoapps.usermodule.UserManager;
+import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.containers.ImportedUser;
+import com.jardoapps.usermodule.jpa.UserDatabaseModelJpa;
+import com.jardoapps.usermodule.jpa.UserDatabaseModelJpaPropertiesImpl;
+import com.jardoapps.usermodule.jpa.dao.LogInRecordEntityDao;
+import com.jardoapps.usermodule.jpa.dao.PasswordResetTokenEntityDao;
+import com.jardoapps.usermodule.jpa.dao.UserEntityDao;
+
+/**
+ * Measures the time of importing users by
+ * {@link UserManager#importUsers(Iterator, UserImportListener)} into an
+ * in-memory HSQLDB database, with and without JDBC batching, compared with
+ * registering the same number of users one by one:
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar UserImport -p threads=1,8 -p hasher=pbkdf2
+ * </pre>
+ *
+ * Every invocation imports {@value #USERS_PER_IMPORT} new users, so the
+ * table grows by that many users per iteration. The users are added by
+ * {@link UserDatabaseModelJpa} in Spring managed transactions, like in an
+ * application. Parameter jdbcBatchSize sets Hibernate property
+ * <code>hibernate.jdbc.batch_size</code> (0 turns JDBC batching off), the
+ * PBKDF2 hasher runs {@value #PBKDF2_ITERATIONS} iterations.
+ *
+ * @since 0.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g", "-XX:+UseParallelGC" })
+public class UserImportBenchmark {
+
+	private static final int USERS_PER_IMPORT = 10000;
+
+	private static final int PBKDF2_ITERATIONS = 1000;
+
+	@Configuration
+	@EnableTransactionManagement(proxyTargetClass = true)
+	public static class Config {
+
+		@Bean
+		public DataSource dataSource() {
+			return new DriverManagerDataSource("jdbc:hsqldb:mem:userImport", "sa", "");
+		}
+
+		@Bean
+		public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource, Environment environment) {
+			Properties properties = new Properties();
+			properties.put("hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+			properties.put("hibernate.hbm2ddl.auto", "create");
+			properties.put("hibernate.jdbc.batch_size", environment.getProperty("jdbcBatchSize"));
+
+			LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+			factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			factory.setDataSource(dataSource);
+			factory.setPackagesToScan("com.jardoapps.usermodule.jpa.entities");
+			factory.setJpaProperties(properties);
+			return factory;
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+			return new JpaTransactionManager(entityManagerFactory);
+		}
+
+		@Bean
+		public UserManagementPropertiesImpl userManagementProperties(Environment environment) {
+			UserManagementPropertiesImpl properties = new UserManagementPropertiesImpl();
+			properties.setUserImportBatchSize(Integer.parseInt(environment.getProperty("importBatchSize")));
+			properties.setUserImportThreads(Integer.parseInt(environment.getProperty("threads")));
+			properties.setPasswordHashIterations(PBKDF2_ITERATIONS);
+			return properties;
+		}
+
+		@Bean
+		public PasswordHasher passwordHasher(Environment environment) {
+			return "pbkdf2".equals(environment.getProperty("hasher")) ? new PasswordHasherPbkdf2() : new PasswordHasherSha256();
+		}
+
+		@Bean
+		public UserDatabaseModel userDatabaseModel() {
+			return new UserDatabaseModelJpa();
+		}
+
+		@Bean
+		public UserDatabaseModelJpaPropertiesImpl userDatabaseModelJpaProperties() {
+			return new UserDatabaseModelJpaPropertiesImpl();
+		}
+
+		@Bean
+		public UserEntityDao userEntityDao() {
+			return new UserEntityDao();
+		}
+
+		@Bean
+		public PasswordResetTokenEntityDao passwordResetTokenEntityDao() {
+			return new PasswordResetTokenEntityDao();
+		}
+
+		@Bean
+		public LogInRecordEntityDao logInRecordEntityDao() {
+			return new LogInRecordEntityDao();
+		}
+
+		@Bean
+		public EmailSender emailSender() {
+			return new EmailSenderDummyImpl();
+		}
+
+		@Bean
+		public SessionModel sessionModel() {
+			return new SessionModelImpl();
+		}
+
+		@Bean
+		public UserManager userManager() {
+			return new UserManager();
+		}
+	}
+
+	@Param({ "0", "50" })
+	private int jdbcBatchSize;
+
+	@Param({ "100", "1000" })
+	private int importBatchSize;
+
+	@Param({ "1" })
+	private int threads;
+
+	@Param({ "sha256" })
+	private String hasher;
+
+	private AnnotationConfigApplicationContext context;
+
+	private UserManager userManager;
+
+	private int nextUserNumber;
+
+	private final UserImportListener listener = new UserImportListener() {
+
+		@Override
+		public void importProgressed(int processedCount, int importedCount) {
+		}
+
+		@Override
+		public void userRejected(ImportedUser user, ResultCode reason) {
+			throw new IllegalStateException("User " + user.getEmail() + " rejected: " + reason);
+		}
+	};
+
+	@Setup
+	public void setUp() {
+		Map<String, Object> parameters = new HashMap<>();
+		parameters.put("jdbcBatchSize", jdbcBatchSize);
+		parameters.put("importBatchSize", importBatchSize);
+		parameters.put("threads", threads);
+		parameters.put("hasher", hasher);
+
+		context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", parameters));
+		context.register(Config.class);
+		context.refresh();
+
+		userManager = context.getBean(UserManager.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public int importUsers() {
+		final int first = nextUserNumber;
+		nextUserNumber += USERS_PER_IMPORT;
+
+		Iterator<ImportedUser> users = new Iterator<ImportedUser>() {
+
+			private int number = first;
+
+			@Override
+			public boolean hasNext() {
+				return number < first + USERS_PER_IMPORT;
+			}
+
+			@Override
+			public ImportedUser next() {
+				number++;
+				return new ImportedUser("user" + number + "@example.com", "user" + number, "password" + number, true, UserRanks.NORMAL_USER);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		return userManager.importUsers(users, listener);
+	}
+
+	@Benchmark
+	public int registerUsers() {
+		int first = nextUserNumber;
+		nextUserNumber += USERS_PER_IMPORT;
+
+		for (int number = first + 1; number <= first + USERS_PER_IMPORT; number++) {
+			ResultCode result = userManager.registerUser("user" + number + "@example.com", "user" + number, "password" + number, true);
+			if (result != ResultCode.OK) {
+				throw new IllegalStateException("User " + number + " not registered: " + result);
+			}
+		}
+		return USERS_PER_IMPORT;
+	}
+
+}
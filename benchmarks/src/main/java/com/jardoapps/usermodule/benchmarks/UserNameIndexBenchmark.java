@@ -0,0 +1,138 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jardoapps.usermodule.utils.PrefixIndex;
+
+/**
+ * Measures exact and prefix look ups in the in-memory user name index and
+ * prints its memory footprint:
+ * 
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar UserNameIndex
+ * </pre>
+ * 
+ * The names are generated from random syllables, most of them with a number
+ * appended, which gives realistic prefix sharing.
+ * 
+ * @since 0.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class UserNameIndexBenchmark {
+
+	private static final String[] SYLLABLES = { "ab", "al", "an", "ar", "ba", "be", "bo", "ca", "ce", "da", "de", "di", "el", "en", "er", "fa",
+			"fi", "ga", "ge", "ha", "he", "ia", "il", "in", "ja", "jo", "ka", "ke", "ki", "la", "le", "li", "lo", "ma", "me", "mi", "mo", "na", "ne",
+			"ni", "no", "ol", "on", "or", "pa", "pe", "ra", "re", "ri", "ro", "sa", "se", "si", "ta", "te", "ti", "to", "va", "ve", "vi", "xa", "ya",
+			"za", "ze" };
+
+	private static final int QUERY_COUNT = 1024;
+
+	@Param({ "10000000" })
+	private int nameCount;
+
+	private PrefixIndex index;
+
+	private final String[] existingNames = new String[QUERY_COUNT];
+
+	private final String[] missingNames = new String[QUERY_COUNT];
+
+	private final String[] prefixes = new String[QUERY_COUNT];
+
+	private int queryIndex;
+
+	private static String generateName(Random random) {
+		StringBuilder name = new StringBuilder();
+		int syllableCount = 2 + random.nextInt(2);
+		for (int i = 0; i < syllableCount; i++) {
+			name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+		}
+		if (random.nextInt(20) != 0) {
+			name.append(random.nextInt(100000));
+		}
+		return name.toString();
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+		PrefixIndex.Builder builder = new PrefixIndex.Builder();
+		long utf8Bytes = 0;
+		for (int i = 0; i < nameCount; i++) {
+			String name = generateName(random);
+			builder.add(name);
+			utf8Bytes += name.length();
+			if (i < QUERY_COUNT) {
+				existingNames[i] = name;
+				prefixes[i] = name.substring(0, 4);
+			}
+		}
+		index = builder.build();
+
+		for (int i = 0; i < QUERY_COUNT; i++) {
+			missingNames[i] = generateName(random) + "_";
+		}
+
+		long footprint = index.getMemoryFootprintBytes();
+		System.out.printf("%nNames: %d (%d distinct), UTF-8 size: %.1f MB, index footprint: %.1f MB (%.1f bytes per name)%n", nameCount,
+				index.size(), utf8Bytes / 1e6, footprint / 1e6, (double) footprint / index.size());
+	}
+
+	private int nextQuery() {
+		queryIndex = (queryIndex + 1) & (QUERY_COUNT - 1);
+		return queryIndex;
+	}
+
+	@Benchmark
+	public boolean containsExisting() {
+		return index.contains(existingNames[nextQuery()]);
+	}
+
+	@Benchmark
+	public boolean containsMissing() {
+		return index.contains(missingNames[nextQuery()]);
+	}
+
+	@Benchmark
+	public List<String> findByPrefix() {
+		return index.findByPrefix(prefixes[nextQuery()], 10);
+	}
+
+}
@@ -0,0 +1,41 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.util.concurrent.TimeUnit;
+
+import com.jardoapps.usermodule.containers.LogInRecord;
+
+/**
+ * A queue of log in records which are written into the database in the
+ * background. The methods have the same meaning as in
+ * {@link com.jardoapps.usermodule.utils.BatchingWorker}.
+ * 
+ * @since 0.2.0
+ */
+interface LogInRecordQueue {
+
+	boolean offer(LogInRecord record);
+
+	boolean offer(LogInRecord record, long timeout, TimeUnit unit) throws InterruptedException;
+
+	void shutdown(long timeoutMillis) throws InterruptedException;
+
+}
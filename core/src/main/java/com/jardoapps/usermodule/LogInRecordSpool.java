@@ -0,0 +1,463 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.containers.LogInRecord;
+
+/**
+ * A durable queue of log in records, backed by a memory-mapped file. Records
+ * are appended to the file by the logging in threads, which never wait for
+ * the database. A background thread replays them into the database in batches
+ * (see {@link UserDatabaseModel#makeLogInRecords(List)}) and moves the
+ * committed read position in the file header only after the database has
+ * accepted the batch. When the database fails, the batch is retried later.
+ * Records which haven't been replayed survive a restart of the application and
+ * are replayed by the next instance using the same file.
+ * <p>
+ * The file is used as a ring buffer. It consists of a header (magic number,
+ * version, committed read offset) followed by records. Each record consists
+ * of its length, CRC32 checksum and data (user id, success flag, time, ip
+ * address). A zero length marks the end of the records, a length of -1 means
+ * the next record is at the start of the ring. The end marker is written
+ * before the length of a new record, so a record is never visible before it
+ * has been completely written, and the checksum detects a record torn by an
+ * operating system crash.
+ * 
+ * @since 0.2.0
+ */
+class LogInRecordSpool implements LogInRecordQueue {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LogInRecordSpool.class);
+
+	private static final int MAGIC = 0x554d4c53;
+
+	private static final int VERSION = 1;
+
+	private static final int READ_OFFSET_POSITION = 8;
+
+	private static final int HEADER_SIZE = 16;
+
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	// user id, success flag, time and ip address length
+	private static final int FIXED_DATA_SIZE = 15;
+
+	private static final int END_MARKER = 0;
+
+	private static final int WRAP_MARKER = -1;
+
+	private static final int MARKER_SIZE = 4;
+
+	private static final int MIN_SIZE = 1024;
+
+	private static final long IDLE_POLL_MILLIS = 1000L;
+
+	private static final long RETRY_DELAY_MILLIS = 1000L;
+
+	private static final Charset IP_CHARSET = Charset.forName("UTF-8");
+
+	private final UserDatabaseModel databaseModel;
+
+	private final int batchSize;
+
+	private final long maxBatchDelayNanos;
+
+	private final RandomAccessFile file;
+
+	private final MappedByteBuffer buffer;
+
+	private final int capacity;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	private final Condition notFull = lock.newCondition();
+
+	// guarded by lock
+	private int readOffset;
+
+	// guarded by lock
+	private int writeOffset;
+
+	// number of records between the read and write offsets, guarded by lock
+	private int recordCount;
+
+	private volatile boolean running = true;
+
+	private final Thread thread;
+
+	private final Runnable loop = new Runnable() {
+		@Override
+		public void run() {
+			boolean failed = false;
+			while (running || (!failed && getRecordCount() > 0)) {
+				failed = !replayBatch();
+				if (failed && running) {
+					try {
+						Thread.sleep(RETRY_DELAY_MILLIS);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+			}
+			buffer.force();
+		}
+	};
+
+	/**
+	 * Opens an existing spool file, or creates a new one of the given size.
+	 * The replaying thread is started immediately, so records left by a
+	 * previous run are replayed as soon as possible.
+	 */
+	LogInRecordSpool(File spoolFile, int size, UserDatabaseModel databaseModel, UserManagementProperties properties) throws IOException {
+		this.databaseModel = databaseModel;
+		this.batchSize = properties.getLogInRecordBatchSize();
+		this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(properties.getLogInRecordMaxBatchDelayMillis());
+
+		file = new RandomAccessFile(spoolFile, "rw");
+		try {
+			boolean created = file.length() == 0;
+			if (created) {
+				file.setLength(Math.max(size, MIN_SIZE));
+			}
+
+			capacity = (int) Math.min(file.length(), Integer.MAX_VALUE);
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+			if (created || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				if (!created) {
+					LOGGER.warn("Log in record spool {} has an unknown format, it will be overwritten.", spoolFile);
+				}
+				initialize();
+			} else {
+				recover();
+			}
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+
+		if (recordCount > 0) {
+			LOGGER.info("Log in record spool {} contains {} records which will be replayed.", spoolFile, recordCount);
+		}
+
+		thread = new Thread(loop, "usermodule-login-record-spool");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void initialize() {
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(READ_OFFSET_POSITION, HEADER_SIZE);
+		buffer.putInt(HEADER_SIZE, END_MARKER);
+		buffer.force();
+
+		readOffset = HEADER_SIZE;
+		writeOffset = HEADER_SIZE;
+		recordCount = 0;
+	}
+
+	/**
+	 * Finds the end of the records which haven't been replayed yet.
+	 */
+	private void recover() {
+		readOffset = buffer.getInt(READ_OFFSET_POSITION);
+		if (readOffset < HEADER_SIZE || readOffset > capacity - MARKER_SIZE) {
+			LOGGER.warn("Log in record spool has an invalid read offset, it will be cleared.");
+			initialize();
+			return;
+		}
+
+		int position = readOffset;
+		boolean wrapped = false;
+		while (true) {
+			int length = buffer.getInt(position);
+			if (length == WRAP_MARKER && !wrapped) {
+				wrapped = true;
+				position = HEADER_SIZE;
+				continue;
+			}
+
+			if (length < RECORD_HEADER_SIZE || position + length > capacity - MARKER_SIZE || (wrapped && position + length > readOffset - MARKER_SIZE)) {
+				break;
+			}
+
+			byte[] data = new byte[length - RECORD_HEADER_SIZE];
+			readBytes(position + RECORD_HEADER_SIZE, data);
+			if (buffer.getInt(position + 4) != checksum(data)) {
+				LOGGER.warn("Log in record spool contains a damaged record, the following records will be discarded.");
+				break;
+			}
+
+			position += length;
+			++recordCount;
+		}
+
+		// discards a possibly torn record
+		buffer.putInt(position, END_MARKER);
+		writeOffset = position;
+	}
+
+	private static int checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] encode(LogInRecord record) {
+		byte[] ip = record.getIp() == null ? null : record.getIp().getBytes(IP_CHARSET);
+		int ipLength = ip == null ? 0 : ip.length;
+
+		byte[] data = new byte[FIXED_DATA_SIZE + ipLength];
+		ByteBuffer.wrap(data).putInt(record.getUserId()).put((byte) (record.isSuccessful() ? 1 : 0)).putLong(record.getTime().getTime())
+				.putShort((short) (ip == null ? -1 : ipLength));
+		if (ip != null) {
+			System.arraycopy(ip, 0, data, FIXED_DATA_SIZE, ipLength);
+		}
+		return data;
+	}
+
+	private LogInRecord decode(int position) {
+		int userId = buffer.getInt(position);
+		boolean successful = buffer.get(position + 4) != 0;
+		long time = buffer.getLong(position + 5);
+		short ipLength = buffer.getShort(position + 13);
+
+		String ip = null;
+		if (ipLength >= 0) {
+			byte[] ipBytes = new byte[ipLength];
+			readBytes(position + FIXED_DATA_SIZE, ipBytes);
+			ip = new String(ipBytes, IP_CHARSET);
+		}
+
+		return new LogInRecord(userId, successful, ip, new Date(time));
+	}
+
+	private void readBytes(int position, byte[] bytes) {
+		for (int idx = 0; idx < bytes.length; ++idx) {
+			bytes[idx] = buffer.get(position + idx);
+		}
+	}
+
+	private void writeBytes(int position, byte[] bytes) {
+		for (int idx = 0; idx < bytes.length; ++idx) {
+			buffer.put(position + idx, bytes[idx]);
+		}
+	}
+
+	/**
+	 * Returns position where a record of the given length can be written, or
+	 * -1 if the spool is full. The record must be followed by an end marker
+	 * and must not reach the read offset, otherwise a full spool couldn't be
+	 * distinguished from an empty one.
+	 */
+	private int reserve(int length) {
+		int required = length + MARKER_SIZE;
+		if (writeOffset >= readOffset) {
+			if (writeOffset + required <= capacity) {
+				return writeOffset;
+			}
+			if (HEADER_SIZE + required < readOffset) {
+				return HEADER_SIZE;
+			}
+			return -1;
+		}
+
+		if (writeOffset + required < readOffset) {
+			return writeOffset;
+		}
+		return -1;
+	}
+
+	private boolean append(byte[] data) {
+		int length = RECORD_HEADER_SIZE + data.length;
+		int position = reserve(length);
+		if (position < 0) {
+			return false;
+		}
+
+		buffer.putInt(position + 4, checksum(data));
+		writeBytes(position + RECORD_HEADER_SIZE, data);
+		buffer.putInt(position + length, END_MARKER);
+		buffer.putInt(position, length);
+		if (position != writeOffset) {
+			buffer.putInt(writeOffset, WRAP_MARKER);
+		}
+
+		writeOffset = position + length;
+		++recordCount;
+		notEmpty.signal();
+		return true;
+	}
+
+	private int getRecordCount() {
+		lock.lock();
+		try {
+			return recordCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for a batch of records and writes it into the database.
+	 * 
+	 * @return False if the database failed to write the records.
+	 */
+	private boolean replayBatch() {
+		List<LogInRecord> batch = new ArrayList<>();
+		int batchEnd;
+
+		lock.lock();
+		try {
+			if (recordCount == 0 && running) {
+				notEmpty.await(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			if (recordCount == 0) {
+				return true;
+			}
+
+			long remaining = maxBatchDelayNanos;
+			while (recordCount < batchSize && running && remaining > 0) {
+				remaining = notEmpty.awaitNanos(remaining);
+			}
+
+			int position = readOffset;
+			while (batch.size() < batchSize && position != writeOffset) {
+				int length = buffer.getInt(position);
+				if (length == WRAP_MARKER) {
+					position = HEADER_SIZE;
+					continue;
+				}
+				batch.add(decode(position + RECORD_HEADER_SIZE));
+				position += length;
+			}
+			batchEnd = position;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			if (!databaseModel.makeLogInRecords(batch)) {
+				LOGGER.warn("DB error: Failed to replay {} spooled login records, will retry.", batch.size());
+				return false;
+			}
+		} catch (RuntimeException e) {
+			LOGGER.warn("DB error: Failed to replay {} spooled login records, will retry.", batch.size(), e);
+			return false;
+		}
+
+		lock.lock();
+		try {
+			readOffset = batchEnd;
+			recordCount -= batch.size();
+			buffer.putInt(READ_OFFSET_POSITION, readOffset);
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		buffer.force();
+		return true;
+	}
+
+	@Override
+	public boolean offer(LogInRecord record) {
+		byte[] data = encode(record);
+
+		lock.lock();
+		try {
+			return running && append(data);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(LogInRecord record, long timeout, TimeUnit unit) throws InterruptedException {
+		byte[] data = encode(record);
+		long remaining = unit.toNanos(timeout);
+
+		lock.lock();
+		try {
+			while (running && !append(data)) {
+				if (remaining <= 0) {
+					return false;
+				}
+				remaining = notFull.awaitNanos(remaining);
+			}
+			return running;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops accepting new records, tries to replay the remaining ones and
+	 * closes the file. Records which couldn't be replayed stay in the file.
+	 */
+	@Override
+	public void shutdown(long timeoutMillis) throws InterruptedException {
+		lock.lock();
+		try {
+			running = false;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		thread.join(timeoutMillis);
+		if (thread.isAlive()) {
+			thread.interrupt();
+			thread.join(timeoutMillis);
+		}
+
+		try {
+			file.close();
+		} catch (IOException e) {
+			LOGGER.warn("Failed to close log in record spool.", e);
+		}
+	}
+
+}
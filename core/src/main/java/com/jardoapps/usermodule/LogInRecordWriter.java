@@ -0,0 +1,55 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.containers.LogInRecord;
+import com.jardoapps.usermodule.utils.BatchingWorker;
+
+/**
+ * Writes log in records into the database in the background, in batches. Used
+ * by {@link UserManager} when
+ * {@link UserManagementProperties#isLogInRecordWriteBehindEnabled()} is set.
+ * 
+ * @since 0.2.0
+ */
+class LogInRecordWriter extends BatchingWorker<LogInRecord> implements LogInRecordQueue {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LogInRecordWriter.class);
+
+	private final UserDatabaseModel databaseModel;
+
+	@Override
+	protected void processBatch(List<LogInRecord> batch) {
+		if (!databaseModel.makeLogInRecords(batch)) {
+			LOGGER.warn("DB error: Failed to make {} login records.", batch.size());
+		}
+	}
+
+	LogInRecordWriter(UserDatabaseModel databaseModel, UserManagementProperties properties) {
+		super("usermodule-login-record-writer", properties.getLogInRecordQueueCapacity(), properties.getLogInRecordBatchSize(), properties.getLogInRecordMaxBatchDelayMillis());
+		this.databaseModel = databaseModel;
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.containers.PasswordUpgrade;
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.utils.BatchingWorker;
+
+/**
+ * Re-hashes passwords stored in an outdated format in the background. Used by
+ * {@link UserManager#logIn(String, String, String)} after a successful log in,
+ * when the plain text password is known.
+ * 
+ * @since 0.2.0
+ */
+class PasswordHashUpgrader extends BatchingWorker<PasswordHashUpgrader.Request> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PasswordHashUpgrader.class);
+
+	private static final long MAX_BATCH_DELAY_MILLIS = 1000L;
+
+	static class Request {
+
+		private final int userId;
+		private final UserPassword oldPassword;
+		private final String password;
+
+		Request(int userId, UserPassword oldPassword, String password) {
+			this.userId = userId;
+			this.oldPassword = oldPassword;
+			this.password = password;
+		}
+	}
+
+	private final UserManager userManager;
+
+	private final UserDatabaseModel databaseModel;
+
+	@Override
+	protected void processBatch(List<Request> batch) {
+		List<PasswordUpgrade> upgrades = new ArrayList<>(batch.size());
+		for (Request request : batch) {
+			UserPassword newPassword;
+			try {
+				newPassword = userManager.createUserPassword(request.password);
+			} catch (RejectedExecutionException e) {
+				// log ins take precedence, the hash is upgraded at the next log in
+				LOGGER.debug("Password hashing pool is full, skipping upgrade for user with id={}.", request.userId);
+				continue;
+			}
+			upgrades.add(new PasswordUpgrade(request.userId, request.oldPassword, newPassword));
+		}
+		if (upgrades.isEmpty()) {
+			return;
+		}
+
+		if (!databaseModel.upgradeUserPasswords(upgrades)) {
+			LOGGER.warn("DB error: Failed to upgrade password hashes of {} users.", upgrades.size());
+		}
+	}
+
+	PasswordHashUpgrader(UserManager userManager, UserDatabaseModel databaseModel, UserManagementProperties properties) {
+		super("usermodule-password-upgrader", properties.getPasswordHashUpgradeQueueCapacity(), properties.getPasswordHashUpgradeBatchSize(), MAX_BATCH_DELAY_MILLIS);
+		this.userManager = userManager;
+		this.databaseModel = databaseModel;
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.io.Serializable;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+
+/**
+ * This interface is used by {@link UserManager} to calculate and verify
+ * password hashes. The calculated hash is stored together with the password
+ * salt as a {@link UserPassword}.
+ * <p>
+ * Available implementations:
+ * <li>{@link PasswordHasherSha256} - a single round of SHA-256, which is the
+ * format used by all previous versions of this library (default)
+ * <li>{@link PasswordHasherPbkdf2} - PBKDF2 with a configurable number of
+ * iterations
+ * <li>{@link PasswordHasherPooled} - runs another hasher on a dedicated,
+ * bounded thread pool
+ * 
+ * @since 0.2.0
+ */
+public interface PasswordHasher extends Serializable {
+
+	/**
+	 * Calculates hash of the given password.
+	 * 
+	 * @param password
+	 *            password to be hashed
+	 * @param salt
+	 *            random generated password salt
+	 * @return Password hash, which can be later verified by method
+	 *         {@link #isPasswordValid(String, UserPassword)}.
+	 */
+	String calculateHash(String password, String salt);
+
+	/**
+	 * Checks whether the given password matches the stored password.
+	 * 
+	 * @param password
+	 *            password to check
+	 * @param storedPassword
+	 *            stored password hash and salt
+	 * @return True if the password is valid, otherwise false.
+	 */
+	boolean isPasswordValid(String password, UserPassword storedPassword);
+
+	/**
+	 * Checks whether the stored password hash has been calculated in an
+	 * outdated format (for instance by another hasher, or with a lower cost
+	 * than is currently configured). {@link UserManager} re-hashes such
+	 * passwords in the background after a successful log in.
+	 * 
+	 * @param storedPassword
+	 *            stored password hash and salt
+	 * @return True if the password should be re-hashed, otherwise false.
+	 */
+	boolean isRehashNeeded(UserPassword storedPassword);
+
+}
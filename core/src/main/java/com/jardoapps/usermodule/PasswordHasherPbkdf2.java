@@ -0,0 +1,311 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.UserManager.FatalException;
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.utils.HexUtils;
+
+/**
+ * A {@link PasswordHasher} which uses PBKDF2 with HMAC-SHA256. The number of
+ * iterations is specified by property
+ * {@link UserManagementProperties#getPasswordHashIterations()}.
+ * <p>
+ * The iteration count is stored as a part of the hash in format
+ * <code>pbkdf2-sha256$&lt;iterations&gt;$&lt;hex hash&gt;</code>, so changing
+ * the property doesn't invalidate existing hashes. Hashes in the legacy
+ * {@link PasswordHasherSha256 SHA-256} format are verified as well, so this
+ * hasher can replace the default one without forcing users to reset their
+ * passwords.
+ * <p>
+ * If property {@link UserManagementProperties#getPasswordHashTimeBudgetMillis()}
+ * is set, the hasher benchmarks the host on startup (see {@link #start()})
+ * and uses the highest number of iterations
+ * which keeps a single hash calculation within the budget. The configured
+ * iteration count is then used as the lower limit, so hosts with different
+ * CPUs hash with different costs, but never below the configured one. A host
+ * re-hashes the hashes calculated by faster hosts, whose verification would
+ * exceed its budget, with its own number of iterations (see
+ * {@link #isRehashNeeded(UserPassword)}).
+ * 
+ * @since 0.2.0
+ */
+public class PasswordHasherPbkdf2 implements PasswordHasher {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PasswordHasherPbkdf2.class);
+
+	public static final String HASH_PREFIX = "pbkdf2-sha256$";
+
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+
+	private static final int KEY_LENGTH = 256;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int CALIBRATION_SAMPLES = 5;
+
+	private static final int CALIBRATION_ROUNDS = 3;
+
+	/**
+	 * Part of the time budget the calibration aims at, the rest is left for
+	 * measurement errors and load spikes.
+	 */
+	private static final double CALIBRATION_HEADROOM = 0.9;
+
+	private static final String CALIBRATION_PASSWORD = "calibration-password";
+
+	private static final String CALIBRATION_SALT = "7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008";
+
+	private final PasswordHasherSha256 legacyHasher = new PasswordHasherSha256();
+
+	@Inject
+	private UserManagementProperties properties;
+
+	private volatile int calibratedIterations;
+
+	/**
+	 * Returns the longest of several hash calculations, which is a rough
+	 * estimate of a high percentile of the hash latency.
+	 */
+	private long measureMaxNanos(int iterations) {
+		long max = 0;
+		for (int i = 0; i < CALIBRATION_SAMPLES; i++) {
+			max = Math.max(max, measureHashNanos(iterations));
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the time of a single hash calculation with the given number of
+	 * iterations, in nanoseconds. Used by {@link #calibrate()}.
+	 */
+	protected long measureHashNanos(int iterations) {
+		long start = System.nanoTime();
+		pbkdf2(CALIBRATION_PASSWORD, CALIBRATION_SALT, iterations);
+		return System.nanoTime() - start;
+	}
+
+	private int parseIterations(String storedHash, int separator) {
+		try {
+			return Integer.parseInt(storedHash.substring(HASH_PREFIX.length(), separator));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private int scaleIterations(int iterations, long targetNanos, long latencyNanos) {
+		return (int) Math.min(Integer.MAX_VALUE, (long) (iterations * ((double) targetNanos / Math.max(1L, latencyNanos))));
+	}
+
+	private byte[] pbkdf2(String password, String salt, int iterations) {
+		PBEKeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt.getBytes(UTF_8), iterations, KEY_LENGTH);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(keySpec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new FatalException("The system doesn't support password hash algorithm: " + ALGORITHM, e);
+		} finally {
+			keySpec.clearPassword();
+		}
+	}
+
+	/**
+	 * Returns number of iterations used for new hashes. This is either the
+	 * configured number of iterations, or the calibrated number, if a time
+	 * budget is configured. Calibrates the hasher if {@link #start()} hasn't
+	 * done so.
+	 */
+	protected int getIterations() {
+		if (properties.getPasswordHashTimeBudgetMillis() <= 0) {
+			return properties.getPasswordHashIterations();
+		}
+
+		int iterations = calibratedIterations;
+		if (iterations == 0) {
+			synchronized (this) {
+				iterations = calibratedIterations;
+				if (iterations == 0) {
+					iterations = calibrate();
+				}
+			}
+		}
+		return iterations;
+	}
+
+	/**
+	 * Benchmarks the host and finds the highest number of iterations which
+	 * keeps a single hash calculation within
+	 * {@link UserManagementProperties#getPasswordHashTimeBudgetMillis()}. The
+	 * result is never lower than
+	 * {@link UserManagementProperties#getPasswordHashIterations()}.
+	 * <p>
+	 * The calibration is done by {@link #start()}. If it isn't called, the
+	 * calibration is done on first use, which delays the first log ins by up
+	 * to a few seconds.
+	 * 
+	 * @return Calibrated number of iterations.
+	 */
+	public synchronized int calibrate() {
+		int minIterations = properties.getPasswordHashIterations();
+		long budgetNanos = TimeUnit.MILLISECONDS.toNanos(properties.getPasswordHashTimeBudgetMillis());
+		long targetNanos = (long) (budgetNanos * CALIBRATION_HEADROOM);
+
+		// warm up, so the JIT compiler doesn't distort the measurement
+		measureMaxNanos(minIterations);
+
+		int iterations = minIterations;
+		long latency = measureMaxNanos(iterations);
+		long minIterationsLatency = latency;
+
+		for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+			int estimate = Math.max(minIterations, scaleIterations(iterations, targetNanos, latency));
+			if (Math.abs(estimate - iterations) <= iterations / 20) {
+				// converged
+				break;
+			}
+
+			iterations = estimate;
+			latency = measureMaxNanos(iterations);
+		}
+
+		if (latency > budgetNanos && iterations > minIterations) {
+			iterations = Math.max(minIterations, scaleIterations(iterations, targetNanos, latency));
+		}
+
+		if (minIterationsLatency > budgetNanos) {
+			LOGGER.warn("Password hash with the minimal {} iterations takes {} ms, which exceeds the budget of {} ms.", minIterations,
+					TimeUnit.NANOSECONDS.toMillis(minIterationsLatency), properties.getPasswordHashTimeBudgetMillis());
+		}
+
+		LOGGER.info("Calibrated password hash cost: {} iterations.", iterations);
+
+		calibratedIterations = iterations;
+		return iterations;
+	}
+
+	/**
+	 * Calibrates the number of iterations if a time budget is configured (see
+	 * {@link #calibrate()}), so the first log ins don't wait for the
+	 * calibration. Called by the container after the properties are injected,
+	 * and by {@link #PasswordHasherPbkdf2(UserManagementProperties)}.
+	 */
+	@PostConstruct
+	public void start() {
+		if (properties.getPasswordHashTimeBudgetMillis() > 0) {
+			calibrate();
+		}
+	}
+
+	@Override
+	public String calculateHash(String password, String salt) {
+		int iterations = getIterations();
+		return HASH_PREFIX + iterations + '$' + HexUtils.toHex(pbkdf2(password, salt, iterations));
+	}
+
+	@Override
+	public boolean isPasswordValid(String password, UserPassword storedPassword) {
+		String storedHash = storedPassword.getHash();
+		if (!storedHash.startsWith(HASH_PREFIX)) {
+			return legacyHasher.isPasswordValid(password, storedPassword);
+		}
+
+		int separator = storedHash.indexOf('$', HASH_PREFIX.length());
+		if (separator < 0) {
+			return false;
+		}
+
+		int iterations = parseIterations(storedHash, separator);
+		if (iterations < 1) {
+			return false;
+		}
+
+		String hash = HexUtils.toHex(pbkdf2(password, storedPassword.getSalt(), iterations));
+		byte[] expected = storedHash.substring(separator + 1).toLowerCase().getBytes(UTF_8);
+		return MessageDigest.isEqual(expected, hash.getBytes(UTF_8));
+	}
+
+	/**
+	 * Returns true for hashes in the legacy SHA-256 format and for hashes
+	 * calculated with fewer iterations than are configured by property
+	 * {@link UserManagementProperties#getPasswordHashIterations()}. If a time
+	 * budget is configured, also for hashes whose verification exceeds the
+	 * budget of this host, i.e. hashes calculated by a faster host with more
+	 * iterations than the calibrated number (beyond the calibration
+	 * headroom), so they get this host's cost. Hashes with fewer iterations
+	 * than the calibrated number are not upgraded to it, so hosts with
+	 * different calibration results don't keep re-hashing each other's
+	 * hashes.
+	 */
+	@Override
+	public boolean isRehashNeeded(UserPassword storedPassword) {
+		String storedHash = storedPassword.getHash();
+		if (!storedHash.startsWith(HASH_PREFIX)) {
+			return true;
+		}
+
+		int separator = storedHash.indexOf('$', HASH_PREFIX.length());
+		if (separator < 0) {
+			return false;
+		}
+
+		int iterations = parseIterations(storedHash, separator);
+		if (iterations < 1) {
+			return false;
+		}
+		if (iterations < properties.getPasswordHashIterations()) {
+			return true;
+		}
+		return properties.getPasswordHashTimeBudgetMillis() > 0 && iterations > getIterations() / CALIBRATION_HEADROOM;
+	}
+
+	/**
+	 * Creates a new hasher whose properties will be injected.
+	 */
+	public PasswordHasherPbkdf2() {
+	}
+
+	/**
+	 * Creates a new hasher, for use without dependency injection (e.g. with
+	 * {@link UserManager#setPasswordHasher(PasswordHasher)}).
+	 * 
+	 * @param properties
+	 *            properties which specify the number of iterations and the
+	 *            time budget
+	 */
+	public PasswordHasherPbkdf2(UserManagementProperties properties) {
+		this.properties = properties;
+		start();
+	}
+
+}
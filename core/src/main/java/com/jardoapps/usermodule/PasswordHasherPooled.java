@@ -0,0 +1,262 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jardoapps.usermodule.UserManager.FatalException;
+import com.jardoapps.usermodule.containers.UserPassword;
+
+/**
+ * A {@link PasswordHasher} which runs another hasher on a dedicated thread
+ * pool. The pool has a fixed number of threads and a bounded queue, so an
+ * expensive hash algorithm can occupy at most the configured number of CPU
+ * cores, no matter how many request threads are trying to log in at the same
+ * time. When the queue is full, the hashing request is rejected immediately by
+ * throwing a {@link RejectedExecutionException} instead of blocking the
+ * calling thread, {@link UserManager} reports it as
+ * {@link ResultCode#SERVER_BUSY}.
+ * <p>
+ * The pool size and queue capacity are specified by properties
+ * {@link UserManagementProperties#getPasswordHashingThreads()} and
+ * {@link UserManagementProperties#getPasswordHashingQueueCapacity()}. The
+ * current queue depth and hash latency statistics can be used to size the pool
+ * according to the log in throughput.
+ * <p>
+ * Call {@link #shutdown()} when the hasher is no longer needed.
+ * 
+ * @since 0.2.0
+ */
+public class PasswordHasherPooled implements PasswordHasher {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+	private final PasswordHasher delegate;
+
+	private final int threadCount;
+
+	private final int queueCapacity;
+
+	private transient ThreadPoolExecutor executor;
+
+	private final AtomicLong completedHashCount = new AtomicLong();
+
+	private final AtomicLong rejectedHashCount = new AtomicLong();
+
+	private final AtomicLong totalHashNanos = new AtomicLong();
+
+	private final AtomicLong maxHashNanos = new AtomicLong();
+
+	private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+
+	private abstract class HashingTask<T> implements Callable<T> {
+
+		private final long submitTime = System.nanoTime();
+
+		protected abstract T calculate();
+
+		@Override
+		public T call() {
+			long startTime = System.nanoTime();
+			try {
+				return calculate();
+			} finally {
+				recordLatency(startTime - submitTime, System.nanoTime() - startTime);
+			}
+		}
+	}
+
+	private ThreadPoolExecutor createExecutor() {
+		final int poolNumber = POOL_COUNTER.incrementAndGet();
+
+		ThreadFactory threadFactory = new ThreadFactory() {
+
+			private final AtomicInteger threadCounter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "password-hasher-" + poolNumber + "-" + threadCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+
+		return new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory);
+	}
+
+	private <T> T execute(HashingTask<T> task) {
+		Future<T> future;
+		try {
+			future = executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			rejectedHashCount.incrementAndGet();
+			throw e;
+		}
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new FatalException("Interrupted while waiting for password hash.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new FatalException("Failed to calculate password hash.", e.getCause());
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		executor = createExecutor();
+	}
+
+	private void recordLatency(long queueWaitNanos, long hashNanos) {
+		completedHashCount.incrementAndGet();
+		totalQueueWaitNanos.addAndGet(queueWaitNanos);
+		totalHashNanos.addAndGet(hashNanos);
+
+		long max = maxHashNanos.get();
+		while (hashNanos > max && !maxHashNanos.compareAndSet(max, hashNanos)) {
+			max = maxHashNanos.get();
+		}
+	}
+
+	@Override
+	public String calculateHash(final String password, final String salt) {
+		return execute(new HashingTask<String>() {
+			@Override
+			protected String calculate() {
+				return delegate.calculateHash(password, salt);
+			}
+		});
+	}
+
+	@Override
+	public boolean isPasswordValid(final String password, final UserPassword storedPassword) {
+		return execute(new HashingTask<Boolean>() {
+			@Override
+			protected Boolean calculate() {
+				return delegate.isPasswordValid(password, storedPassword);
+			}
+		});
+	}
+
+	/**
+	 * Evaluated directly by the delegate, this check doesn't calculate any hash.
+	 */
+	@Override
+	public boolean isRehashNeeded(UserPassword storedPassword) {
+		return delegate.isRehashNeeded(storedPassword);
+	}
+
+	/**
+	 * Returns number of hashing requests which are waiting for a free thread.
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Returns number of threads which are currently calculating a hash.
+	 */
+	public int getActiveThreadCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Returns number of hashes which have been calculated so far.
+	 */
+	public long getCompletedHashCount() {
+		return completedHashCount.get();
+	}
+
+	/**
+	 * Returns number of hashing requests which have been rejected because the
+	 * queue was full.
+	 */
+	public long getRejectedHashCount() {
+		return rejectedHashCount.get();
+	}
+
+	/**
+	 * Returns the average time (in microseconds) it took to calculate a single
+	 * hash, not including the time spent in the queue.
+	 */
+	public long getAverageHashLatencyMicros() {
+		long count = completedHashCount.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalHashNanos.get() / count);
+	}
+
+	/**
+	 * Returns the longest time (in microseconds) it took to calculate a single
+	 * hash.
+	 */
+	public long getMaxHashLatencyMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(maxHashNanos.get());
+	}
+
+	/**
+	 * Returns the average time (in microseconds) a hashing request spent in the
+	 * queue before a thread picked it up.
+	 */
+	public long getAverageQueueWaitMicros() {
+		long count = completedHashCount.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalQueueWaitNanos.get() / count);
+	}
+
+	/**
+	 * Stops the hashing threads. Already queued requests will still be
+	 * processed, new requests will be rejected.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Creates a new pooled hasher.
+	 * 
+	 * @param delegate
+	 *            hasher which will be used to calculate the hashes
+	 * @param properties
+	 *            properties which specify the pool size and queue capacity
+	 */
+	public PasswordHasherPooled(PasswordHasher delegate, UserManagementProperties properties) {
+		this.delegate = delegate;
+		this.threadCount = properties.getPasswordHashingThreads();
+		this.queueCapacity = properties.getPasswordHashingQueueCapacity();
+		this.executor = createExecutor();
+	}
+
+}
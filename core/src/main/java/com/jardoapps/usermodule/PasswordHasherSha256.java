@@ -0,0 +1,146 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.jardoapps.usermodule.UserManager.FatalException;
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.utils.HexUtils;
+
+/**
+ * A {@link PasswordHasher} which calculates the hash as a single round of
+ * SHA-256 over the UTF-16 encoded salt and password. The hash is stored as a
+ * hexadecimal string.
+ * <p>
+ * This is the format which has been used by all previous versions of this
+ * library. It is cheap to calculate, so consider using
+ * {@link PasswordHasherPbkdf2} for new installations.
+ * <p>
+ * Password verification doesn't create any garbage: the strings are encoded
+ * into a per-thread buffer and the digest is compared with the stored
+ * hexadecimal hash directly, in constant time.
+ * 
+ * @since 0.2.0
+ */
+public class PasswordHasherSha256 implements PasswordHasher {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int HASH_LENGTH = 32;
+
+	private static final int INITIAL_BUFFER_SIZE = 256;
+
+	/**
+	 * Per-thread digest and buffers, so password hashes can be calculated
+	 * concurrently without any locking or allocations.
+	 */
+	private static final class HashingState {
+
+		private final MessageDigest sha256;
+
+		private final byte[] hash = new byte[HASH_LENGTH];
+
+		private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+		private HashingState() throws NoSuchAlgorithmException {
+			sha256 = MessageDigest.getInstance("SHA-256");
+		}
+
+		/**
+		 * Produces the same bytes as {@code str.getBytes("UTF-16")}: a big
+		 * endian byte order mark followed by big endian characters (nothing
+		 * for an empty string), unpaired surrogates are replaced by U+FFFD.
+		 */
+		private void update(String str) {
+			int length = str.length();
+			if (length == 0) {
+				return;
+			}
+
+			int size = 2 + length * 2;
+			if (buffer.length < size) {
+				buffer = new byte[Math.max(size, buffer.length * 2)];
+			}
+
+			byte[] bytes = buffer;
+			bytes[0] = (byte) 0xfe;
+			bytes[1] = (byte) 0xff;
+
+			int pos = 2;
+			for (int idx = 0; idx < length; ++idx) {
+				char c = str.charAt(idx);
+				if (Character.isHighSurrogate(c) && idx + 1 < length && Character.isLowSurrogate(str.charAt(idx + 1))) {
+					bytes[pos++] = (byte) (c >> 8);
+					bytes[pos++] = (byte) c;
+					c = str.charAt(++idx);
+				} else if (Character.isSurrogate(c)) {
+					c = '\ufffd';
+				}
+				bytes[pos++] = (byte) (c >> 8);
+				bytes[pos++] = (byte) c;
+			}
+
+			sha256.update(bytes, 0, pos);
+		}
+
+		private byte[] calculateHash(String password, String salt) {
+			sha256.reset();
+			update(salt);
+			update(password);
+			try {
+				sha256.digest(hash, 0, HASH_LENGTH);
+			} catch (DigestException e) {
+				throw new FatalException("Failed to calculate password hash.", e);
+			}
+			return hash;
+		}
+	}
+
+	private static final ThreadLocal<HashingState> HASHING_STATES = new ThreadLocal<HashingState>() {
+		@Override
+		protected HashingState initialValue() {
+			try {
+				return new HashingState();
+			} catch (NoSuchAlgorithmException e) {
+				throw new FatalException("Failed to create password hasher.", e);
+			}
+		}
+	};
+
+	@Override
+	public String calculateHash(String password, String salt) {
+		return HexUtils.toHex(HASHING_STATES.get().calculateHash(password, salt));
+	}
+
+	@Override
+	public boolean isPasswordValid(String password, UserPassword storedPassword) {
+		byte[] hash = HASHING_STATES.get().calculateHash(password, storedPassword.getSalt());
+		return HexUtils.equalsHex(hash, storedPassword.getHash());
+	}
+
+	@Override
+	public boolean isRehashNeeded(UserPassword storedPassword) {
+		return false;
+	}
+
+}
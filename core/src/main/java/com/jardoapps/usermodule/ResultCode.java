@@ -36,5 +36,21 @@ public enum ResultCode {
 	NO_VALID_PASSWORD_RESET_TOKEN,
 	REGISTRATION_NOT_CONFIRMED,
 	REGISTRATION_ALREADY_CONFIRMED,
-	INVALID_REGISTRATION_CONTROL_CODE
+	INVALID_REGISTRATION_CONTROL_CODE,
+	/**
+	 * The email address is not valid (see
+	 * {@link com.jardoapps.usermodule.utils.EmailUtils#isEmailValid(String)}).
+	 * Reported by {@link UserImporter} for users which were not imported.
+	 * 
+	 * @since 0.2.0
+	 */
+	INVALID_EMAIL,
+	/**
+	 * The password could not be hashed or verified, because the password
+	 * hashing pool (see {@link PasswordHasherPooled}) is full. The request
+	 * can be repeated later.
+	 * 
+	 * @since 0.2.0
+	 */
+	SERVER_BUSY
 }
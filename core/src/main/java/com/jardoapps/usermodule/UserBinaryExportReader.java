@@ -0,0 +1,122 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads users written by {@link UserBinaryExportSink}. Pass a buffered
+ * stream, the reader reads single bytes.
+ * 
+ * @since 0.2.0
+ */
+public class UserBinaryExportReader {
+
+	private final InputStream in;
+
+	private int previousId;
+
+	private int readByte() throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException("Truncated user export.");
+		}
+		return b;
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed user export: variable length integer is too long.");
+	}
+
+	private int readSignedVarInt() throws IOException {
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private String readString() throws IOException {
+		byte[] bytes = new byte[readVarInt()];
+		int offset = 0;
+		while (offset < bytes.length) {
+			int count = in.read(bytes, offset, bytes.length - offset);
+			if (count < 0) {
+				throw new EOFException("Truncated user export.");
+			}
+			offset += count;
+		}
+		return new String(bytes, UserBinaryExportSink.UTF_8);
+	}
+
+	/**
+	 * Reads the next user.
+	 * 
+	 * @return The next user (with null password and registration control
+	 *         code), or null at the end of the stream.
+	 * @throws IOException
+	 *             if the stream can't be read or is truncated
+	 */
+	public User read() throws IOException {
+		int flags = in.read();
+		if (flags < 0) {
+			return null;
+		}
+
+		int id = previousId + readSignedVarInt();
+		int rank = readSignedVarInt();
+		String email = readString();
+		String name = (flags & UserBinaryExportSink.FLAG_HAS_NAME) != 0 ? readString() : null;
+		boolean registrationConfirmed = (flags & UserBinaryExportSink.FLAG_REGISTRATION_CONFIRMED) != 0;
+
+		previousId = id;
+		return new User(id, name, email, null, registrationConfirmed, null, rank);
+	}
+
+	/**
+	 * Creates the reader and reads the format header.
+	 * 
+	 * @param in
+	 *            stream written by {@link UserBinaryExportSink}, it is not
+	 *            closed by the reader
+	 * @throws IOException
+	 *             if the stream can't be read or isn't a user export of a
+	 *             supported version
+	 */
+	public UserBinaryExportReader(InputStream in) throws IOException {
+		this.in = in;
+		for (byte magic : UserBinaryExportSink.MAGIC) {
+			if (readByte() != magic) {
+				throw new IOException("Not a user export.");
+			}
+		}
+		int version = readByte();
+		if (version != UserBinaryExportSink.VERSION) {
+			throw new IOException("Unsupported user export version: " + version);
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes exported users as CSV (RFC 4180): a header line followed by a line
+ * with the id, email, name, registration confirmation and rank of every user.
+ * Fields containing a comma, a quote or a line break are quoted, a missing
+ * name is written as an empty field. Pass a buffered writer, the sink writes
+ * every field separately.
+ * 
+ * @since 0.2.0
+ */
+public class UserCsvExportSink implements UserExportSink {
+
+	public static final String HEADER = "id,email,name,registration_confirmed,rank";
+
+	private static final String LINE_SEPARATOR = "\r\n";
+
+	private final Writer writer;
+
+	private void writeField(String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+				writer.write('"');
+				writer.write(value.replace("\"", "\"\""));
+				writer.write('"');
+				return;
+			}
+		}
+		writer.write(value);
+	}
+
+	@Override
+	public void write(User user) throws IOException {
+		writer.write(Integer.toString(user.getId()));
+		writer.write(',');
+		writeField(user.getEmail());
+		writer.write(',');
+		writeField(user.getName());
+		writer.write(',');
+		writer.write(user.isRegistrationConfirmed() ? "true" : "false");
+		writer.write(',');
+		writer.write(Integer.toString(user.getRank()));
+		writer.write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Creates the sink and writes the header line.
+	 * 
+	 * @param writer
+	 *            writer the users are written to, it is neither flushed nor
+	 *            closed by the sink
+	 * @throws IOException
+	 *             if the header can't be written
+	 */
+	public UserCsvExportSink(Writer writer) throws IOException {
+		this.writer = writer;
+		writer.write(HEADER);
+		writer.write(LINE_SEPARATOR);
+	}
+
+}
@@ -18,11 +18,20 @@
 
 package com.jardoapps.usermodule;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 
+import com.jardoapps.usermodule.containers.LogInRecord;
 import com.jardoapps.usermodule.containers.PasswordResetToken;
+import com.jardoapps.usermodule.containers.PasswordUpgrade;
+import com.jardoapps.usermodule.containers.UserListFilter;
+import com.jardoapps.usermodule.containers.UserPage;
 import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.defines.UserListOrder;
 
 /**
  * This interface is used by {@link UserManager} to access the database.
@@ -31,6 +40,22 @@ import com.jardoapps.usermodule.containers.UserPassword;
  */
 public interface UserDatabaseModel extends Serializable {
 
+	/**
+	 * Returned by {@link #addUser(User)} when the user can't be added, because
+	 * the email is already registered.
+	 * 
+	 * @since 0.2.0
+	 */
+	int ADD_USER_EMAIL_ALREADY_REGISTERED = -2;
+
+	/**
+	 * Returned by {@link #addUser(User)} when the user can't be added, because
+	 * the user name is already registered.
+	 * 
+	 * @since 0.2.0
+	 */
+	int ADD_USER_NAME_ALREADY_REGISTERED = -3;
+
 	/**
 	 * Adds a new password reset token. This token should be later accessible by
 	 * method {@link #getNewestPasswordResetToken(String)}, or could be canceled
@@ -43,15 +68,34 @@ public interface UserDatabaseModel extends Serializable {
 	boolean addPasswordResetToken(PasswordResetToken token);
 
 	/**
-	 * Adds new user to database.
+	 * Adds new user to database. Implementations which refuse duplicate emails
+	 * and names (e.g. by unique constraints) should report them, so that
+	 * {@link UserManagementProperties#isOptimisticRegistrationEnabled()
+	 * optimistic registration} can be used.
 	 * 
 	 * @param newUser
 	 *            user to be added
 	 * @return Positive integer value representing the new user ID on success,
-	 *         or negative integer value on failure.
+	 *         {@link #ADD_USER_NAME_ALREADY_REGISTERED} or
+	 *         {@link #ADD_USER_EMAIL_ALREADY_REGISTERED} if the user name or
+	 *         email is already registered, or other negative integer value on
+	 *         failure.
 	 */
 	int addUser(User newUser);
 
+	/**
+	 * Adds multiple new users, preferably in a single transaction using
+	 * batched inserts. Used by
+	 * {@link UserManager#importUsers(java.util.Iterator, UserImportListener)}
+	 * after it has made sure that the emails and names are not registered.
+	 * 
+	 * @param newUsers
+	 *            users to be added
+	 * @return True if all users were added, false if none was added.
+	 * @since 0.2.0
+	 */
+	boolean addUsers(List<User> newUsers);
+
 	/**
 	 * Cancels all password reset tokens for user with specified id. The
 	 * canceled tokens should no longer be returned by method
@@ -75,6 +119,21 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	boolean confirmUserRegistration(String email);
 
+	/**
+	 * Changes the status of user registration to confirmed and sets the
+	 * user's password, preferably in a single statement. Same as calling
+	 * {@link #confirmUserRegistration(String)} and then
+	 * {@link #setUserPassword(int, UserPassword)}, but in one transaction.
+	 * 
+	 * @param userId
+	 *            id of user whose registration should be confirmed
+	 * @param password
+	 *            password to be set
+	 * @return True on success, otherwise false (no such user, database error).
+	 * @since 0.2.0
+	 */
+	boolean confirmUserRegistrationAndSetPassword(int userId, UserPassword password);
+
 	/**
 	 * Deletes user with specified id from database.
 	 * 
@@ -84,6 +143,50 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	boolean deleteUser(int userId);
 
+	/**
+	 * Passes all registered (not deleted) users to the given sink, ordered by
+	 * their ids. Implementations should read the users in batches or by a
+	 * cursor, so that the memory used doesn't grow with the number of users,
+	 * and may leave out the {@link User#getPassword() password} and
+	 * {@link User#getRegistrationControlCode() registration control code}.
+	 * Users registered or deleted during the export may or may not be
+	 * exported.
+	 * 
+	 * @param sink
+	 *            receives the exported users
+	 * @return Number of exported users.
+	 * @throws IOException
+	 *             if the sink fails, the export is then stopped
+	 * @since 0.2.0
+	 */
+	int exportUsers(UserExportSink sink) throws IOException;
+
+	/**
+	 * Returns those of the given email addresses which are already
+	 * registered, preferably by a single query. Same as calling
+	 * {@link #isEmailRegistered(String)} for each of them.
+	 * 
+	 * @param emails
+	 *            email addresses which should be checked
+	 * @return Registered email addresses, or an empty set if none of them is
+	 *         registered.
+	 * @since 0.2.0
+	 */
+	Set<String> findRegisteredEmails(Collection<String> emails);
+
+	/**
+	 * Returns those of the given user names which are already registered,
+	 * preferably by a single query. Same as calling
+	 * {@link #isUserNameRegistered(String)} for each of them.
+	 * 
+	 * @param names
+	 *            user names which should be checked
+	 * @return Registered user names, or an empty set if none of them is
+	 *         registered.
+	 * @since 0.2.0
+	 */
+	Set<String> findRegisteredUserNames(Collection<String> names);
+
 	/**
 	 * Returns number of users which have been added by method
 	 * {@link #addUser(User)} since the specified date.
@@ -132,6 +235,25 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	User getUserByName(String name);
 
+	/**
+	 * Returns user registered with the specified email address or name, who
+	 * is trying to log in. Implementations should load the user in a single
+	 * query and may leave out data which isn't needed to log in, so the
+	 * {@link User#getRegistrationControlCode() registration control code} of
+	 * the returned user may be null.
+	 * 
+	 * @param userNameOrEmail
+	 *            email address or name of the user which should be returned
+	 * @param email
+	 *            true if <code>userNameOrEmail</code> is an email address
+	 * @return User with the specified email address or name, or null if no
+	 *         such user exists.
+	 * @see #getUserByEmail(String)
+	 * @see #getUserByName(String)
+	 * @since 0.2.0
+	 */
+	User getUserForLogIn(String userNameOrEmail, boolean email);
+
 	/**
 	 * Returns id of user registered with the specified {@link User#getEmail()
 	 * email address}.
@@ -178,6 +300,51 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	boolean isUserNameRegistered(String name);
 
+	/**
+	 * Checks whether the given user name or email is already registered,
+	 * preferably by a single query. Same as calling
+	 * {@link #isUserNameRegistered(String)} and then
+	 * {@link #isEmailRegistered(String)}.
+	 *
+	 * @param email
+	 *            email address which should be checked
+	 * @param name
+	 *            user name which should be checked, can be null
+	 * @return {@link ResultCode#USER_NAME_ALREADY_REGISTERED} if the user name
+	 *         is registered, {@link ResultCode#EMAIL_ALREADY_REGISTERED} if
+	 *         only the email is registered, otherwise {@link ResultCode#OK}.
+	 * @since 0.2.0
+	 */
+	ResultCode checkRegistrationAvailability(String email, String name);
+
+	/**
+	 * Returns a page of registered (not deleted) users, e.g. for an
+	 * administration screen. The pages are meant to be loaded one after
+	 * another: the first page is loaded without a page token, each following
+	 * page by the {@link UserPage#getNextPageToken() token} of the previous
+	 * one. Implementations should find a page by the position of the last
+	 * listed user (keyset pagination) rather than by skipping the previous
+	 * pages, so that loading a page takes the same time at any depth. Users
+	 * registered or deleted in the meantime may appear on or disappear from
+	 * the following pages, but no other user is listed twice or left out.
+	 * 
+	 * @param filter
+	 *            conditions the listed users have to meet
+	 * @param order
+	 *            order of the listed users
+	 * @param pageToken
+	 *            token of the page to be loaded, returned with the previous
+	 *            page loaded with the same filter and order, or null to load
+	 *            the first page
+	 * @param pageSize
+	 *            maximal number of users on the page
+	 * @return Page of users, which may be empty.
+	 * @throws IllegalArgumentException
+	 *             if the page token is invalid or belongs to another order
+	 * @since 0.2.0
+	 */
+	UserPage listUsers(UserListFilter filter, UserListOrder order, String pageToken, int pageSize);
+
 	/**
 	 * Records a log in attempt for the user with specified id.
 	 * 
@@ -192,6 +359,39 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	boolean makeLogInRecord(int userId, boolean logInSuccessful, String usersIp);
 
+	/**
+	 * Records multiple log in attempts, preferably in a single transaction
+	 * using batched inserts. Used by {@link UserManager} when
+	 * {@link UserManagementProperties#isLogInRecordWriteBehindEnabled()} is
+	 * set.
+	 * 
+	 * @param records
+	 *            log in attempts to be recorded, the list is reused by the
+	 *            caller and must not be kept after the method returns
+	 * @return True on success, otherwise false.
+	 * @since 0.2.0
+	 */
+	boolean makeLogInRecords(List<LogInRecord> records);
+
+	/**
+	 * Sets a new password for the user with the specified id and cancels all
+	 * their password reset tokens in a single transaction. Same as calling
+	 * {@link #setUserPassword(int, UserPassword)} and then
+	 * {@link #cancelAllPasswordResetTokens(int)}, except that the password of
+	 * a deleted user is not set.
+	 * 
+	 * @param userId
+	 *            user whose password should be reset
+	 * @param password
+	 *            password to be set
+	 * @return {@link ResultCode#OK} on success,
+	 *         {@link ResultCode#NO_SUCH_USER} if there is no such not deleted
+	 *         user, otherwise {@link ResultCode#DATABASE_ERROR}.
+	 * @see #getNewestPasswordResetToken(String)
+	 * @since 0.2.0
+	 */
+	ResultCode resetUserPassword(int userId, UserPassword password);
+
 	/**
 	 * Sets a new password for the user with the specified id.
 	 * 
@@ -204,4 +404,20 @@ public interface UserDatabaseModel extends Serializable {
 	 */
 	boolean setUserPassword(int userId, UserPassword password);
 
+	/**
+	 * Replaces passwords of multiple users, preferably in a single
+	 * transaction. The password of a user should only be replaced if the
+	 * currently stored password is equal to
+	 * {@link PasswordUpgrade#getOldPassword()}, so a password which has been
+	 * changed in the meantime is not overwritten. Users whose password doesn't
+	 * match should be silently skipped.
+	 * 
+	 * @param upgrades
+	 *            password replacements to be made
+	 * @return True on success, otherwise false.
+	 * @see PasswordHasher#isRehashNeeded(UserPassword)
+	 * @since 0.2.0
+	 */
+	boolean upgradeUserPasswords(List<PasswordUpgrade> upgrades);
+
 }
@@ -0,0 +1,507 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jardoapps.usermodule.containers.LogInRecord;
+import com.jardoapps.usermodule.containers.PasswordResetToken;
+import com.jardoapps.usermodule.containers.PasswordUpgrade;
+import com.jardoapps.usermodule.containers.UserListFilter;
+import com.jardoapps.usermodule.containers.UserPage;
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.defines.UserListOrder;
+
+/**
+ * A {@link UserDatabaseModel} which keeps recently loaded users in memory, so
+ * that repeated look ups of the same user (log in, password checks,
+ * registration confirmation) don't hit the database. Users are cached by
+ * their id, email and name, all other calls are passed to another database
+ * model.
+ * <p>
+ * A cached user is invalidated by {@link #setUserPassword(int, UserPassword)},
+ * {@link #upgradeUserPasswords(List)},
+ * {@link #confirmUserRegistration(String)} and {@link #deleteUser(int)}
+ * called on this instance. Changes made by anybody else are picked up when the
+ * user expires, after
+ * {@link UserManagementProperties#getUserCacheExpirationSeconds()}. When the
+ * cache holds {@link UserManagementProperties#getUserCacheMaxSize()} users,
+ * the least recently used one is evicted. Only existing users are cached, a
+ * look up of a non-existing user always reaches the database.
+ * <p>
+ * Emails and names are compared exactly, so with a database which compares
+ * them case insensitively, a look up with different letter case is a cache
+ * miss. The hit, miss, eviction and expiration counters can be used to size
+ * the cache.
+ * <p>
+ * This class is a part of this library's public API.
+ * 
+ * @since 0.2.0
+ */
+public class UserDatabaseModelCached implements UserDatabaseModel {
+
+	private static final long serialVersionUID = 1L;
+
+	private final UserDatabaseModel delegate;
+
+	private final int maxSize;
+
+	private final long expirationNanos;
+
+	/**
+	 * Users in the order of their last use, guarded by this.
+	 */
+	private transient LinkedHashMap<Integer, CachedUser> usersById;
+
+	private transient Map<String, CachedUser> usersByEmail;
+
+	private transient Map<String, CachedUser> usersByName;
+
+	/**
+	 * Incremented by each invalidation, users loaded from the database while
+	 * it changed are not cached, because they may be outdated already.
+	 * Guarded by this.
+	 */
+	private transient long invalidationCount;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private final AtomicLong expirationCount = new AtomicLong();
+
+	private static class CachedUser {
+
+		private final User user;
+
+		private final long loadTime;
+
+		/**
+		 * False for users loaded by {@link UserDatabaseModel#getUserForLogIn},
+		 * which may lack the registration control code.
+		 */
+		private final boolean complete;
+
+		public CachedUser(User user, long loadTime, boolean complete) {
+			this.user = user;
+			this.loadTime = loadTime;
+			this.complete = complete;
+		}
+	}
+
+	private static User copyUser(User user) {
+		// rank is mutable, callers must not modify the cached instance
+		return new User(user.getId(), user.getName(), user.getEmail(), user.getRegistrationControlCode(), user.isRegistrationConfirmed(),
+				user.getPassword(), user.getRank());
+	}
+
+	private static void removeIndex(Map<String, CachedUser> index, String key, CachedUser cachedUser) {
+		if (key != null && index.get(key) == cachedUser) {
+			index.remove(key);
+		}
+	}
+
+	private void createCache() {
+		usersById = new LinkedHashMap<Integer, CachedUser>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CachedUser> eldest) {
+				if (size() <= maxSize) {
+					return false;
+				}
+
+				CachedUser cachedUser = eldest.getValue();
+				removeIndex(usersByEmail, cachedUser.user.getEmail(), cachedUser);
+				removeIndex(usersByName, cachedUser.user.getName(), cachedUser);
+				evictionCount.incrementAndGet();
+				return true;
+			}
+		};
+		usersByEmail = new HashMap<String, CachedUser>();
+		usersByName = new HashMap<String, CachedUser>();
+	}
+
+	private synchronized long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+	private User lookUp(Map<?, CachedUser> index, Object key) {
+		return lookUp(index, key, false);
+	}
+
+	private synchronized User lookUp(Map<?, CachedUser> index, Object key, boolean completeOnly) {
+		CachedUser cachedUser = index.get(key);
+		if (cachedUser == null || (completeOnly && !cachedUser.complete)) {
+			missCount.incrementAndGet();
+			return null;
+		}
+
+		if (System.nanoTime() - cachedUser.loadTime > expirationNanos) {
+			remove(cachedUser);
+			expirationCount.incrementAndGet();
+			missCount.incrementAndGet();
+			return null;
+		}
+
+		// moves the user to the end of the eviction order
+		usersById.get(cachedUser.user.getId());
+
+		hitCount.incrementAndGet();
+		return cachedUser.user;
+	}
+
+	private synchronized void put(User user, long invalidationCountBeforeLoad, boolean complete) {
+		if (invalidationCount != invalidationCountBeforeLoad) {
+			return;
+		}
+
+		// the email or name may still be cached for an user deleted elsewhere
+		for (CachedUser existingUser : new CachedUser[] { usersById.get(user.getId()), usersByEmail.get(user.getEmail()),
+				user.getName() == null ? null : usersByName.get(user.getName()) }) {
+			if (existingUser != null) {
+				remove(existingUser);
+			}
+		}
+
+		CachedUser cachedUser = new CachedUser(copyUser(user), System.nanoTime(), complete);
+		usersById.put(user.getId(), cachedUser);
+		if (user.getEmail() != null) {
+			usersByEmail.put(user.getEmail(), cachedUser);
+		}
+		if (user.getName() != null) {
+			usersByName.put(user.getName(), cachedUser);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		createCache();
+	}
+
+	private synchronized void remove(CachedUser cachedUser) {
+		usersById.remove(cachedUser.user.getId());
+		removeIndex(usersByEmail, cachedUser.user.getEmail(), cachedUser);
+		removeIndex(usersByName, cachedUser.user.getName(), cachedUser);
+	}
+
+	@Override
+	public boolean addPasswordResetToken(PasswordResetToken token) {
+		return delegate.addPasswordResetToken(token);
+	}
+
+	@Override
+	public int addUser(User newUser) {
+		return delegate.addUser(newUser);
+	}
+
+	@Override
+	public boolean addUsers(List<User> newUsers) {
+		return delegate.addUsers(newUsers);
+	}
+
+	@Override
+	public boolean cancelAllPasswordResetTokens(int userId) {
+		return delegate.cancelAllPasswordResetTokens(userId);
+	}
+
+	@Override
+	public boolean confirmUserRegistration(String email) {
+		boolean result = delegate.confirmUserRegistration(email);
+		invalidate(email);
+		return result;
+	}
+
+	@Override
+	public boolean confirmUserRegistrationAndSetPassword(int userId, UserPassword password) {
+		boolean result = delegate.confirmUserRegistrationAndSetPassword(userId, password);
+		invalidate(userId);
+		return result;
+	}
+
+	@Override
+	public boolean deleteUser(int userId) {
+		boolean result = delegate.deleteUser(userId);
+		invalidate(userId);
+		return result;
+	}
+
+	@Override
+	public int exportUsers(UserExportSink sink) throws IOException {
+		return delegate.exportUsers(sink);
+	}
+
+	@Override
+	public Set<String> findRegisteredEmails(Collection<String> emails) {
+		return delegate.findRegisteredEmails(emails);
+	}
+
+	@Override
+	public Set<String> findRegisteredUserNames(Collection<String> names) {
+		return delegate.findRegisteredUserNames(names);
+	}
+
+	@Override
+	public int getRegisteredUserCount(Date since) {
+		return delegate.getRegisteredUserCount(since);
+	}
+
+	@Override
+	public PasswordResetToken getNewestPasswordResetToken(String email) {
+		return delegate.getNewestPasswordResetToken(email);
+	}
+
+	@Override
+	public User getUserByEmail(String email) {
+		User user = lookUp(usersByEmail, email, true);
+		if (user != null) {
+			return copyUser(user);
+		}
+
+		long invalidations = getInvalidationCount();
+		user = delegate.getUserByEmail(email);
+		if (user != null) {
+			put(user, invalidations, true);
+		}
+		return user;
+	}
+
+	@Override
+	public User getUserByName(String name) {
+		User user = lookUp(usersByName, name, true);
+		if (user != null) {
+			return copyUser(user);
+		}
+
+		long invalidations = getInvalidationCount();
+		user = delegate.getUserByName(name);
+		if (user != null) {
+			put(user, invalidations, true);
+		}
+		return user;
+	}
+
+	/**
+	 * Users loaded by this method are cached too, so repeated log ins don't
+	 * hit the database. They may be incomplete, so
+	 * {@link #getUserByEmail(String)} and {@link #getUserByName(String)}
+	 * don't use them and load the whole user instead.
+	 */
+	@Override
+	public User getUserForLogIn(String userNameOrEmail, boolean email) {
+		User user = lookUp(email ? usersByEmail : usersByName, userNameOrEmail);
+		if (user != null) {
+			return copyUser(user);
+		}
+
+		long invalidations = getInvalidationCount();
+		user = delegate.getUserForLogIn(userNameOrEmail, email);
+		if (user != null) {
+			put(user, invalidations, false);
+		}
+		return user;
+	}
+
+	@Override
+	public int getUserIdByEmail(String email) {
+		User user = lookUp(usersByEmail, email);
+		if (user != null) {
+			return user.getId();
+		}
+
+		return delegate.getUserIdByEmail(email);
+	}
+
+	@Override
+	public UserPassword getUserPassword(int userId) {
+		User user = lookUp(usersById, userId);
+		if (user != null) {
+			return user.getPassword();
+		}
+
+		return delegate.getUserPassword(userId);
+	}
+
+	@Override
+	public boolean isEmailRegistered(String email) {
+		return lookUp(usersByEmail, email) != null || delegate.isEmailRegistered(email);
+	}
+
+	@Override
+	public boolean isUserNameRegistered(String name) {
+		return lookUp(usersByName, name) != null || delegate.isUserNameRegistered(name);
+	}
+
+	@Override
+	public ResultCode checkRegistrationAvailability(String email, String name) {
+		if (name != null && lookUp(usersByName, name) != null) {
+			return ResultCode.USER_NAME_ALREADY_REGISTERED;
+		}
+
+		if (lookUp(usersByEmail, email) != null) {
+			if (name != null && delegate.isUserNameRegistered(name)) {
+				return ResultCode.USER_NAME_ALREADY_REGISTERED;
+			}
+			return ResultCode.EMAIL_ALREADY_REGISTERED;
+		}
+
+		return delegate.checkRegistrationAvailability(email, name);
+	}
+
+	@Override
+	public UserPage listUsers(UserListFilter filter, UserListOrder order, String pageToken, int pageSize) {
+		return delegate.listUsers(filter, order, pageToken, pageSize);
+	}
+
+	@Override
+	public boolean makeLogInRecord(int userId, boolean logInSuccessful, String usersIp) {
+		return delegate.makeLogInRecord(userId, logInSuccessful, usersIp);
+	}
+
+	@Override
+	public boolean makeLogInRecords(List<LogInRecord> records) {
+		return delegate.makeLogInRecords(records);
+	}
+
+	@Override
+	public ResultCode resetUserPassword(int userId, UserPassword password) {
+		ResultCode result = delegate.resetUserPassword(userId, password);
+		invalidate(userId);
+		return result;
+	}
+
+	@Override
+	public boolean setUserPassword(int userId, UserPassword password) {
+		boolean result = delegate.setUserPassword(userId, password);
+		invalidate(userId);
+		return result;
+	}
+
+	@Override
+	public boolean upgradeUserPasswords(List<PasswordUpgrade> upgrades) {
+		boolean result = delegate.upgradeUserPasswords(upgrades);
+		for (PasswordUpgrade upgrade : upgrades) {
+			invalidate(upgrade.getUserId());
+		}
+		return result;
+	}
+
+	/**
+	 * Removes the user with the specified id from the cache. Call this method
+	 * when the user has been modified in the database by someone else than
+	 * this instance.
+	 */
+	public synchronized void invalidate(int userId) {
+		++invalidationCount;
+		CachedUser cachedUser = usersById.get(userId);
+		if (cachedUser != null) {
+			remove(cachedUser);
+		}
+	}
+
+	/**
+	 * Removes the user with the specified email address from the cache.
+	 */
+	public synchronized void invalidate(String email) {
+		++invalidationCount;
+		CachedUser cachedUser = usersByEmail.get(email);
+		if (cachedUser != null) {
+			remove(cachedUser);
+		}
+	}
+
+	/**
+	 * Removes all users from the cache.
+	 */
+	public synchronized void invalidateAll() {
+		++invalidationCount;
+		usersById.clear();
+		usersByEmail.clear();
+		usersByName.clear();
+	}
+
+	/**
+	 * Returns number of users which are currently cached.
+	 */
+	public synchronized int getSize() {
+		return usersById.size();
+	}
+
+	/**
+	 * Returns number of look ups which have been answered from the cache.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns number of look ups which had to be passed to the underlying
+	 * database model, including look ups of expired users.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Returns number of users which have been evicted because the cache was
+	 * full. A high number compared to the misses means the cache is too
+	 * small.
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * Returns number of users which have been removed because they expired.
+	 */
+	public long getExpirationCount() {
+		return expirationCount.get();
+	}
+
+	/**
+	 * Creates a new caching database model.
+	 * 
+	 * @param delegate
+	 *            database model which will be used to load and modify the
+	 *            users
+	 * @param properties
+	 *            properties which specify the cache size and expiration
+	 */
+	public UserDatabaseModelCached(UserDatabaseModel delegate, UserManagementProperties properties) {
+		this.delegate = delegate;
+		this.maxSize = properties.getUserCacheMaxSize();
+		this.expirationNanos = TimeUnit.SECONDS.toNanos(properties.getUserCacheExpirationSeconds());
+		createCache();
+	}
+
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.IOException;
+
+/**
+ * Receives the users exported by
+ * {@link UserDatabaseModel#exportUsers(UserExportSink)} one at a time, e.g.
+ * to write them into a file.
+ * <p>
+ * Available implementations:
+ * <li>{@link UserCsvExportSink} - CSV with a header line
+ * <li>{@link UserBinaryExportSink} - a compact binary format, which can be
+ * read by {@link UserBinaryExportReader}
+ * 
+ * @since 0.2.0
+ */
+public interface UserExportSink {
+
+	/**
+	 * Writes an exported user.
+	 * 
+	 * @param user
+	 *            exported user, its password and registration control code
+	 *            are null
+	 * @throws IOException
+	 *             if the user can't be written, the export is stopped
+	 */
+	void write(User user) throws IOException;
+
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import com.jardoapps.usermodule.containers.ImportedUser;
+
+/**
+ * Receives the progress of
+ * {@link UserManager#importUsers(java.util.Iterator, UserImportListener)}.
+ * The methods are called on the thread which runs the import.
+ * 
+ * @since 0.2.0
+ */
+public interface UserImportListener {
+
+	/**
+	 * Called after every batch of imported users.
+	 * 
+	 * @param processedCount
+	 *            number of users read from the input so far
+	 * @param importedCount
+	 *            number of users added to the database so far
+	 */
+	void importProgressed(int processedCount, int importedCount);
+
+	/**
+	 * Called for every user who was not imported.
+	 * 
+	 * @param user
+	 *            the rejected user
+	 * @param reason
+	 *            {@link ResultCode#INVALID_EMAIL INVALID_EMAIL},
+	 *            {@link ResultCode#EMAIL_ALREADY_REGISTERED EMAIL_ALREADY_REGISTERED},
+	 *            {@link ResultCode#USER_NAME_ALREADY_REGISTERED USER_NAME_ALREADY_REGISTERED}
+	 *            (also when the email or name occurs earlier in the input),
+	 *            {@link ResultCode#DATABASE_ERROR DATABASE_ERROR} or
+	 *            {@link ResultCode#SERVER_BUSY SERVER_BUSY} (the password
+	 *            hashing pool is full)
+	 */
+	void userRejected(ImportedUser user, ResultCode reason);
+
+}
@@ -0,0 +1,213 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jardoapps.usermodule.containers.ImportedUser;
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.utils.EmailUtils;
+
+/**
+ * Imports users in batches. Every batch is checked against the registered
+ * emails and names by two queries, the passwords of the accepted users are
+ * hashed in parallel on a fork-join pool and the users are added to the
+ * database together. Used by
+ * {@link UserManager#importUsers(Iterator, UserImportListener)}.
+ * 
+ * @since 0.2.0
+ */
+class UserImporter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(UserImporter.class);
+
+	/**
+	 * Number of passwords hashed by one fork-join task. Hashing a password
+	 * takes long enough for a few of them to outweigh the cost of a task.
+	 */
+	private static final int HASHING_TASK_SIZE = 4;
+
+	private final UserManager userManager;
+
+	private final UserDatabaseModel databaseModel;
+
+	private final int batchSize;
+
+	private final int threadCount;
+
+	/**
+	 * Creates the users of one part of a batch, splitting it in halves until
+	 * the parts are small enough.
+	 */
+	private class CreateUsersTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<ImportedUser> importedUsers;
+		private final User[] newUsers;
+		private final int from;
+		private final int to;
+
+		CreateUsersTask(List<ImportedUser> importedUsers, User[] newUsers, int from, int to) {
+			this.importedUsers = importedUsers;
+			this.newUsers = newUsers;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= HASHING_TASK_SIZE) {
+				for (int i = from; i < to; i++) {
+					newUsers[i] = createUser(importedUsers.get(i));
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new CreateUsersTask(importedUsers, newUsers, from, middle), new CreateUsersTask(importedUsers, newUsers, middle, to));
+			}
+		}
+	}
+
+	private User createUser(ImportedUser importedUser) {
+		String password = importedUser.getPassword() != null ? importedUser.getPassword() : "";
+		UserPassword userPassword = userManager.createUserPassword(password);
+		String controlCode = userManager.generateRandomMD5Hash();
+		return new User(-1, importedUser.getName(), importedUser.getEmail(), controlCode, importedUser.isRegistrationConfirmed(), userPassword, importedUser.getRank());
+	}
+
+	/**
+	 * Returns the users of the batch which can be registered. The others are
+	 * reported to the listener.
+	 */
+	private List<ImportedUser> filterBatch(List<ImportedUser> batch, UserImportListener listener) {
+		Set<String> emails = new HashSet<>();
+		Set<String> names = new HashSet<>();
+		List<ImportedUser> candidates = new ArrayList<>(batch.size());
+
+		for (ImportedUser user : batch) {
+			if (!EmailUtils.isEmailValid(user.getEmail())) {
+				listener.userRejected(user, ResultCode.INVALID_EMAIL);
+			} else if (user.getName() != null && names.contains(user.getName())) {
+				listener.userRejected(user, ResultCode.USER_NAME_ALREADY_REGISTERED);
+			} else if (emails.contains(user.getEmail())) {
+				listener.userRejected(user, ResultCode.EMAIL_ALREADY_REGISTERED);
+			} else {
+				emails.add(user.getEmail());
+				if (user.getName() != null) {
+					names.add(user.getName());
+				}
+				candidates.add(user);
+			}
+		}
+
+		if (candidates.isEmpty()) {
+			return candidates;
+		}
+
+		Set<String> registeredEmails = databaseModel.findRegisteredEmails(emails);
+		Set<String> registeredNames = names.isEmpty() ? Collections.<String> emptySet() : databaseModel.findRegisteredUserNames(names);
+		if (registeredEmails.isEmpty() && registeredNames.isEmpty()) {
+			return candidates;
+		}
+
+		List<ImportedUser> accepted = new ArrayList<>(candidates.size());
+		for (ImportedUser user : candidates) {
+			if (user.getName() != null && registeredNames.contains(user.getName())) {
+				listener.userRejected(user, ResultCode.USER_NAME_ALREADY_REGISTERED);
+			} else if (registeredEmails.contains(user.getEmail())) {
+				listener.userRejected(user, ResultCode.EMAIL_ALREADY_REGISTERED);
+			} else {
+				accepted.add(user);
+			}
+		}
+		return accepted;
+	}
+
+	private int importBatch(List<ImportedUser> batch, ForkJoinPool pool, UserImportListener listener) {
+		List<ImportedUser> accepted = filterBatch(batch, listener);
+		if (accepted.isEmpty()) {
+			return 0;
+		}
+
+		User[] newUsers = new User[accepted.size()];
+		try {
+			pool.invoke(new CreateUsersTask(accepted, newUsers, 0, newUsers.length));
+		} catch (RejectedExecutionException e) {
+			LOGGER.warn("Password hashing rejected, the hashing pool is full: {}", e.getMessage());
+			for (ImportedUser user : accepted) {
+				listener.userRejected(user, ResultCode.SERVER_BUSY);
+			}
+			return 0;
+		}
+
+		if (!databaseModel.addUsers(Arrays.asList(newUsers))) {
+			LOGGER.error("DB error: Failed to import {} users.", newUsers.length);
+			for (ImportedUser user : accepted) {
+				listener.userRejected(user, ResultCode.DATABASE_ERROR);
+			}
+			return 0;
+		}
+		return newUsers.length;
+	}
+
+	int importUsers(Iterator<ImportedUser> users, UserImportListener listener) {
+		ForkJoinPool pool = new ForkJoinPool(threadCount);
+		try {
+			List<ImportedUser> batch = new ArrayList<>(batchSize);
+			int processedCount = 0;
+			int importedCount = 0;
+
+			while (users.hasNext()) {
+				batch.clear();
+				while (batch.size() < batchSize && users.hasNext()) {
+					batch.add(users.next());
+				}
+
+				importedCount += importBatch(batch, pool, listener);
+				processedCount += batch.size();
+				listener.importProgressed(processedCount, importedCount);
+			}
+
+			LOGGER.info("Imported {} of {} users.", importedCount, processedCount);
+			return importedCount;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	UserImporter(UserManager userManager, UserDatabaseModel databaseModel, UserManagementProperties properties) {
+		this.userManager = userManager;
+		this.databaseModel = databaseModel;
+		this.batchSize = Math.max(1, properties.getUserImportBatchSize());
+		this.threadCount = Math.max(1, properties.getUserImportThreads());
+	}
+
+}
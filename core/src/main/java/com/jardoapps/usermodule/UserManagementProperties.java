@@ -18,6 +18,8 @@
 
 package com.jardoapps.usermodule;
 
+import com.jardoapps.usermodule.defines.LogInRecordOverflowPolicy;
+
 /**
  * Use an instance of this interface to configure basic User Module properties.
  *
@@ -30,4 +32,139 @@ public interface UserManagementProperties {
 
 	int getMinPasswordLength();
 
+	/**
+	 * Returns number of iterations used by {@link PasswordHasherPbkdf2} when
+	 * calculating new password hashes.
+	 */
+	int getPasswordHashIterations();
+
+	/**
+	 * Returns maximal time (in milliseconds) a single password verification
+	 * should take. If positive, {@link PasswordHasherPbkdf2} calibrates its
+	 * number of iterations to fit into this budget, using
+	 * {@link #getPasswordHashIterations()} as the lower limit. Zero disables
+	 * the calibration.
+	 */
+	long getPasswordHashTimeBudgetMillis();
+
+	/**
+	 * Returns number of threads used by {@link PasswordHasherPooled} to
+	 * calculate password hashes.
+	 */
+	int getPasswordHashingThreads();
+
+	/**
+	 * Returns maximal number of hashing requests which can wait for a free
+	 * {@link PasswordHasherPooled} thread.
+	 */
+	int getPasswordHashingQueueCapacity();
+
+	/**
+	 * Returns maximal number of outdated password hashes which are re-hashed
+	 * and written to the database together.
+	 */
+	int getPasswordHashUpgradeBatchSize();
+
+	/**
+	 * Returns maximal number of outdated password hashes waiting to be
+	 * re-hashed. When the queue is full, further upgrades are skipped until
+	 * the user's next log in.
+	 */
+	int getPasswordHashUpgradeQueueCapacity();
+
+	/**
+	 * Returns true if log in records should be written asynchronously, in
+	 * batches, instead of a separate database write during every log in.
+	 */
+	boolean isLogInRecordWriteBehindEnabled();
+
+	/**
+	 * Returns maximal number of log in records waiting to be written when
+	 * {@link #isLogInRecordWriteBehindEnabled()} is set.
+	 */
+	int getLogInRecordQueueCapacity();
+
+	/**
+	 * Returns maximal number of log in records written in a single batch.
+	 */
+	int getLogInRecordBatchSize();
+
+	/**
+	 * Returns maximal time (in milliseconds) a log in record waits for its
+	 * batch to be filled before the batch is written anyway.
+	 */
+	long getLogInRecordMaxBatchDelayMillis();
+
+	/**
+	 * Returns what happens to a log in record when the queue of waiting
+	 * records is full.
+	 */
+	LogInRecordOverflowPolicy getLogInRecordOverflowPolicy();
+
+	/**
+	 * Returns maximal time (in milliseconds) a log in waits for free space in
+	 * the queue of waiting records when the overflow policy is
+	 * {@link LogInRecordOverflowPolicy#WAIT}.
+	 */
+	long getLogInRecordOverflowTimeoutMillis();
+
+	/**
+	 * Returns path of the file used to spool log in records, or null if log
+	 * in records shouldn't be spooled. When set, log in records are written
+	 * into this memory-mapped file first and replayed into the database in
+	 * the background, so log ins never wait for the database and records
+	 * survive a database outage as well as an application restart. The batch
+	 * size, batch delay and overflow settings of the asynchronous writer
+	 * apply to the spool as well.
+	 */
+	String getLogInRecordSpoolFile();
+
+	/**
+	 * Returns size (in bytes) of a newly created log in record spool file. An
+	 * existing file keeps its size.
+	 */
+	int getLogInRecordSpoolSizeBytes();
+
+	/**
+	 * Returns maximal number of users kept by {@link UserDatabaseModelCached}.
+	 * When the cache is full, the least recently used user is evicted.
+	 */
+	int getUserCacheMaxSize();
+
+	/**
+	 * Returns time (in seconds) after which a user cached by
+	 * {@link UserDatabaseModelCached} is loaded from the database again.
+	 */
+	int getUserCacheExpirationSeconds();
+
+	/**
+	 * Returns true if {@link UserManager} should register users without
+	 * checking first whether their email and name are free. The database
+	 * model must then refuse duplicates by itself (e.g. by unique constraints)
+	 * and report them by the result of {@link UserDatabaseModel#addUser(User)},
+	 * which saves a query per registration and is safe against concurrent
+	 * registrations of the same email or name.
+	 * <p>
+	 * <b>Only enable this when the database enforces the uniqueness.</b>
+	 * Nothing checks that at startup. The usermodule-jpa schema doesn't
+	 * enforce it by itself: its indexes are not unique, and the unique
+	 * indexes of not deleted users in <code>sql/usermodule-indexes.sql</code>
+	 * need partial indexes (e.g. PostgreSQL, SQL Server), so they have to be
+	 * created by hand. Without them, duplicate emails and names are
+	 * registered silently.
+	 */
+	boolean isOptimisticRegistrationEnabled();
+
+	/**
+	 * Returns number of users which are read, checked and inserted together by
+	 * {@link UserManager#importUsers(java.util.Iterator, UserImportListener)}.
+	 * Every batch is inserted in its own transaction.
+	 */
+	int getUserImportBatchSize();
+
+	/**
+	 * Returns number of threads which hash the passwords of imported users.
+	 */
+	int getUserImportThreads();
+
 }
@@ -1,11 +1,51 @@
 package com.jardoapps.usermodule;
 
+import com.jardoapps.usermodule.defines.LogInRecordOverflowPolicy;
+
 public class UserManagementPropertiesImpl implements UserManagementProperties {
 
 	private int passwordResetTokenExpirationMinutes = 15;
 
 	private int minPasswordLength = 6;
 
+	private int passwordHashIterations = 100000;
+
+	private long passwordHashTimeBudgetMillis = 0;
+
+	private int passwordHashingThreads = Runtime.getRuntime().availableProcessors();
+
+	private int passwordHashingQueueCapacity = 1000;
+
+	private int passwordHashUpgradeBatchSize = 100;
+
+	private int passwordHashUpgradeQueueCapacity = 10000;
+
+	private boolean logInRecordWriteBehindEnabled = false;
+
+	private int logInRecordQueueCapacity = 10000;
+
+	private int logInRecordBatchSize = 500;
+
+	private long logInRecordMaxBatchDelayMillis = 100;
+
+	private LogInRecordOverflowPolicy logInRecordOverflowPolicy = LogInRecordOverflowPolicy.WRITE_SYNCHRONOUSLY;
+
+	private long logInRecordOverflowTimeoutMillis = 100;
+
+	private String logInRecordSpoolFile = null;
+
+	private int logInRecordSpoolSizeBytes = 16 * 1024 * 1024;
+
+	private int userCacheMaxSize = 10000;
+
+	private int userCacheExpirationSeconds = 60;
+
+	private boolean optimisticRegistrationEnabled = false;
+
+	private int userImportBatchSize = 1000;
+
+	private int userImportThreads = Runtime.getRuntime().availableProcessors();
+
 	@Override
 	public int getPasswordResetTokenExpirationMinutes() {
 		return passwordResetTokenExpirationMinutes;
@@ -24,4 +64,175 @@ public class UserManagementPropertiesImpl implements UserManagementProperties {
 		this.minPasswordLength = minPasswordLength;
 	}
 
+	@Override
+	public int getPasswordHashIterations() {
+		return passwordHashIterations;
+	}
+
+	public void setPasswordHashIterations(int passwordHashIterations) {
+		this.passwordHashIterations = passwordHashIterations;
+	}
+
+	@Override
+	public int getPasswordHashingThreads() {
+		return passwordHashingThreads;
+	}
+
+	public void setPasswordHashingThreads(int passwordHashingThreads) {
+		this.passwordHashingThreads = passwordHashingThreads;
+	}
+
+	@Override
+	public int getPasswordHashingQueueCapacity() {
+		return passwordHashingQueueCapacity;
+	}
+
+	public void setPasswordHashingQueueCapacity(int passwordHashingQueueCapacity) {
+		this.passwordHashingQueueCapacity = passwordHashingQueueCapacity;
+	}
+
+	@Override
+	public int getPasswordHashUpgradeBatchSize() {
+		return passwordHashUpgradeBatchSize;
+	}
+
+	public void setPasswordHashUpgradeBatchSize(int passwordHashUpgradeBatchSize) {
+		this.passwordHashUpgradeBatchSize = passwordHashUpgradeBatchSize;
+	}
+
+	@Override
+	public int getPasswordHashUpgradeQueueCapacity() {
+		return passwordHashUpgradeQueueCapacity;
+	}
+
+	public void setPasswordHashUpgradeQueueCapacity(int passwordHashUpgradeQueueCapacity) {
+		this.passwordHashUpgradeQueueCapacity = passwordHashUpgradeQueueCapacity;
+	}
+
+	@Override
+	public long getPasswordHashTimeBudgetMillis() {
+		return passwordHashTimeBudgetMillis;
+	}
+
+	public void setPasswordHashTimeBudgetMillis(long passwordHashTimeBudgetMillis) {
+		this.passwordHashTimeBudgetMillis = passwordHashTimeBudgetMillis;
+	}
+
+	@Override
+	public boolean isLogInRecordWriteBehindEnabled() {
+		return logInRecordWriteBehindEnabled;
+	}
+
+	public void setLogInRecordWriteBehindEnabled(boolean logInRecordWriteBehindEnabled) {
+		this.logInRecordWriteBehindEnabled = logInRecordWriteBehindEnabled;
+	}
+
+	@Override
+	public int getLogInRecordQueueCapacity() {
+		return logInRecordQueueCapacity;
+	}
+
+	public void setLogInRecordQueueCapacity(int logInRecordQueueCapacity) {
+		this.logInRecordQueueCapacity = logInRecordQueueCapacity;
+	}
+
+	@Override
+	public int getLogInRecordBatchSize() {
+		return logInRecordBatchSize;
+	}
+
+	public void setLogInRecordBatchSize(int logInRecordBatchSize) {
+		this.logInRecordBatchSize = logInRecordBatchSize;
+	}
+
+	@Override
+	public long getLogInRecordMaxBatchDelayMillis() {
+		return logInRecordMaxBatchDelayMillis;
+	}
+
+	public void setLogInRecordMaxBatchDelayMillis(long logInRecordMaxBatchDelayMillis) {
+		this.logInRecordMaxBatchDelayMillis = logInRecordMaxBatchDelayMillis;
+	}
+
+	@Override
+	public LogInRecordOverflowPolicy getLogInRecordOverflowPolicy() {
+		return logInRecordOverflowPolicy;
+	}
+
+	public void setLogInRecordOverflowPolicy(LogInRecordOverflowPolicy logInRecordOverflowPolicy) {
+		this.logInRecordOverflowPolicy = logInRecordOverflowPolicy;
+	}
+
+	@Override
+	public long getLogInRecordOverflowTimeoutMillis() {
+		return logInRecordOverflowTimeoutMillis;
+	}
+
+	public void setLogInRecordOverflowTimeoutMillis(long logInRecordOverflowTimeoutMillis) {
+		this.logInRecordOverflowTimeoutMillis = logInRecordOverflowTimeoutMillis;
+	}
+
+	@Override
+	public String getLogInRecordSpoolFile() {
+		return logInRecordSpoolFile;
+	}
+
+	public void setLogInRecordSpoolFile(String logInRecordSpoolFile) {
+		this.logInRecordSpoolFile = logInRecordSpoolFile;
+	}
+
+	@Override
+	public int getLogInRecordSpoolSizeBytes() {
+		return logInRecordSpoolSizeBytes;
+	}
+
+	public void setLogInRecordSpoolSizeBytes(int logInRecordSpoolSizeBytes) {
+		this.logInRecordSpoolSizeBytes = logInRecordSpoolSizeBytes;
+	}
+
+	@Override
+	public int getUserCacheMaxSize() {
+		return userCacheMaxSize;
+	}
+
+	public void setUserCacheMaxSize(int userCacheMaxSize) {
+		this.userCacheMaxSize = userCacheMaxSize;
+	}
+
+	@Override
+	public int getUserCacheExpirationSeconds() {
+		return userCacheExpirationSeconds;
+	}
+
+	public void setUserCacheExpirationSeconds(int userCacheExpirationSeconds) {
+		this.userCacheExpirationSeconds = userCacheExpirationSeconds;
+	}
+
+	@Override
+	public boolean isOptimisticRegistrationEnabled() {
+		return optimisticRegistrationEnabled;
+	}
+
+	public void setOptimisticRegistrationEnabled(boolean optimisticRegistrationEnabled) {
+		this.optimisticRegistrationEnabled = optimisticRegistrationEnabled;
+	}
+
+	@Override
+	public int getUserImportBatchSize() {
+		return userImportBatchSize;
+	}
+
+	public void setUserImportBatchSize(int userImportBatchSize) {
+		this.userImportBatchSize = userImportBatchSize;
+	}
+
+	@Override
+	public int getUserImportThreads() {
+		return userImportThreads;
+	}
+
+	public void setUserImportThreads(int userImportThreads) {
+		this.userImportThreads = userImportThreads;
+	}
+
 }
@@ -18,24 +18,28 @@
 
 package com.jardoapps.usermodule;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jardoapps.usermodule.containers.ImportedUser;
+import com.jardoapps.usermodule.containers.LogInRecord;
 import com.jardoapps.usermodule.containers.PasswordResetToken;
 import com.jardoapps.usermodule.containers.UserPassword;
 import com.jardoapps.usermodule.defines.EmailType;
 import com.jardoapps.usermodule.utils.EmailUtils;
+import com.jardoapps.usermodule.utils.SecureTokenGenerator;
 
 /**
  * The main class which contains all the user management logic such as user
@@ -59,8 +63,7 @@ public class UserManager implements Serializable {
 	private static final byte MD5_HASH_LENGTH = 16;
 	private static final long MILIS_IN_MINUTE = 60000L;
 	private static final byte PASSWORD_SALT_LENGTH = 32;
-
-	private static final String PASSWORD_HASH_ENCODING = "UTF-16";
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000L;
 
 	private static final long serialVersionUID = 1L;
 
@@ -76,9 +79,23 @@ public class UserManager implements Serializable {
 	@Inject
 	private SessionModel sessionModel;
 
-	private SecureRandom randomGenerator;
+	/**
+	 * Injected as a provider, so that applications which don't define a
+	 * {@link PasswordHasher} keep working with the hash format of previous
+	 * versions instead of failing on an unsatisfied injection point.
+	 */
+	@Inject
+	private Provider<PasswordHasher> passwordHasherProvider;
+
+	private transient volatile PasswordHasher passwordHasher;
 
-	private transient MessageDigest sha256;
+	private final SecureTokenGenerator tokenGenerator;
+
+	// created by start(), or on first use by double-checked locking, so the
+	// log in path doesn't take a lock
+	private transient volatile PasswordHashUpgrader passwordHashUpgrader;
+
+	private transient volatile LogInRecordQueue logInRecordQueue;
 
 	private ResultCode checkRegistrationConfirmationPreconditions(User user, String registrationControlCode) {
 
@@ -98,35 +115,118 @@ public class UserManager implements Serializable {
 	}
 
 	private ResultCode checkRegistrationPreconditions(String userEmail, String userName) {
+		return databaseModel.checkRegistrationAvailability(userEmail, userName);
+	}
 
-		if (userName != null) {
-			if (databaseModel.isUserNameRegistered(userName)) {
+	private ResultCode getAddUserFailureResult(int addUserResult, String email, String name) {
+		switch (addUserResult) {
+			case UserDatabaseModel.ADD_USER_EMAIL_ALREADY_REGISTERED:
+				return ResultCode.EMAIL_ALREADY_REGISTERED;
+			case UserDatabaseModel.ADD_USER_NAME_ALREADY_REGISTERED:
 				return ResultCode.USER_NAME_ALREADY_REGISTERED;
-			}
-		}
-
-		if (databaseModel.isEmailRegistered(userEmail)) {
-			return ResultCode.EMAIL_ALREADY_REGISTERED;
+			default:
+				LOGGER.error("DB error: Failed to add user: name={}, email={}.", name, email);
+				return ResultCode.DATABASE_ERROR;
 		}
+	}
 
-		return ResultCode.OK;
+	private static ResultCode getHashingRejectedResult(RejectedExecutionException e) {
+		LOGGER.warn("Password hashing rejected, the hashing pool is full: {}", e.getMessage());
+		return ResultCode.SERVER_BUSY;
 	}
 
-	private UserPassword createUserPassword(String password) {
+	UserPassword createUserPassword(String password) {
 		String salt = generatePasswordSalt();
 		String hash = calculatePasswordHash(password, salt);
 
 		return new UserPassword(hash, salt);
 	}
 
-	private String generateRandomMD5Hash() {
-		byte[] bytes = new byte[MD5_HASH_LENGTH];
-		randomGenerator.nextBytes(bytes);
-		return toHex(bytes);
+	String generateRandomMD5Hash() {
+		return tokenGenerator.generateToken(MD5_HASH_LENGTH);
+	}
+
+	private LogInRecordQueue createLogInRecordQueue() {
+		String spoolFile = properties.getLogInRecordSpoolFile();
+		if (spoolFile != null) {
+			try {
+				return new LogInRecordSpool(new File(spoolFile), properties.getLogInRecordSpoolSizeBytes(), databaseModel, properties);
+			} catch (IOException e) {
+				LOGGER.error("Failed to open log in record spool {}, log in records will be kept in memory only.", spoolFile, e);
+			}
+		}
+		return new LogInRecordWriter(databaseModel, properties);
+	}
+
+	private LogInRecordQueue getLogInRecordQueue() {
+		LogInRecordQueue queue = logInRecordQueue;
+		if (queue == null) {
+			synchronized (this) {
+				queue = logInRecordQueue;
+				if (queue == null) {
+					queue = createLogInRecordQueue();
+					logInRecordQueue = queue;
+				}
+			}
+		}
+		return queue;
+	}
+
+	/**
+	 * Returns the password hasher set by {@link #setPasswordHasher}, the one
+	 * provided by the container, or {@link PasswordHasherSha256} if there is
+	 * none.
+	 */
+	private PasswordHasher getPasswordHasher() {
+		PasswordHasher hasher = passwordHasher;
+		if (hasher == null) {
+			hasher = lookUpPasswordHasher();
+			passwordHasher = hasher;
+		}
+		return hasher;
+	}
+
+	private PasswordHasher lookUpPasswordHasher() {
+		if (passwordHasherProvider != null) {
+			try {
+				return passwordHasherProvider.get();
+			} catch (RuntimeException e) {
+				// Spring and CDI report a missing bean by different exceptions
+				LOGGER.info("No password hasher available ({}), using PasswordHasherSha256.", e.toString());
+			}
+		}
+		return new PasswordHasherSha256();
+	}
+
+	private PasswordHashUpgrader getPasswordHashUpgrader() {
+		PasswordHashUpgrader upgrader = passwordHashUpgrader;
+		if (upgrader == null) {
+			synchronized (this) {
+				upgrader = passwordHashUpgrader;
+				if (upgrader == null) {
+					upgrader = new PasswordHashUpgrader(this, databaseModel, properties);
+					passwordHashUpgrader = upgrader;
+				}
+			}
+		}
+		return upgrader;
+	}
+
+	private boolean isLogInRecordWrittenBehind() {
+		return properties.isLogInRecordWriteBehindEnabled() || properties.getLogInRecordSpoolFile() != null;
 	}
 
 	private boolean makeLogInRecord(int userId, boolean logInSuccessfull, String usersIp) {
 
+		if (isLogInRecordWrittenBehind()) {
+			return writeLogInRecordBehind(new LogInRecord(userId, logInSuccessfull, usersIp, new Date()));
+		}
+
+		return makeLogInRecordSynchronously(userId, logInSuccessfull, usersIp);
+	}
+
+	private boolean makeLogInRecordSynchronously(int userId, boolean logInSuccessfull, String usersIp) {
+
 		boolean result = databaseModel.makeLogInRecord(userId, logInSuccessfull, usersIp);
 		if (!result) {
 			LOGGER.warn("DB error: Failed to make login record: userId={}, ip={}, successfull={}", userId, usersIp, logInSuccessfull);
@@ -135,39 +235,50 @@ public class UserManager implements Serializable {
 		return result;
 	}
 
-	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
-		in.defaultReadObject();
-		try {
-			sha256 = MessageDigest.getInstance("SHA-256");
-		} catch (NoSuchAlgorithmException e) {
-			LOGGER.error("Failed to create password hasher.", e);
+	private void upgradePasswordHash(User user, String password) {
+		UserPassword storedPassword = user.getPassword();
+		if (!getPasswordHasher().isRehashNeeded(storedPassword)) {
+			return;
 		}
-	}
 
-	private String toHex(byte[] bytes) {
-		StringBuilder result = new StringBuilder();
-		char[] digits = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
-		for (int idx = 0; idx < bytes.length; ++idx) {
-			byte b = bytes[idx];
-			result.append(digits[(b & 0xf0) >> 4]);
-			result.append(digits[b & 0x0f]);
+		PasswordHashUpgrader.Request request = new PasswordHashUpgrader.Request(user.getId(), storedPassword, password);
+		if (!getPasswordHashUpgrader().offer(request)) {
+			LOGGER.debug("Password hash upgrade queue is full, skipping upgrade for user with id={}.", user.getId());
 		}
-		return result.toString();
 	}
 
-	protected synchronized String calculatePasswordHash(String password, String salt) {
-		try {
-			sha256.update(salt.getBytes(PASSWORD_HASH_ENCODING));
-			return toHex(sha256.digest(password.getBytes(PASSWORD_HASH_ENCODING)));
-		} catch (UnsupportedEncodingException e) {
-			throw new FatalException("The system doesn't support password hash encoding: " + PASSWORD_HASH_ENCODING, e);
+	private boolean writeLogInRecordBehind(LogInRecord record) {
+		LogInRecordQueue queue = getLogInRecordQueue();
+		if (queue.offer(record)) {
+			return true;
+		}
+
+		switch (properties.getLogInRecordOverflowPolicy()) {
+			case WRITE_SYNCHRONOUSLY:
+				return makeLogInRecordSynchronously(record.getUserId(), record.isSuccessful(), record.getIp());
+			case WAIT:
+				try {
+					if (queue.offer(record, properties.getLogInRecordOverflowTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+						return true;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				break;
+			default:
+				break;
 		}
+
+		LOGGER.warn("Login record queue is full, discarding login record: userId={}, ip={}, successfull={}", record.getUserId(), record.getIp(), record.isSuccessful());
+		return false;
+	}
+
+	protected String calculatePasswordHash(String password, String salt) {
+		return getPasswordHasher().calculateHash(password, salt);
 	}
 
 	protected String generatePasswordSalt() {
-		byte[] salt = new byte[PASSWORD_SALT_LENGTH];
-		randomGenerator.nextBytes(salt);
-		return toHex(salt);
+		return tokenGenerator.generateToken(PASSWORD_SALT_LENGTH);
 	}
 
 	public ResultCode cancelPasswordResetTokens(int userId) {
@@ -193,18 +304,14 @@ public class UserManager implements Serializable {
 	 * @return {@link ResultCode#OK OK} on success or these possible errors:
 	 *         {@link ResultCode#NO_SUCH_USER NO_SUCH_USER},
 	 *         {@link ResultCode#INVALID_PASSWORD INVALID_PASSWORD},
-	 *         {@link ResultCode#DATABASE_ERROR DATABASE_ERROR}
+	 *         {@link ResultCode#DATABASE_ERROR DATABASE_ERROR},
+	 *         {@link ResultCode#SERVER_BUSY SERVER_BUSY}
 	 */
 	public ResultCode cancelRegistration(int userId, String password) {
 
-		UserPassword storedPassword = databaseModel.getUserPassword(userId);
-		if (storedPassword == null) {
-			return ResultCode.NO_SUCH_USER;
-		}
-
-		String passwordHash = calculatePasswordHash(password, storedPassword.getSalt());
-		if (storedPassword.getHash().equalsIgnoreCase(passwordHash) == false) {
-			return ResultCode.INVALID_PASSWORD;
+		ResultCode verifyResult = verifyPassword(userId, password);
+		if (verifyResult != ResultCode.OK) {
+			return verifyResult;
 		}
 
 		if (databaseModel.deleteUser(userId)) {
@@ -228,15 +335,25 @@ public class UserManager implements Serializable {
 	 *            new password
 	 * @return {@link ResultCode#OK OK} on success or these possible errors:
 	 *         {@link ResultCode#INVALID_PASSWORD INVALID_PASSWORD} (bad old
-	 *         password), {@link ResultCode#DATABASE_ERROR DATABASE_ERROR}
+	 *         password), {@link ResultCode#DATABASE_ERROR DATABASE_ERROR},
+	 *         {@link ResultCode#SERVER_BUSY SERVER_BUSY}
 	 */
 	public ResultCode changePassword(int userId, String oldPassword, String newPassword) {
 
-		if (!isPasswordValid(userId, oldPassword)) {
+		ResultCode verifyResult = verifyPassword(userId, oldPassword);
+		if (verifyResult == ResultCode.SERVER_BUSY) {
+			return verifyResult;
+		}
+		if (verifyResult != ResultCode.OK) {
 			return ResultCode.INVALID_PASSWORD;
 		}
 
-		UserPassword userPassword = createUserPassword(newPassword);
+		UserPassword userPassword;
+		try {
+			userPassword = createUserPassword(newPassword);
+		} catch (RejectedExecutionException e) {
+			return getHashingRejectedResult(e);
+		}
 
 		boolean ok = databaseModel.setUserPassword(userId, userPassword);
 		if (!ok) {
@@ -299,7 +416,8 @@ public class UserManager implements Serializable {
 	 *         REGISTRATION_ALREADY_CONFIRMED},
 	 *         {@link ResultCode#INVALID_REGISTRATION_CONTROL_CODE
 	 *         INVALID_REGISTRATION_CONTROL_CODE},
-	 *         {@link ResultCode#DATABASE_ERROR DATABASE_ERROR}
+	 *         {@link ResultCode#DATABASE_ERROR DATABASE_ERROR},
+	 *         {@link ResultCode#SERVER_BUSY SERVER_BUSY}
 	 * @see #registerUserManually(String, String, int, boolean)
 	 * @see #confirmRegistration(String, String)
 	 * @see EmailSender#sendManualRegistrationEmail(String, String, int, String,
@@ -314,16 +432,15 @@ public class UserManager implements Serializable {
 			return checkResult;
 		}
 
-		boolean ok = databaseModel.confirmUserRegistration(email);
-		if (!ok) {
-			LOGGER.error("DB error: Failed to confirm registration for email {}.", email);
-			return ResultCode.DATABASE_ERROR;
+		UserPassword userPassword;
+		try {
+			userPassword = createUserPassword(password);
+		} catch (RejectedExecutionException e) {
+			return getHashingRejectedResult(e);
 		}
-
-		UserPassword userPassword = createUserPassword(password);
-		ok = databaseModel.setUserPassword(user.getId(), userPassword);
+		boolean ok = databaseModel.confirmUserRegistrationAndSetPassword(user.getId(), userPassword);
 		if (!ok) {
-			LOGGER.error("DB error: Failed to set password for user with id={}.", user.getId());
+			LOGGER.error("DB error: Failed to confirm registration and set password for user with id={}.", user.getId());
 			return ResultCode.DATABASE_ERROR;
 		}
 
@@ -444,6 +561,32 @@ public class UserManager implements Serializable {
 		return databaseModel.getRegisteredUserCount(since);
 	}
 
+	/**
+	 * Registers many users at once, e.g. accounts migrated from another
+	 * system. The users are read in batches of
+	 * {@link UserManagementProperties#getUserImportBatchSize()}. Every batch
+	 * is checked against the already registered emails and names by two
+	 * queries, the passwords are hashed in parallel by
+	 * {@link UserManagementProperties#getUserImportThreads()} threads and the
+	 * batch is added to the database by {@link UserDatabaseModel#addUsers}.
+	 * No registration emails are sent.
+	 * <p>
+	 * Users with an invalid email address, or whose email or name is already
+	 * registered or occurs earlier in the input, are not imported and are
+	 * reported to the listener instead. Imported batches stay in the database
+	 * even if a later batch fails.
+	 * 
+	 * @param users
+	 *            users to be imported, only one batch is kept in memory
+	 * @param listener
+	 *            receives the progress and the rejected users
+	 * @return number of imported users
+	 * @since 0.2.0
+	 */
+	public int importUsers(Iterator<ImportedUser> users, UserImportListener listener) {
+		return new UserImporter(this, databaseModel, properties).importUsers(users, listener);
+	}
+
 	/**
 	 * Checks whether a password reset token is valid (can be used to reset
 	 * users password). If a password reset token is invalid, it cannot be used
@@ -461,24 +604,28 @@ public class UserManager implements Serializable {
 	 * @see #resetPassword(String, String, String)
 	 */
 	public boolean isPasswordResetTokenValid(String email, String tokenKey) {
+		return getValidPasswordResetToken(email, tokenKey) != null;
+	}
+
+	private PasswordResetToken getValidPasswordResetToken(String email, String tokenKey) {
 
 		PasswordResetToken token = databaseModel.getNewestPasswordResetToken(email);
 		if (token == null) {
-			return false;
+			return null;
 		}
 
 		if (!token.getKey().equalsIgnoreCase(tokenKey)) {
-			return false;
+			return null;
 		}
 
 		long tokenExpiration = token.getCreationTime().getTime() + properties.getPasswordResetTokenExpirationMinutes() * MILIS_IN_MINUTE;
 		long now = new Date().getTime();
 
 		if (now > tokenExpiration) {
-			return false;
+			return null;
 		}
 
-		return true;
+		return token;
 	}
 
 	/**
@@ -488,25 +635,51 @@ public class UserManager implements Serializable {
 	 *            id of user to check
 	 * @param password
 	 *            password to check
-	 * @return true if password is valid, otherwise false
+	 * @return true if password is valid, otherwise false (also when the
+	 *         password hashing pool is full, see
+	 *         {@link #verifyPassword(int, String)})
 	 */
 	public boolean isPasswordValid(int userId, String password) {
+		return verifyPassword(userId, password) == ResultCode.OK;
+	}
+
+	/**
+	 * Checks whether the given password is valid for user with given id.
+	 * Unlike {@link #isPasswordValid(int, String)}, tells an invalid password
+	 * from an overloaded password hashing pool.
+	 * 
+	 * @param userId
+	 *            id of user to check
+	 * @param password
+	 *            password to check
+	 * @return {@link ResultCode#OK OK} if the password is valid or these
+	 *         possible errors: {@link ResultCode#NO_SUCH_USER NO_SUCH_USER},
+	 *         {@link ResultCode#INVALID_PASSWORD INVALID_PASSWORD},
+	 *         {@link ResultCode#SERVER_BUSY SERVER_BUSY}
+	 * @since 0.2.0
+	 */
+	public ResultCode verifyPassword(int userId, String password) {
 
 		UserPassword storedPassword = databaseModel.getUserPassword(userId);
 		if (storedPassword == null) {
-			return false;
+			return ResultCode.NO_SUCH_USER;
 		}
 
-		String hash = calculatePasswordHash(password, storedPassword.getSalt());
-
-		return storedPassword.getHash().equalsIgnoreCase(hash);
+		try {
+			return getPasswordHasher().isPasswordValid(password, storedPassword) ? ResultCode.OK : ResultCode.INVALID_PASSWORD;
+		} catch (RejectedExecutionException e) {
+			return getHashingRejectedResult(e);
+		}
 	}
 
 	/**
 	 * Logs in a user with specified user name or email. A login record will be
 	 * made with information containing time, users ip, and whether the login
 	 * was successful or not. If the login is successful, all password reset
-	 * tokens for the logged-in user will be canceled.
+	 * tokens for the logged-in user will be canceled. If the users password
+	 * hash is in an outdated format (see
+	 * {@link PasswordHasher#isRehashNeeded(UserPassword)}), it will be
+	 * re-hashed in the background.
 	 * 
 	 * @param userNameOrEmail
 	 *            user name or email of the user who is attempting to log in
@@ -519,19 +692,15 @@ public class UserManager implements Serializable {
 	 * @return {@link ResultCode#OK OK} on success or these possible errors:
 	 *         {@link ResultCode#NO_SUCH_USER NO_SUCH_USER},
 	 *         {@link ResultCode#REGISTRATION_NOT_CONFIRMED REGISTRATION_NOT_CONFIRMED},
-	 *         {@link ResultCode#INVALID_PASSWORD INVALID_PASSWORD}
+	 *         {@link ResultCode#INVALID_PASSWORD INVALID_PASSWORD},
+	 *         {@link ResultCode#SERVER_BUSY SERVER_BUSY} (no log in record
+	 *         is made)
 	 * @see #logInWithoutPassword(String)
 	 * @see UserDatabaseModel#makeLogInRecord(int, boolean, String)
 	 */
 	public ResultCode logIn(String userNameOrEmail, String password, String usersIp) {
 
-		User user;
-
-		if (EmailUtils.isEmailValid(userNameOrEmail)) {
-			user = databaseModel.getUserByEmail(userNameOrEmail);
-		} else {
-			user = databaseModel.getUserByName(userNameOrEmail);
-		}
+		User user = databaseModel.getUserForLogIn(userNameOrEmail, EmailUtils.isEmailValid(userNameOrEmail));
 
 		if (user == null) {
 			return ResultCode.NO_SUCH_USER;
@@ -541,14 +710,21 @@ public class UserManager implements Serializable {
 			return ResultCode.REGISTRATION_NOT_CONFIRMED;
 		}
 
-		String passwordHash = calculatePasswordHash(password, user.getPassword().getSalt());
-		if (!user.getPassword().getHash().equalsIgnoreCase(passwordHash)) {
+		boolean passwordValid;
+		try {
+			passwordValid = getPasswordHasher().isPasswordValid(password, user.getPassword());
+		} catch (RejectedExecutionException e) {
+			return getHashingRejectedResult(e);
+		}
+
+		if (!passwordValid) {
 			makeLogInRecord(user.getId(), false, usersIp);
 			return ResultCode.INVALID_PASSWORD;
 		}
 
 		sessionModel.setCurrentUser(user);
 		makeLogInRecord(user.getId(), true, usersIp);
+		upgradePasswordHash(user, password);
 
 		boolean ok = databaseModel.cancelAllPasswordResetTokens(user.getId());
 		if (!ok) {
@@ -567,13 +743,7 @@ public class UserManager implements Serializable {
 	 */
 	public ResultCode logInWithoutPassword(String userNameOrEmail) {
 
-		User user;
-
-		if (EmailUtils.isEmailValid(userNameOrEmail)) {
-			user = databaseModel.getUserByEmail(userNameOrEmail);
-		} else {
-			user = databaseModel.getUserByName(userNameOrEmail);
-		}
+		User user = databaseModel.getUserForLogIn(userNameOrEmail, EmailUtils.isEmailValid(userNameOrEmail));
 
 		if (user == null) {
 			return ResultCode.NO_SUCH_USER;
@@ -623,28 +793,35 @@ public class UserManager implements Serializable {
 	 *         {@link ResultCode#USER_NAME_ALREADY_REGISTERED USER_NAME_ALREADY_REGISTERED},
 	 *         {@link ResultCode#EMAIL_ALREADY_REGISTERED EMAIL_ALREADY_REGISTERED},
 	 *         {@link ResultCode#DATABASE_ERROR DATABASE_ERROR}
-	 *         {@link ResultCode#FAILED_TO_SEND_EMAIL FAILED_TO_SEND_EMAIL}
+	 *         {@link ResultCode#FAILED_TO_SEND_EMAIL FAILED_TO_SEND_EMAIL},
+	 *         {@link ResultCode#SERVER_BUSY SERVER_BUSY}
 	 * @see #confirmRegistration(String, String)
 	 * @see #registerUserManually(String, String, int, boolean)
 	 * @see EmailSender#sendRegistrationEmail(String, String, int, String)
 	 */
 	public ResultCode registerUser(String email, String name, String password, boolean registrationConfirmed) {
 
-		ResultCode checkResult = checkRegistrationPreconditions(email, name);
-		if (checkResult != ResultCode.OK) {
-			return checkResult;
+		if (!properties.isOptimisticRegistrationEnabled()) {
+			ResultCode checkResult = checkRegistrationPreconditions(email, name);
+			if (checkResult != ResultCode.OK) {
+				return checkResult;
+			}
 		}
 
 		String controlCode = generateRandomMD5Hash();
 
-		UserPassword userPassword = createUserPassword(password);
+		UserPassword userPassword;
+		try {
+			userPassword = createUserPassword(password);
+		} catch (RejectedExecutionException e) {
+			return getHashingRejectedResult(e);
+		}
 
 		User newUser = new User(-1, name, email, controlCode, registrationConfirmed, userPassword, UserRanks.NORMAL_USER);
 
 		int newUserId = databaseModel.addUser(newUser);
 		if (newUserId < 0) {
-			LOGGER.error("DB error: Failed to add user: name={}, email={}.", name, email);
-			return ResultCode.DATABASE_ERROR;
+			return getAddUserFailureResult(newUserId, email, name);
 		}
 
 		if (registrationConfirmed) {
@@ -688,7 +865,8 @@ public class UserManager implements Serializable {
 	 *         {@link ResultCode#USER_NAME_ALREADY_REGISTERED USER_NAME_ALREADY_REGISTERED},
 	 *         {@link ResultCode#EMAIL_ALREADY_REGISTERED EMAIL_ALREADY_REGISTERED},
 	 *         {@link ResultCode#DATABASE_ERROR DATABASE_ERROR}
-	 *         {@link ResultCode#FAILED_TO_SEND_EMAIL FAILED_TO_SEND_EMAIL}
+	 *         {@link ResultCode#FAILED_TO_SEND_EMAIL FAILED_TO_SEND_EMAIL},
+	 *         {@link ResultCode#SERVER_BUSY SERVER_BUSY}
 	 * @see #registerUser(String, String, String, boolean)
 	 * @see #confirmManualRegistration(String, String, String)
 	 * @see EmailSender#sendManualRegistrationEmail(String, String, int, String,
@@ -696,21 +874,27 @@ public class UserManager implements Serializable {
 	 */
 	public ResultCode registerUserManually(String email, String name, int rank) {
 
-		ResultCode checkResult = checkRegistrationPreconditions(email, name);
-		if (checkResult != ResultCode.OK) {
-			return checkResult;
+		if (!properties.isOptimisticRegistrationEnabled()) {
+			ResultCode checkResult = checkRegistrationPreconditions(email, name);
+			if (checkResult != ResultCode.OK) {
+				return checkResult;
+			}
 		}
 
 		String controlCode = generateRandomMD5Hash();
 
-		UserPassword userPassword = createUserPassword("");
+		UserPassword userPassword;
+		try {
+			userPassword = createUserPassword("");
+		} catch (RejectedExecutionException e) {
+			return getHashingRejectedResult(e);
+		}
 
 		User newUser = new User(-1, name, email, controlCode, false, userPassword, rank);
 
 		int newUserId = databaseModel.addUser(newUser);
 		if (newUserId < 0) {
-			LOGGER.error("DB error: Failed to add user: name={}, email={}.", name, email);
-			return ResultCode.DATABASE_ERROR;
+			return getAddUserFailureResult(newUserId, email, name);
 		}
 
 		User registrator = sessionModel.getCurrentUser();
@@ -771,34 +955,32 @@ public class UserManager implements Serializable {
 	 *            new password
 	 * @return {@link ResultCode#OK OK} on success or these possible errors:
 	 *         {@link ResultCode#NO_SUCH_USER NO_SUCH_USER},
-	 *         {@link ResultCode#DATABASE_ERROR DATABASE_ERROR}
+	 *         {@link ResultCode#DATABASE_ERROR DATABASE_ERROR},
+	 *         {@link ResultCode#SERVER_BUSY SERVER_BUSY}
 	 * @see #createPasswordResetToken(String)
 	 * @see EmailSender#sendLostPasswordEmail(String, String)
 	 */
 	public ResultCode resetPassword(String userEmail, String tokenKey, String newPassword) {
 
-		boolean tokenValid = isPasswordResetTokenValid(userEmail, tokenKey);
-		if (!tokenValid) {
+		PasswordResetToken token = getValidPasswordResetToken(userEmail, tokenKey);
+		if (token == null) {
 			return ResultCode.NO_VALID_PASSWORD_RESET_TOKEN;
 		}
 
-		int userId = databaseModel.getUserIdByEmail(userEmail);
-		if (userId < 0) {
-			return ResultCode.NO_SUCH_USER;
-		}
-
-		UserPassword userPassword = createUserPassword(newPassword);
-
-		if (!databaseModel.setUserPassword(userId, userPassword)) {
-			LOGGER.error("DB error: Failed to set password for user with id={}", userId);
-			return ResultCode.DATABASE_ERROR;
+		int userId = token.getUserId();
+		UserPassword userPassword;
+		try {
+			userPassword = createUserPassword(newPassword);
+		} catch (RejectedExecutionException e) {
+			return getHashingRejectedResult(e);
 		}
 
-		if (!databaseModel.cancelAllPasswordResetTokens(userId)) {
-			LOGGER.warn("DB error: Failed to cancel password reset tokens for user with id={}", userId);
+		ResultCode result = databaseModel.resetUserPassword(userId, userPassword);
+		if (result == ResultCode.DATABASE_ERROR) {
+			LOGGER.error("DB error: Failed to reset password for user with id={}", userId);
 		}
 
-		return ResultCode.OK;
+		return result;
 	}
 
 	/**
@@ -827,21 +1009,69 @@ public class UserManager implements Serializable {
 	}
 
 	/**
-	 * Creates a new instance of UserManager. The constructor creates new
-	 * instances of random generators, which is quite an expensive operation, so
-	 * you should prefer creating and keeping just a single instance of
-	 * UserManager over creating a new instance every time you need its
-	 * functionality.
+	 * Sets the password hasher, for applications which create UserManager
+	 * without dependency injection. By default, the {@link PasswordHasher}
+	 * bean is used if the container provides one, otherwise
+	 * {@link PasswordHasherSha256}.
+	 * 
+	 * @since 0.2.0
 	 */
-	public UserManager() {
+	public void setPasswordHasher(PasswordHasher passwordHasher) {
+		this.passwordHasher = passwordHasher;
+	}
+
+	/**
+	 * Creates the background queues, so that log in records left in the
+	 * {@link UserManagementProperties#getLogInRecordSpoolFile() spool file} by
+	 * the previous run are written into the database right away, not only
+	 * after the first log in. Called by the container after the dependencies
+	 * are injected. Applications which create UserManager without dependency
+	 * injection should call it once it's set up; otherwise the queues are
+	 * created on first use.
+	 * 
+	 * @since 0.2.0
+	 */
+	@PostConstruct
+	public void start() {
+		if (isLogInRecordWrittenBehind()) {
+			getLogInRecordQueue();
+		}
+		getPasswordHashUpgrader();
+	}
 
+	/**
+	 * Writes all log in records and password hash upgrades waiting in the
+	 * background queues into the database and stops the background threads.
+	 * Call this method when the application is being stopped, otherwise the
+	 * waiting records may be lost.
+	 * 
+	 * @since 0.2.0
+	 */
+	public void shutdown() {
 		try {
-			this.randomGenerator = SecureRandom.getInstance("SHA1PRNG");
-			this.sha256 = MessageDigest.getInstance("SHA-256");
-		} catch (NoSuchAlgorithmException e) {
-			LOGGER.warn("Failed to create random generator.", e);
+			synchronized (this) {
+				if (logInRecordQueue != null) {
+					logInRecordQueue.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+				}
+				if (passwordHashUpgrader != null) {
+					passwordHashUpgrader.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
+	}
 
+	/**
+	 * Creates a new instance of UserManager. The constructor creates and seeds
+	 * new instances of random generators (see {@link SecureTokenGenerator}),
+	 * which is quite an expensive operation, so
+	 * you should prefer creating and keeping just a single instance of
+	 * UserManager over creating a new instance every time you need its
+	 * functionality.
+	 */
+	public UserManager() {
+		this.tokenGenerator = new SecureTokenGenerator();
 	}
 
 }
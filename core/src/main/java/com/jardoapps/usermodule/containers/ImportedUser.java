@@ -0,0 +1,78 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.containers;
+
+/**
+ * Container class representing a user imported by
+ * {@link com.jardoapps.usermodule.UserManager#importUsers(java.util.Iterator, com.jardoapps.usermodule.UserImportListener)
+ * UserManager.importUsers}, e.g. an account migrated from another system.
+ * 
+ * @since 0.2.0
+ */
+public class ImportedUser {
+
+	private final String email;
+	private final String name;
+	private final String password;
+	private final boolean registrationConfirmed;
+	private final int rank;
+
+	public String getEmail() {
+		return email;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public boolean isRegistrationConfirmed() {
+		return registrationConfirmed;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	/**
+	 * @param email
+	 *            email address of the user
+	 * @param name
+	 *            name of the user, can be null
+	 * @param password
+	 *            plain text password of the user, or null if the user has no
+	 *            password yet (like users registered manually)
+	 * @param registrationConfirmed
+	 *            true if the user can log in right away
+	 * @param rank
+	 *            rank of the user, see
+	 *            {@link com.jardoapps.usermodule.UserRanks UserRanks}
+	 */
+	public ImportedUser(String email, String name, String password, boolean registrationConfirmed, int rank) {
+		this.email = email;
+		this.name = name;
+		this.password = password;
+		this.registrationConfirmed = registrationConfirmed;
+		this.rank = rank;
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.containers;
+
+import java.util.Date;
+
+/**
+ * Container class representing a single log in attempt.
+ * 
+ * @since 0.2.0
+ */
+public class LogInRecord {
+
+	private final int userId;
+	private final boolean successful;
+	private final String ip;
+	private final Date time;
+
+	public int getUserId() {
+		return userId;
+	}
+
+	public boolean isSuccessful() {
+		return successful;
+	}
+
+	public String getIp() {
+		return ip;
+	}
+
+	public Date getTime() {
+		return time;
+	}
+
+	public LogInRecord(int userId, boolean successful, String ip, Date time) {
+		this.userId = userId;
+		this.successful = successful;
+		this.ip = ip;
+		this.time = time;
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.containers;
+
+/**
+ * Container class representing a replacement of a stored password hash by a
+ * hash in a newer format. The replacement should only be made if the user
+ * still has the old password (it hasn't been changed in the meantime).
+ * 
+ * @since 0.2.0
+ */
+public class PasswordUpgrade {
+
+	private final int userId;
+	private final UserPassword oldPassword;
+	private final UserPassword newPassword;
+
+	public int getUserId() {
+		return userId;
+	}
+
+	public UserPassword getOldPassword() {
+		return oldPassword;
+	}
+
+	public UserPassword getNewPassword() {
+		return newPassword;
+	}
+
+	public PasswordUpgrade(int userId, UserPassword oldPassword, UserPassword newPassword) {
+		this.userId = userId;
+		this.oldPassword = oldPassword;
+		this.newPassword = newPassword;
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.containers;
+
+/**
+ * Container class representing the conditions users listed by
+ * {@link com.jardoapps.usermodule.UserDatabaseModel#listUsers
+ * UserDatabaseModel.listUsers} have to meet. Deleted users are never listed.
+ * 
+ * @since 0.2.0
+ */
+public class UserListFilter {
+
+	/**
+	 * Lists all not deleted users.
+	 */
+	public static final UserListFilter ALL = new UserListFilter(null, null);
+
+	private final Integer rank;
+	private final Boolean registrationConfirmed;
+
+	public Integer getRank() {
+		return rank;
+	}
+
+	public Boolean getRegistrationConfirmed() {
+		return registrationConfirmed;
+	}
+
+	/**
+	 * @param rank
+	 *            rank of the listed users, or null to list users of any rank
+	 * @param registrationConfirmed
+	 *            true to list only users with a confirmed registration, false
+	 *            to list only users with an unconfirmed registration, or null
+	 *            to list both
+	 */
+	public UserListFilter(Integer rank, Boolean registrationConfirmed) {
+		this.rank = rank;
+		this.registrationConfirmed = registrationConfirmed;
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.containers;
+
+import java.util.List;
+
+import com.jardoapps.usermodule.User;
+
+/**
+ * Container class representing a page of users returned by
+ * {@link com.jardoapps.usermodule.UserDatabaseModel#listUsers
+ * UserDatabaseModel.listUsers}.
+ * 
+ * @since 0.2.0
+ */
+public class UserPage {
+
+	private final List<User> users;
+	private final String nextPageToken;
+
+	/**
+	 * Returns the users on this page, their passwords and registration
+	 * control codes are null.
+	 */
+	public List<User> getUsers() {
+		return users;
+	}
+
+	/**
+	 * Returns the token which loads the following page, or null if this is
+	 * the last page.
+	 */
+	public String getNextPageToken() {
+		return nextPageToken;
+	}
+
+	public UserPage(List<User> users, String nextPageToken) {
+		this.users = users;
+		this.nextPageToken = nextPageToken;
+	}
+
+}
@@ -21,21 +21,113 @@ package com.jardoapps.usermodule.containers;
 /**
  * Container class representing a user password which consits out of the
  * password hash and a random generated salt.
+ * <p>
+ * Besides the usual text form, the hash and salt can be represented in a
+ * compact binary form which is about half the size. The binary form consists
+ * of a header byte, an ASCII prefix (everything up to the last '$' character,
+ * e.g. the algorithm and iterations of a PBKDF2 hash) and the bytes of the
+ * hexadecimal tail. The lowest 7 bits of the header hold the prefix length,
+ * the highest bit is set when the tail uses upper case digits. Only values
+ * which can be restored exactly have a binary form, see
+ * {@link #getBinaryHash()}.
+ * <p>
+ * Instances are thread safe, so they can be shared (e.g. by
+ * {@link com.jardoapps.usermodule.UserDatabaseModelCached}).
  * 
  * @author Jaroslav Brtiš
  * 
  */
 public class UserPassword {
 
-	private final String hash;
-	private final String salt;
+	private static final int MAX_PREFIX_LENGTH = 0x7f;
+
+	private static final int UPPER_CASE_FLAG = 0x80;
+
+	private static final char[] LOWER_CASE_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final char[] UPPER_CASE_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	// text and binary forms are converted lazily, each of them is immutable;
+	// a converted form is completed in a local variable and published by a
+	// single volatile write, so other threads never see a partially filled
+	// array (two threads may both convert it, with the same result)
+	private volatile String hash;
+	private volatile String salt;
+	private volatile byte[] binaryHash;
+	private volatile byte[] binarySalt;
 
 	public String getHash() {
-		return hash;
+		String result = hash;
+		if (result == null) {
+			byte[] binary = binaryHash;
+			if (binary != null) {
+				result = fromBinary(binary);
+				hash = result;
+			}
+		}
+		return result;
 	}
 
 	public String getSalt() {
-		return salt;
+		String result = salt;
+		if (result == null) {
+			byte[] binary = binarySalt;
+			if (binary != null) {
+				result = fromBinary(binary);
+				salt = result;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the binary form of the password hash. The returned array must
+	 * not be modified.
+	 * 
+	 * @return The binary form, or null if the hash can't be represented in the
+	 *         binary form.
+	 * @since 0.2.0
+	 */
+	public byte[] getBinaryHash() {
+		byte[] result = binaryHash;
+		if (result == null) {
+			String text = hash;
+			if (text != null) {
+				result = toBinary(text);
+				binaryHash = result;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the binary form of the password salt. The returned array must
+	 * not be modified.
+	 * 
+	 * @return The binary form, or null if the salt can't be represented in the
+	 *         binary form.
+	 * @since 0.2.0
+	 */
+	public byte[] getBinarySalt() {
+		byte[] result = binarySalt;
+		if (result == null) {
+			String text = salt;
+			if (text != null) {
+				result = toBinary(text);
+				binarySalt = result;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether both the hash and the salt can be represented in the
+	 * binary form.
+	 * 
+	 * @since 0.2.0
+	 */
+	public boolean isBinaryFormSupported() {
+		return getBinaryHash() != null && getBinarySalt() != null;
 	}
 
 	public UserPassword(String hash, String salt) {
@@ -43,4 +135,97 @@ public class UserPassword {
 		this.salt = salt;
 	}
 
+	/**
+	 * Creates a password from its binary form. The arrays are not copied.
+	 * 
+	 * @param binaryHash
+	 *            binary form of the password hash
+	 * @param binarySalt
+	 *            binary form of the password salt
+	 * @since 0.2.0
+	 */
+	public UserPassword(byte[] binaryHash, byte[] binarySalt) {
+		this.binaryHash = binaryHash;
+		this.binarySalt = binarySalt;
+	}
+
+	private static byte[] toBinary(String value) {
+		int tailStart = value.lastIndexOf('$') + 1;
+		if (tailStart > MAX_PREFIX_LENGTH || (value.length() - tailStart) % 2 != 0) {
+			return null;
+		}
+
+		boolean lowerCase = false;
+		boolean upperCase = false;
+		byte[] result = new byte[1 + tailStart + (value.length() - tailStart) / 2];
+
+		for (int idx = 0; idx < tailStart; ++idx) {
+			char c = value.charAt(idx);
+			if (c > 0x7f) {
+				return null;
+			}
+			result[1 + idx] = (byte) c;
+		}
+
+		int pos = 1 + tailStart;
+		for (int idx = tailStart; idx < value.length(); idx += 2) {
+			int high = digitValue(value.charAt(idx));
+			int low = digitValue(value.charAt(idx + 1));
+			if (high < 0 || low < 0) {
+				return null;
+			}
+			lowerCase |= isLowerCaseHexLetter(value.charAt(idx)) || isLowerCaseHexLetter(value.charAt(idx + 1));
+			upperCase |= isUpperCaseHexLetter(value.charAt(idx)) || isUpperCaseHexLetter(value.charAt(idx + 1));
+			result[pos++] = (byte) ((high << 4) | low);
+		}
+
+		if (lowerCase && upperCase) {
+			return null;
+		}
+
+		result[0] = (byte) (tailStart | (upperCase ? UPPER_CASE_FLAG : 0));
+		return result;
+	}
+
+	private static int digitValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (isLowerCaseHexLetter(c)) {
+			return c - 'a' + 10;
+		}
+		if (isUpperCaseHexLetter(c)) {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	private static boolean isLowerCaseHexLetter(char c) {
+		return c >= 'a' && c <= 'f';
+	}
+
+	private static boolean isUpperCaseHexLetter(char c) {
+		return c >= 'A' && c <= 'F';
+	}
+
+	private static String fromBinary(byte[] value) {
+		int prefixLength = value[0] & MAX_PREFIX_LENGTH;
+		char[] digits = (value[0] & UPPER_CASE_FLAG) != 0 ? UPPER_CASE_DIGITS : LOWER_CASE_DIGITS;
+
+		int tailLength = value.length - 1 - prefixLength;
+		char[] result = new char[prefixLength + tailLength * 2];
+
+		for (int idx = 0; idx < prefixLength; ++idx) {
+			result[idx] = (char) value[1 + idx];
+		}
+
+		int pos = prefixLength;
+		for (int idx = 1 + prefixLength; idx < value.length; ++idx) {
+			result[pos++] = digits[(value[idx] >> 4) & 0x0f];
+			result[pos++] = digits[value[idx] & 0x0f];
+		}
+
+		return new String(result);
+	}
+
 }
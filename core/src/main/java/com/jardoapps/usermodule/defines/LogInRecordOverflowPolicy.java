@@ -0,0 +1,46 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.defines;
+
+/**
+ * Specifies what happens to a log in record when the queue of the
+ * asynchronous log in record writer is full.
+ * 
+ * @since 0.2.0
+ */
+public enum LogInRecordOverflowPolicy {
+
+	/**
+	 * The record is written synchronously by the logging in thread, as if the
+	 * asynchronous writer was disabled.
+	 */
+	WRITE_SYNCHRONOUSLY,
+
+	/**
+	 * The logging in thread waits for free space in the queue, at most for the
+	 * configured timeout. The record is discarded if the timeout elapses.
+	 */
+	WAIT,
+
+	/**
+	 * The record is discarded immediately.
+	 */
+	DISCARD
+}
@@ -0,0 +1,47 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.defines;
+
+/**
+ * Specifies the order of users listed by
+ * {@link com.jardoapps.usermodule.UserDatabaseModel#listUsers
+ * UserDatabaseModel.listUsers}. Users with equal names or registration dates
+ * are ordered by their ids.
+ * 
+ * @since 0.2.0
+ */
+public enum UserListOrder {
+
+	/**
+	 * Users are ordered by their ids, which is the order of registration.
+	 */
+	ID,
+
+	/**
+	 * Users are ordered by their names, in the database's collation. Users
+	 * without a name are not listed.
+	 */
+	NAME,
+
+	/**
+	 * Users are ordered by their registration dates. Users without a
+	 * registration date (e.g. inserted by hand) are not listed.
+	 */
+	REGISTRATION_DATE
+}
@@ -0,0 +1,230 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A background worker which collects items in a bounded queue and processes
+ * them in batches on a single daemon thread. A batch is processed when it
+ * reaches the maximal batch size, or when the oldest item in the batch has
+ * waited for the maximal batch delay.
+ * <p>
+ * The worker thread is started when the first item is added.
+ * 
+ * @param <T>
+ *            type of the processed items
+ * @since 0.2.0
+ */
+public abstract class BatchingWorker<T> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchingWorker.class);
+
+	private static final long IDLE_POLL_MILLIS = 1000L;
+
+	private final String name;
+
+	private final BlockingQueue<T> queue;
+
+	private final int batchSize;
+
+	private final long maxBatchDelayNanos;
+
+	private volatile boolean running = true;
+
+	private Thread thread;
+
+	private final Runnable loop = new Runnable() {
+		@Override
+		public void run() {
+			List<T> batch = new ArrayList<>(batchSize);
+			while (running || !queue.isEmpty()) {
+				try {
+					collectBatch(batch);
+				} catch (InterruptedException e) {
+					running = false;
+					queue.drainTo(batch, batchSize - batch.size());
+				}
+
+				if (!batch.isEmpty()) {
+					processBatchSafely(batch);
+					batch.clear();
+				}
+			}
+		}
+	};
+
+	private void collectBatch(List<T> batch) throws InterruptedException {
+		T item = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+		if (item == null) {
+			return;
+		}
+
+		batch.add(item);
+		long deadline = System.nanoTime() + maxBatchDelayNanos;
+
+		while (batch.size() < batchSize) {
+			queue.drainTo(batch, batchSize - batch.size());
+			if (batch.size() >= batchSize || !running) {
+				return;
+			}
+
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return;
+			}
+
+			item = queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (item == null) {
+				return;
+			}
+			batch.add(item);
+		}
+	}
+
+	private void processBatchSafely(List<T> batch) {
+		try {
+			processBatch(batch);
+		} catch (RuntimeException e) {
+			LOGGER.error("Worker '{}' failed to process a batch of {} items.", name, batch.size(), e);
+		}
+	}
+
+	/**
+	 * Called after an item has been queued. If the worker has been shut down
+	 * in the meantime, its thread may have finished already (or never
+	 * started), so the item is taken back, unless the worker thread has taken
+	 * it, in which case it is processed.
+	 */
+	private boolean isAccepted(T item) {
+		return running || !queue.remove(item);
+	}
+
+	private synchronized void startIfNeeded() {
+		if (thread == null && running) {
+			thread = new Thread(loop, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Processes a batch of items. Called from the worker thread only.
+	 * 
+	 * @param batch
+	 *            items to process, never empty
+	 */
+	protected abstract void processBatch(List<T> batch);
+
+	/**
+	 * Adds an item to the queue without waiting.
+	 * 
+	 * @param item
+	 *            item to be processed
+	 * @return True if the item was queued, false if the queue is full or the
+	 *         worker has been shut down.
+	 */
+	public boolean offer(T item) {
+		if (!running) {
+			return false;
+		}
+		startIfNeeded();
+		return queue.offer(item) && isAccepted(item);
+	}
+
+	/**
+	 * Adds an item to the queue, waiting for free space if necessary.
+	 * 
+	 * @param item
+	 *            item to be processed
+	 * @param timeout
+	 *            maximal time to wait
+	 * @param unit
+	 *            unit of the timeout
+	 * @return True if the item was queued, false if the timeout elapsed or the
+	 *         worker has been shut down.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+		if (!running) {
+			return false;
+		}
+		startIfNeeded();
+		return queue.offer(item, timeout, unit) && isAccepted(item);
+	}
+
+	/**
+	 * Returns number of items waiting in the queue.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * Stops accepting new items, processes the items which are already queued
+	 * and waits for the worker thread to finish. Every item for which
+	 * {@link #offer} returned true is processed, even if it was offered
+	 * concurrently with this call.
+	 * 
+	 * @param timeoutMillis
+	 *            maximal time to wait for the worker thread
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void shutdown(long timeoutMillis) throws InterruptedException {
+		Thread workerThread;
+		synchronized (this) {
+			running = false;
+			workerThread = thread;
+		}
+
+		if (workerThread != null) {
+			workerThread.join(timeoutMillis);
+		}
+	}
+
+	/**
+	 * Creates a new worker.
+	 * 
+	 * @param name
+	 *            name of the worker thread
+	 * @param queueCapacity
+	 *            maximal number of queued items
+	 * @param batchSize
+	 *            maximal number of items processed in a single batch
+	 * @param maxBatchDelayMillis
+	 *            maximal time an item waits for its batch to fill up
+	 */
+	protected BatchingWorker(String name, int queueCapacity, int batchSize, long maxBatchDelayMillis) {
+		this.name = name;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.batchSize = batchSize;
+		this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+	}
+
+}
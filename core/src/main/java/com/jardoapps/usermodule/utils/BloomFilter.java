@@ -0,0 +1,141 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe Bloom filter of strings. It answers whether a string might
+ * have been added to it: a negative answer is always right, a positive answer
+ * is wrong with the probability chosen when the filter is created (as long as
+ * no more than the expected number of strings is added). Strings can't be
+ * removed.
+ * <p>
+ * The filter needs about 9.6 bits per string for 1% false positives, e.g.
+ * 1.2 MB for a million strings. Each string is hashed once, the bit positions
+ * are derived from two halves of the 64 bit hash.
+ * 
+ * @since 0.2.0
+ */
+public class BloomFilter implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final double LN2 = Math.log(2);
+
+	private final AtomicLongArray words;
+
+	private final long bitCount;
+
+	private final int hashCount;
+
+	private static long hash(String value) {
+		// FNV-1a followed by the MurmurHash3 finalizer
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private long bitIndex(long hash, int i) {
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		long combined = hash1 + (long) i * hash2;
+		return (combined & Long.MAX_VALUE) % bitCount;
+	}
+
+	/**
+	 * Adds the specified string into the filter.
+	 */
+	public void put(String value) {
+		long hash = hash(value);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = bitIndex(hash, i);
+			int wordIndex = (int) (bit >>> 6);
+			long mask = 1L << bit;
+
+			long word = words.get(wordIndex);
+			while ((word & mask) == 0 && !words.compareAndSet(wordIndex, word, word | mask)) {
+				word = words.get(wordIndex);
+			}
+		}
+	}
+
+	/**
+	 * Returns false if the specified string has certainly not been added into
+	 * the filter, or true if it probably has been.
+	 */
+	public boolean mightContain(String value) {
+		long hash = hash(value);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = bitIndex(hash, i);
+			if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns size of the filter in bits.
+	 */
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	/**
+	 * Returns number of bits set for each string.
+	 */
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	/**
+	 * Creates an empty filter.
+	 * 
+	 * @param expectedSize
+	 *            number of strings which will be added into the filter
+	 * @param falsePositiveRate
+	 *            probability of a positive answer for a string which has not
+	 *            been added, when the filter holds the expected number of
+	 *            strings; between 0 and 1 (exclusive)
+	 */
+	public BloomFilter(long expectedSize, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+		}
+
+		long size = Math.max(expectedSize, 1);
+		long bits = (long) Math.ceil(-size * Math.log(falsePositiveRate) / (LN2 * LN2));
+		int wordCount = (int) Math.min((bits + 63) / 64, Integer.MAX_VALUE);
+
+		this.words = new AtomicLongArray(wordCount);
+		this.bitCount = wordCount * 64L;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / size * LN2));
+	}
+
+}
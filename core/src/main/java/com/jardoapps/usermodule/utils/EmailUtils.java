@@ -40,6 +40,10 @@ public final class EmailUtils {
 	 * this method is <b>not</b> compliant with RFC 822. See documentation of
 	 * EMAIL_REGEX for more information. Top level domain validity is not
 	 * checked.
+	 * <p>
+	 * The check is done in a single pass without any regex matching or
+	 * allocations, since it is performed on every log in. It accepts exactly
+	 * the same addresses as {@link #EMAIL_REGEX}.
 	 * 
 	 * @param email
 	 *            email address to check
@@ -49,7 +53,75 @@ public final class EmailUtils {
 		if (email == null) {
 			return false;
 		}
-		return email.matches(EMAIL_REGEX);
+
+		int length = email.length();
+		int idx = 0;
+
+		// local part: [_A-Za-z0-9-]+(\.[_A-Za-z0-9-]+)*
+		int segmentLength = 0;
+		for (; idx < length; ++idx) {
+			char c = email.charAt(idx);
+			if (c == '@') {
+				break;
+			} else if (c == '.') {
+				if (segmentLength == 0) {
+					return false;
+				}
+				segmentLength = 0;
+			} else if (isLetterOrDigit(c) || c == '_' || c == '-') {
+				++segmentLength;
+			} else {
+				return false;
+			}
+		}
+
+		if (segmentLength == 0 || idx == length) {
+			return false;
+		}
+
+		// domain: [A-Za-z0-9-]+(\.[A-Za-z0-9]+)*(\.[A-Za-z]{2,})
+		int labelIndex = 0;
+		int labelLength = 0;
+		boolean labelHasHyphen = false;
+		boolean labelLettersOnly = true;
+		for (++idx; idx < length; ++idx) {
+			char c = email.charAt(idx);
+			if (c == '.') {
+				if (labelLength == 0 || (labelIndex > 0 && labelHasHyphen)) {
+					return false;
+				}
+				++labelIndex;
+				labelLength = 0;
+				labelHasHyphen = false;
+				labelLettersOnly = true;
+			} else if (isLetter(c)) {
+				++labelLength;
+			} else if (isDigit(c)) {
+				++labelLength;
+				labelLettersOnly = false;
+			} else if (c == '-') {
+				++labelLength;
+				labelHasHyphen = true;
+				labelLettersOnly = false;
+			} else {
+				return false;
+			}
+		}
+
+		// the last label is the top level domain
+		return labelIndex > 0 && labelLength >= 2 && labelLettersOnly;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isLetterOrDigit(char c) {
+		return isLetter(c) || isDigit(c);
 	}
 
 	private EmailUtils() {
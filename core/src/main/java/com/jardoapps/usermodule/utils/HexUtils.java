@@ -0,0 +1,93 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.utils;
+
+/**
+ * Class which provides functionality for converting binary data to and from
+ * hexadecimal strings.
+ * 
+ * @since 0.2.0
+ */
+public final class HexUtils {
+
+	private static final char[] DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+	/**
+	 * Converts the given bytes to a lower case hexadecimal string.
+	 * 
+	 * @param bytes
+	 *            bytes to convert
+	 * @return hexadecimal representation of the given bytes
+	 */
+	public static String toHex(byte[] bytes) {
+		char[] result = new char[bytes.length * 2];
+		for (int idx = 0; idx < bytes.length; ++idx) {
+			byte b = bytes[idx];
+			result[idx * 2] = DIGITS[(b & 0xf0) >> 4];
+			result[idx * 2 + 1] = DIGITS[b & 0x0f];
+		}
+		return new String(result);
+	}
+
+	/**
+	 * Compares the given bytes with a hexadecimal string in constant time (the
+	 * comparison doesn't stop at the first difference). The hexadecimal string
+	 * may contain both upper and lower case digits. No objects are allocated.
+	 * 
+	 * @param bytes
+	 *            bytes to compare
+	 * @param hex
+	 *            hexadecimal string to compare
+	 * @return True if the hexadecimal string represents the given bytes,
+	 *         otherwise false.
+	 */
+	public static boolean equalsHex(byte[] bytes, String hex) {
+		if (hex == null || hex.length() != bytes.length * 2) {
+			return false;
+		}
+
+		int diff = 0;
+		for (int idx = 0; idx < bytes.length; ++idx) {
+			int high = digitValue(hex.charAt(idx * 2));
+			int low = digitValue(hex.charAt(idx * 2 + 1));
+			// an invalid digit (-1) sets bits above the lowest byte
+			diff |= ((high << 4) | low) ^ (bytes[idx] & 0xff);
+		}
+		return diff == 0;
+	}
+
+	private static int digitValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	private HexUtils() {
+
+	}
+
+}
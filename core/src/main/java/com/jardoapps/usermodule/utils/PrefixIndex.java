@@ -0,0 +1,541 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A compact, sorted, in-memory set of strings which answers exact and prefix
+ * look ups without creating objects for the stored strings.
+ * <p>
+ * The strings are kept sorted in a single byte array as front coded UTF-8:
+ * in each block of {@value #BLOCK_SIZE} strings, only the first one is stored
+ * completely, the others store the length of the prefix they share with their
+ * predecessor and the rest. A look up binary searches the first strings of the
+ * blocks and scans a single block. Sorted user names share long prefixes, so
+ * a name takes a few bytes plus a small per block overhead, instead of about
+ * 60 bytes of a {@link String} in a hash set.
+ * <p>
+ * Strings added or removed after the index has been built are kept in small
+ * overlay collections, which are merged into the byte array once they grow
+ * beyond 1/16 of the index (at least 4096 changes). The merge rewrites the
+ * array while holding the write lock, i.e. look ups wait for it.
+ * <p>
+ * Strings are compared by their Unicode code points, so the index is case
+ * sensitive. This class is thread safe.
+ * 
+ * @since 0.2.0
+ */
+public class PrefixIndex {
+
+	private static final int BLOCK_SIZE = 16;
+
+	private static final int MIN_OVERLAY_COMPACTION_SIZE = 4096;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Orders strings by their code points, which is the same order as the
+	 * unsigned bytes of their UTF-8 form.
+	 */
+	public static final Comparator<String> CODE_POINT_ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String s1, String s2) {
+			int i1 = 0;
+			int i2 = 0;
+			while (i1 < s1.length() && i2 < s2.length()) {
+				int c1 = s1.codePointAt(i1);
+				int c2 = s2.codePointAt(i2);
+				if (c1 != c2) {
+					return c1 < c2 ? -1 : 1;
+				}
+				i1 += Character.charCount(c1);
+				i2 += Character.charCount(c2);
+			}
+			return (s1.length() - i1) - (s2.length() - i2);
+		}
+	};
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private byte[] data;
+
+	private int[] blockOffsets;
+
+	private int baseSize;
+
+	private final TreeSet<String> added = new TreeSet<String>(CODE_POINT_ORDER);
+
+	private final Set<String> removed = new HashSet<String>();
+
+	/**
+	 * Collects strings for a new index. Strings can be added in any order,
+	 * duplicates are ignored. The strings are kept as UTF-8 in a single array
+	 * until the index is built.
+	 */
+	public static class Builder {
+
+		private final GrowableByteArray buffer = new GrowableByteArray(1024);
+
+		private int[] offsets = new int[64];
+
+		private int count;
+
+		public Builder add(String value) {
+			if (count + 1 == offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			}
+
+			byte[] bytes = value.getBytes(UTF_8);
+			offsets[count] = buffer.length;
+			buffer.write(bytes, 0, bytes.length);
+			count++;
+			return this;
+		}
+
+		public PrefixIndex build() {
+			offsets[count] = buffer.length;
+
+			int[] order = new int[count];
+			for (int i = 0; i < count; i++) {
+				order[i] = i;
+			}
+			sort(order, new int[count], 0, count);
+
+			Encoder encoder = new Encoder(buffer.length / 2 + 16);
+			for (int i = 0; i < count; i++) {
+				int start = offsets[order[i]];
+				encoder.add(buffer.bytes, start, offsets[order[i] + 1] - start);
+			}
+			return new PrefixIndex(encoder);
+		}
+
+		private int compareEntries(int entry1, int entry2) {
+			return compare(buffer.bytes, offsets[entry1], offsets[entry1 + 1] - offsets[entry1], buffer.bytes, offsets[entry2], offsets[entry2 + 1]
+					- offsets[entry2]);
+		}
+
+		/**
+		 * A merge sort of entry numbers, the entries themselves are compared
+		 * in place.
+		 */
+		private void sort(int[] order, int[] temp, int from, int to) {
+			if (to - from < 2) {
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			sort(order, temp, from, middle);
+			sort(order, temp, middle, to);
+			if (compareEntries(order[middle - 1], order[middle]) <= 0) {
+				return;
+			}
+
+			System.arraycopy(order, from, temp, from, to - from);
+			int i = from;
+			int j = middle;
+			for (int k = from; k < to; k++) {
+				if (j >= to || (i < middle && compareEntries(temp[i], temp[j]) <= 0)) {
+					order[k] = temp[i++];
+				} else {
+					order[k] = temp[j++];
+				}
+			}
+		}
+	}
+
+	/**
+	 * A growable byte array.
+	 */
+	private static class GrowableByteArray {
+
+		private byte[] bytes;
+
+		private int length;
+
+		public void write(byte[] source, int offset, int count) {
+			ensureCapacity(count);
+			System.arraycopy(source, offset, bytes, length, count);
+			length += count;
+		}
+
+		public void writeVarInt(int value) {
+			ensureCapacity(5);
+			while ((value & ~0x7f) != 0) {
+				bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+
+		private void ensureCapacity(int count) {
+			if (length + count > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+			}
+		}
+
+		public GrowableByteArray(int capacity) {
+			this.bytes = new byte[capacity];
+		}
+	}
+
+	/**
+	 * Writes sorted strings in the front coded format.
+	 */
+	private static class Encoder {
+
+		private final GrowableByteArray buffer;
+
+		private int[] blockOffsets = new int[16];
+
+		private byte[] previous = new byte[64];
+
+		private int previousLength = -1;
+
+		private int count;
+
+		public void add(byte[] source, int offset, int length) {
+			if (previousLength >= 0 && compare(previous, 0, previousLength, source, offset, length) == 0) {
+				return;
+			}
+
+			if (count % BLOCK_SIZE == 0) {
+				int block = count / BLOCK_SIZE;
+				if (block == blockOffsets.length) {
+					blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+				}
+				blockOffsets[block] = buffer.length;
+				buffer.writeVarInt(length);
+				buffer.write(source, offset, length);
+			} else {
+				int shared = 0;
+				int maxShared = Math.min(previousLength, length);
+				while (shared < maxShared && previous[shared] == source[offset + shared]) {
+					shared++;
+				}
+				buffer.writeVarInt(shared);
+				buffer.writeVarInt(length - shared);
+				buffer.write(source, offset + shared, length - shared);
+			}
+
+			if (length > previous.length) {
+				previous = new byte[Math.max(length, previous.length * 2)];
+			}
+			System.arraycopy(source, offset, previous, 0, length);
+			previousLength = length;
+			count++;
+		}
+
+		public Encoder(int capacity) {
+			this.buffer = new GrowableByteArray(capacity);
+		}
+	}
+
+	/**
+	 * Iterates over the strings stored in the byte array.
+	 */
+	private class Cursor {
+
+		private int index = -1;
+
+		private int position;
+
+		private byte[] current = new byte[64];
+
+		private int currentLength;
+
+		private int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[position++];
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+		private void read(int offset, int length) {
+			if (offset + length > current.length) {
+				current = Arrays.copyOf(current, Math.max(offset + length, current.length * 2));
+			}
+			System.arraycopy(data, position, current, offset, length);
+			position += length;
+			currentLength = offset + length;
+		}
+
+		/**
+		 * Moves to the next string, returns false if there is none.
+		 */
+		public boolean next() {
+			index++;
+			if (index >= baseSize) {
+				return false;
+			}
+
+			if (index % BLOCK_SIZE == 0) {
+				position = blockOffsets[index / BLOCK_SIZE];
+				read(0, readVarInt());
+			} else {
+				int shared = readVarInt();
+				read(shared, readVarInt());
+			}
+			return true;
+		}
+
+		/**
+		 * Moves to the first string which is equal to or greater than the
+		 * given one, returns false if there is none.
+		 */
+		public boolean seek(byte[] key) {
+			// the last block whose first string is not greater than the key
+			int low = 0;
+			int high = (baseSize + BLOCK_SIZE - 1) / BLOCK_SIZE - 1;
+			int block = 0;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				position = blockOffsets[middle];
+				int length = readVarInt();
+				if (compare(data, position, length, key, 0, key.length) <= 0) {
+					block = middle;
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			index = block * BLOCK_SIZE - 1;
+			while (next()) {
+				if (compare(current, 0, currentLength, key, 0, key.length) >= 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean currentEquals(byte[] key) {
+			return compare(current, 0, currentLength, key, 0, key.length) == 0;
+		}
+
+		public boolean currentStartsWith(byte[] prefix) {
+			return currentLength >= prefix.length && compare(current, 0, prefix.length, prefix, 0, prefix.length) == 0;
+		}
+
+		public String currentString() {
+			return new String(current, 0, currentLength, UTF_8);
+		}
+	}
+
+	private static int compare(byte[] bytes1, int offset1, int length1, byte[] bytes2, int offset2, int length2) {
+		int length = Math.min(length1, length2);
+		for (int i = 0; i < length; i++) {
+			int b1 = bytes1[offset1 + i] & 0xff;
+			int b2 = bytes2[offset2 + i] & 0xff;
+			if (b1 != b2) {
+				return b1 - b2;
+			}
+		}
+		return length1 - length2;
+	}
+
+	private boolean baseContains(String value) {
+		byte[] key = value.getBytes(UTF_8);
+		Cursor cursor = new Cursor();
+		return cursor.seek(key) && cursor.currentEquals(key);
+	}
+
+	private void compactIfNeeded() {
+		if (added.size() + removed.size() < Math.max(MIN_OVERLAY_COMPACTION_SIZE, baseSize / 16)) {
+			return;
+		}
+
+		Encoder encoder = new Encoder(data.length + added.size() * 8 + 16);
+		Cursor cursor = new Cursor();
+		boolean hasBase = cursor.next();
+		Iterator<String> addedIterator = added.iterator();
+		byte[] nextAdded = addedIterator.hasNext() ? addedIterator.next().getBytes(UTF_8) : null;
+
+		while (hasBase || nextAdded != null) {
+			if (nextAdded == null || (hasBase && compare(cursor.current, 0, cursor.currentLength, nextAdded, 0, nextAdded.length) < 0)) {
+				if (removed.isEmpty() || !removed.contains(cursor.currentString())) {
+					encoder.add(cursor.current, 0, cursor.currentLength);
+				}
+				hasBase = cursor.next();
+			} else {
+				encoder.add(nextAdded, 0, nextAdded.length);
+				nextAdded = addedIterator.hasNext() ? addedIterator.next().getBytes(UTF_8) : null;
+			}
+		}
+
+		setBase(encoder);
+		added.clear();
+		removed.clear();
+	}
+
+	private void setBase(Encoder encoder) {
+		this.data = Arrays.copyOf(encoder.buffer.bytes, encoder.buffer.length);
+		this.blockOffsets = Arrays.copyOf(encoder.blockOffsets, (encoder.count + BLOCK_SIZE - 1) / BLOCK_SIZE);
+		this.baseSize = encoder.count;
+	}
+
+	/**
+	 * Adds a string into the index.
+	 */
+	public void add(String value) {
+		lock.writeLock().lock();
+		try {
+			if (!removed.remove(value) && !baseContains(value)) {
+				added.add(value);
+				compactIfNeeded();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a string from the index.
+	 */
+	public void remove(String value) {
+		lock.writeLock().lock();
+		try {
+			if (!added.remove(value) && baseContains(value)) {
+				removed.add(value);
+				compactIfNeeded();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns true if the index contains the specified string.
+	 */
+	public boolean contains(String value) {
+		lock.readLock().lock();
+		try {
+			if (added.contains(value)) {
+				return true;
+			}
+			return !removed.contains(value) && baseContains(value);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns strings starting with the specified prefix, ordered by
+	 * {@link #CODE_POINT_ORDER}.
+	 * 
+	 * @param prefix
+	 *            prefix of the returned strings, an empty prefix matches all
+	 *            strings
+	 * @param maxResults
+	 *            maximal number of returned strings
+	 */
+	public List<String> findByPrefix(String prefix, int maxResults) {
+		List<String> result = new ArrayList<String>(Math.min(maxResults, 16));
+		byte[] key = prefix.getBytes(UTF_8);
+
+		lock.readLock().lock();
+		try {
+			Cursor cursor = new Cursor();
+			boolean hasBase = cursor.seek(key) && cursor.currentStartsWith(key);
+			Iterator<String> addedIterator = added.tailSet(prefix).iterator();
+			String nextAdded = addedIterator.hasNext() ? addedIterator.next() : null;
+			if (nextAdded != null && !nextAdded.startsWith(prefix)) {
+				nextAdded = null;
+			}
+
+			while (result.size() < maxResults && (hasBase || nextAdded != null)) {
+				String baseString = hasBase ? cursor.currentString() : null;
+				if (nextAdded == null || (baseString != null && CODE_POINT_ORDER.compare(baseString, nextAdded) < 0)) {
+					if (!removed.contains(baseString)) {
+						result.add(baseString);
+					}
+					hasBase = cursor.next() && cursor.currentStartsWith(key);
+				} else {
+					result.add(nextAdded);
+					nextAdded = addedIterator.hasNext() ? addedIterator.next() : null;
+					if (nextAdded != null && !nextAdded.startsWith(prefix)) {
+						nextAdded = null;
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns number of strings in the index.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return baseSize + added.size() - removed.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns an estimate of the memory (in bytes) occupied by the index.
+	 */
+	public long getMemoryFootprintBytes() {
+		lock.readLock().lock();
+		try {
+			// the overlay strings are counted as Java 8 strings with a char array and a tree or hash map entry
+			long overlayBytes = 0;
+			for (String value : added) {
+				overlayBytes += 96 + 2 * value.length();
+			}
+			for (String value : removed) {
+				overlayBytes += 88 + 2 * value.length();
+			}
+			return 16 + data.length + 16 + 4L * blockOffsets.length + overlayBytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private PrefixIndex(Encoder encoder) {
+		setBase(encoder);
+	}
+
+	/**
+	 * Creates an empty index.
+	 */
+	public PrefixIndex() {
+		this(new Encoder(16));
+	}
+
+}
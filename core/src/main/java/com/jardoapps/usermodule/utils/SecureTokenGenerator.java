@@ -0,0 +1,203 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.utils;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Generates random tokens (registration control codes, password salts,
+ * password reset tokens) from several independent {@link SecureRandom}
+ * instances.
+ * <p>
+ * A single {@link SecureRandom} is internally synchronized, so all threads
+ * generating tokens at the same time wait for each other. This generator
+ * splits the load between a number of stripes, each with its own generator
+ * and lock. A thread uses the stripe selected by its id, or any other stripe
+ * which isn't locked at the moment. Each stripe pre-fills a buffer of random
+ * bytes, so the generator itself is called only once per many tokens. Bytes
+ * are wiped from the buffer as soon as they are handed out.
+ * <p>
+ * All stripes are seeded when the generator is created. The seeds are read
+ * from the non-blocking system source (<code>NativePRNGNonBlocking</code>,
+ * i.e. <code>/dev/urandom</code>) when available, so the creation doesn't
+ * hang on systems with a low entropy estimate.
+ * 
+ * @since 0.2.0
+ */
+public class SecureTokenGenerator implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String STRIPE_ALGORITHM = "SHA1PRNG";
+
+	private static final String SEED_ALGORITHM = "NativePRNGNonBlocking";
+
+	private static final int SEED_LENGTH = 32;
+
+	private static final int DEFAULT_BUFFER_SIZE = 512;
+
+	private static final class Stripe extends ReentrantLock {
+
+		private static final long serialVersionUID = 1L;
+
+		private final SecureRandom random;
+
+		private final byte[] buffer;
+
+		private int position;
+
+		private Stripe(SecureRandom random, int bufferSize) {
+			this.random = random;
+			this.buffer = new byte[bufferSize];
+			this.position = bufferSize;
+		}
+
+		private void nextBytes(byte[] bytes) {
+			if (bytes.length > buffer.length) {
+				random.nextBytes(bytes);
+				return;
+			}
+
+			if (buffer.length - position < bytes.length) {
+				random.nextBytes(buffer);
+				position = 0;
+			}
+
+			System.arraycopy(buffer, position, bytes, 0, bytes.length);
+			Arrays.fill(buffer, position, position + bytes.length, (byte) 0);
+			position += bytes.length;
+		}
+	}
+
+	private final int stripeCount;
+
+	private final int bufferSize;
+
+	private transient Stripe[] stripes;
+
+	/**
+	 * Creates a generator with twice as many stripes as there are available
+	 * processors (rounded up to a power of two).
+	 */
+	public SecureTokenGenerator() {
+		this(Runtime.getRuntime().availableProcessors() * 2, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param stripeCount
+	 *            number of independent generators, rounded up to a power of
+	 *            two
+	 * @param bufferSize
+	 *            number of random bytes pre-filled by each generator
+	 */
+	public SecureTokenGenerator(int stripeCount, int bufferSize) {
+		int count = 1;
+		while (count < stripeCount) {
+			count <<= 1;
+		}
+		this.stripeCount = count;
+		this.bufferSize = bufferSize;
+		this.stripes = createStripes();
+	}
+
+	private Stripe[] createStripes() {
+		SecureRandom seedSource = createSeedSource();
+
+		Stripe[] result = new Stripe[stripeCount];
+		for (int idx = 0; idx < stripeCount; ++idx) {
+			SecureRandom random = createStripeRandom();
+			random.setSeed(seedSource.generateSeed(SEED_LENGTH));
+			result[idx] = new Stripe(random, bufferSize);
+		}
+		return result;
+	}
+
+	private static SecureRandom createSeedSource() {
+		try {
+			return SecureRandom.getInstance(SEED_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			return new SecureRandom();
+		}
+	}
+
+	private static SecureRandom createStripeRandom() {
+		try {
+			// seeded explicitly, so it never touches the blocking system source
+			return SecureRandom.getInstance(STRIPE_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			return new SecureRandom();
+		}
+	}
+
+	/**
+	 * Fills the given array with random bytes.
+	 */
+	public void nextBytes(byte[] bytes) {
+		int home = (int) Thread.currentThread().getId();
+		int mask = stripeCount - 1;
+
+		for (int idx = 0; idx < stripeCount; ++idx) {
+			Stripe stripe = stripes[(home + idx) & mask];
+			if (stripe.tryLock()) {
+				try {
+					stripe.nextBytes(bytes);
+					return;
+				} finally {
+					stripe.unlock();
+				}
+			}
+		}
+
+		Stripe stripe = stripes[home & mask];
+		stripe.lock();
+		try {
+			stripe.nextBytes(bytes);
+		} finally {
+			stripe.unlock();
+		}
+	}
+
+	/**
+	 * Generates a random token of the given number of bytes.
+	 * 
+	 * @return The token as a lower case hexadecimal string.
+	 */
+	public String generateToken(int length) {
+		byte[] bytes = new byte[length];
+		nextBytes(bytes);
+		return HexUtils.toHex(bytes);
+	}
+
+	public int getStripeCount() {
+		return stripeCount;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		stripes = createStripes();
+	}
+
+}
@@ -0,0 +1,205 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.jardoapps.usermodule;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.jardoapps.usermodule.containers.LogInRecord;
+
+public class LogInRecordSpoolTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final UserDatabaseModel databaseModel = Mockito.mock(UserDatabaseModel.class);
+
+	private final List<LogInRecord> replayedRecords = Collections.synchronizedList(new ArrayList<LogInRecord>());
+
+	private final AtomicBoolean databaseAvailable = new AtomicBoolean(true);
+
+	private final UserManagementPropertiesImpl properties = new UserManagementPropertiesImpl();
+
+	public LogInRecordSpoolTest() {
+		properties.setLogInRecordBatchSize(10);
+		properties.setLogInRecordMaxBatchDelayMillis(10);
+
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenAnswer(new Answer<Boolean>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				if (!databaseAvailable.get()) {
+					return false;
+				}
+				replayedRecords.addAll((List<LogInRecord>) invocation.getArguments()[0]);
+				return true;
+			}
+		});
+	}
+
+	private static LogInRecord createRecord(int userId) {
+		return new LogInRecord(userId, userId % 2 == 0, "192.168.0." + userId, new Date(1000L * userId));
+	}
+
+	private void assertReplayed(int firstUserId, int lastUserId) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (replayedRecords.size() < lastUserId - firstUserId + 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		Assert.assertEquals(lastUserId - firstUserId + 1, replayedRecords.size());
+		for (int userId = firstUserId; userId <= lastUserId; ++userId) {
+			LogInRecord record = replayedRecords.get(userId - firstUserId);
+			Assert.assertEquals(userId, record.getUserId());
+			Assert.assertEquals(userId % 2 == 0, record.isSuccessful());
+			Assert.assertEquals("192.168.0." + userId, record.getIp());
+			Assert.assertEquals(1000L * userId, record.getTime().getTime());
+		}
+		replayedRecords.clear();
+	}
+
+	@Test
+	public void testReplay() throws Exception {
+		File file = temporaryFolder.newFile();
+		LogInRecordSpool spool = new LogInRecordSpool(file, 4096, databaseModel, properties);
+
+		for (int userId = 1; userId <= 25; ++userId) {
+			Assert.assertEquals(true, spool.offer(createRecord(userId)));
+		}
+
+		assertReplayed(1, 25);
+		spool.shutdown(1000);
+
+		Assert.assertEquals(false, spool.offer(createRecord(26)));
+	}
+
+	@Test
+	public void testRecordsSurviveRestart() throws Exception {
+		File file = temporaryFolder.newFile();
+
+		databaseAvailable.set(false);
+		LogInRecordSpool spool = new LogInRecordSpool(file, 4096, databaseModel, properties);
+		for (int userId = 1; userId <= 5; ++userId) {
+			Assert.assertEquals(true, spool.offer(createRecord(userId)));
+		}
+		spool.shutdown(1000);
+		Assert.assertEquals(0, replayedRecords.size());
+
+		databaseAvailable.set(true);
+		spool = new LogInRecordSpool(file, 4096, databaseModel, properties);
+		assertReplayed(1, 5);
+		spool.offer(createRecord(6));
+		assertReplayed(6, 6);
+		spool.shutdown(1000);
+
+		// nothing is replayed twice
+		spool = new LogInRecordSpool(file, 4096, databaseModel, properties);
+		spool.shutdown(1000);
+		Assert.assertEquals(0, replayedRecords.size());
+	}
+
+	@Test
+	public void testTornRecordIsDiscarded() throws Exception {
+		File file = temporaryFolder.newFile();
+
+		databaseAvailable.set(false);
+		LogInRecordSpool spool = new LogInRecordSpool(file, 4096, databaseModel, properties);
+		spool.offer(createRecord(1));
+		spool.offer(createRecord(2));
+		spool.shutdown(1000);
+
+		// damages data of the second record
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			int secondRecord = 16 + randomAccessFileInt(randomAccessFile, 16);
+			randomAccessFile.seek(secondRecord + 10);
+			randomAccessFile.write(0xff);
+		} finally {
+			randomAccessFile.close();
+		}
+
+		databaseAvailable.set(true);
+		spool = new LogInRecordSpool(file, 4096, databaseModel, properties);
+		assertReplayed(1, 1);
+		spool.offer(createRecord(3));
+		assertReplayed(3, 3);
+		spool.shutdown(1000);
+	}
+
+	private static int randomAccessFileInt(RandomAccessFile file, long position) throws Exception {
+		file.seek(position);
+		return file.readInt();
+	}
+
+	@Test
+	public void testFullSpoolWrapsAround() throws Exception {
+		File file = temporaryFolder.newFile();
+
+		// blocks the replaying thread in the first batch
+		final CountDownLatch releaseDatabase = new CountDownLatch(1);
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenAnswer(new Answer<Boolean>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				releaseDatabase.await();
+				replayedRecords.addAll((List<LogInRecord>) invocation.getArguments()[0]);
+				return true;
+			}
+		});
+
+		LogInRecordSpool spool = new LogInRecordSpool(file, 1024, databaseModel, properties);
+
+		int userId = 0;
+		while (spool.offer(createRecord(userId + 1))) {
+			++userId;
+		}
+		int fullCount = userId;
+		Assert.assertTrue(fullCount > 20);
+		Assert.assertEquals(false, spool.offer(createRecord(fullCount + 1), 10, TimeUnit.MILLISECONDS));
+
+		releaseDatabase.countDown();
+
+		// written after the first records have been replayed, at the start of the file
+		for (int idx = 0; idx < fullCount; ++idx) {
+			++userId;
+			Assert.assertEquals(true, spool.offer(createRecord(userId), 5, TimeUnit.SECONDS));
+		}
+
+		assertReplayed(1, userId);
+		spool.shutdown(1000);
+	}
+
+}
@@ -0,0 +1,197 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PasswordHasherPbkdf2Test {
+
+	private static final String SALT = "7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008";
+
+	// password = 'password'
+	private static final String LEGACY_PASSWORD_HASH = "C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD";
+	private static final String LEGACY_PASSWORD_SALT = "7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008";
+
+	@Spy
+	private UserManagementPropertiesImpl properties = new UserManagementPropertiesImpl();
+
+	// simulated cost of a single iteration, so the calibration doesn't depend on the speed of the machine
+	private long nanosPerIteration = 1000;
+
+	private int measurementCount;
+
+	@InjectMocks
+	private PasswordHasherPbkdf2 hasher = new PasswordHasherPbkdf2() {
+		@Override
+		protected long measureHashNanos(int iterations) {
+			measurementCount++;
+			return iterations * nanosPerIteration;
+		}
+	};
+
+	@Before
+	public void setUp() {
+		properties.setPasswordHashIterations(1000);
+	}
+
+	@Test
+	public void testCalculateHash() {
+		String hash = hasher.calculateHash("password", SALT);
+		Assert.assertTrue(hash.startsWith("pbkdf2-sha256$1000$"));
+		Assert.assertEquals(hash, hasher.calculateHash("password", SALT));
+		Assert.assertNotEquals(hash, hasher.calculateHash("password", SALT.replace('7', '8')));
+	}
+
+	@Test
+	public void testCalibrate() {
+		properties.setPasswordHashTimeBudgetMillis(20);
+
+		// 90 % of the budget at 1 us per iteration
+		Assert.assertEquals(18000, hasher.calibrate());
+		Assert.assertEquals(18000, hasher.getIterations());
+		Assert.assertTrue(hasher.calculateHash("password", SALT).startsWith("pbkdf2-sha256$18000$"));
+
+		properties.setPasswordHashTimeBudgetMillis(100);
+		Assert.assertEquals(90000, hasher.calibrate());
+
+		// a slower host
+		nanosPerIteration = 2000;
+		Assert.assertEquals(45000, hasher.calibrate());
+	}
+
+	@Test
+	public void testStart() {
+		hasher.start();
+		Assert.assertEquals(0, measurementCount);
+
+		properties.setPasswordHashTimeBudgetMillis(20);
+		hasher.start();
+		int count = measurementCount;
+		Assert.assertTrue(count > 0);
+
+		// already calibrated, the first hash doesn't wait for the calibration
+		Assert.assertTrue(hasher.calculateHash("password", SALT).startsWith("pbkdf2-sha256$18000$"));
+		Assert.assertEquals(count, measurementCount);
+	}
+
+	@Test
+	public void testCalibrateOnFirstUse() {
+		properties.setPasswordHashTimeBudgetMillis(20);
+
+		Assert.assertTrue(hasher.calculateHash("password", SALT).startsWith("pbkdf2-sha256$18000$"));
+		Assert.assertTrue(measurementCount > 0);
+	}
+
+	@Test
+	public void testCalibrateMinimalIterations() {
+		properties.setPasswordHashIterations(10000);
+		properties.setPasswordHashTimeBudgetMillis(1);
+
+		Assert.assertEquals(10000, hasher.calibrate());
+	}
+
+	@Test
+	public void testIsPasswordValid() {
+		UserPassword storedPassword = new UserPassword(hasher.calculateHash("password", SALT), SALT);
+
+		Assert.assertEquals(true, hasher.isPasswordValid("password", storedPassword));
+		Assert.assertEquals(false, hasher.isPasswordValid("wrong_password", storedPassword));
+	}
+
+	@Test
+	public void testIsPasswordValidAfterIterationsChange() {
+		UserPassword storedPassword = new UserPassword(hasher.calculateHash("password", SALT), SALT);
+		properties.setPasswordHashIterations(2000);
+
+		Assert.assertEquals(true, hasher.isPasswordValid("password", storedPassword));
+	}
+
+	@Test
+	public void testIsPasswordValidLegacyHash() {
+		UserPassword storedPassword = new UserPassword(LEGACY_PASSWORD_HASH, LEGACY_PASSWORD_SALT);
+
+		Assert.assertEquals(true, hasher.isPasswordValid("password", storedPassword));
+		Assert.assertEquals(false, hasher.isPasswordValid("wrong_password", storedPassword));
+	}
+
+	@Test
+	public void testIsRehashNeeded() {
+		UserPassword storedPassword = new UserPassword(hasher.calculateHash("password", SALT), SALT);
+		Assert.assertEquals(false, hasher.isRehashNeeded(storedPassword));
+
+		properties.setPasswordHashIterations(2000);
+		Assert.assertEquals(true, hasher.isRehashNeeded(storedPassword));
+
+		properties.setPasswordHashIterations(500);
+		Assert.assertEquals(false, hasher.isRehashNeeded(storedPassword));
+
+		// hashes below the calibrated iterations aren't upgraded to them
+		properties.setPasswordHashTimeBudgetMillis(20);
+		hasher.calibrate();
+		Assert.assertEquals(false, hasher.isRehashNeeded(storedPassword));
+
+		Assert.assertEquals(true, hasher.isRehashNeeded(new UserPassword(LEGACY_PASSWORD_HASH, LEGACY_PASSWORD_SALT)));
+	}
+
+	@Test
+	public void testIsRehashNeededAboveBudget() {
+		properties.setPasswordHashTimeBudgetMillis(20);
+
+		// hash from a faster host, calibrated to 36000 iterations
+		nanosPerIteration = 500;
+		Assert.assertEquals(36000, hasher.calibrate());
+		UserPassword fastHostPassword = new UserPassword(hasher.calculateHash("password", SALT), SALT);
+
+		// this host verifies 36000 iterations in 36 ms, which exceeds its budget
+		nanosPerIteration = 1000;
+		Assert.assertEquals(18000, hasher.calibrate());
+		Assert.assertEquals(true, hasher.isRehashNeeded(fastHostPassword));
+
+		// within the calibration headroom
+		Assert.assertEquals(false, hasher.isRehashNeeded(new UserPassword("pbkdf2-sha256$19000$00", SALT)));
+
+		// the re-hashed password isn't upgraded back by the faster host
+		UserPassword slowHostPassword = new UserPassword(hasher.calculateHash("password", SALT), SALT);
+		nanosPerIteration = 500;
+		hasher.calibrate();
+		Assert.assertEquals(false, hasher.isRehashNeeded(slowHostPassword));
+
+		// without a time budget, the stored cost isn't limited
+		properties.setPasswordHashTimeBudgetMillis(0);
+		Assert.assertEquals(false, hasher.isRehashNeeded(fastHostPassword));
+	}
+
+	@Test
+	public void testIsPasswordValidMalformedHash() {
+		Assert.assertEquals(false, hasher.isPasswordValid("password", new UserPassword("pbkdf2-sha256$abc$00", SALT)));
+		Assert.assertEquals(false, hasher.isPasswordValid("password", new UserPassword("pbkdf2-sha256$0$00", SALT)));
+		Assert.assertEquals(false, hasher.isPasswordValid("password", new UserPassword("pbkdf2-sha256$1000", SALT)));
+	}
+
+}
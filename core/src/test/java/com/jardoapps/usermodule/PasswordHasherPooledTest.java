@@ -0,0 +1,123 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+
+public class PasswordHasherPooledTest {
+
+	// password = 'password'
+	private static final String STORED_PASSWORD_HASH = "C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD";
+	private static final String STORED_PASSWORD_SALT = "7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008";
+
+	private PasswordHasherPooled hasher;
+
+	private PasswordHasherPooled createHasher(PasswordHasher delegate, int threads, int queueCapacity) {
+		UserManagementPropertiesImpl properties = new UserManagementPropertiesImpl();
+		properties.setPasswordHashingThreads(threads);
+		properties.setPasswordHashingQueueCapacity(queueCapacity);
+		return new PasswordHasherPooled(delegate, properties);
+	}
+
+	@After
+	public void tearDown() {
+		hasher.shutdown();
+	}
+
+	@Test
+	public void testCalculateHash() {
+		hasher = createHasher(new PasswordHasherSha256(), 2, 10);
+
+		String hash = hasher.calculateHash("password", STORED_PASSWORD_SALT);
+		Assert.assertEquals(STORED_PASSWORD_HASH.toLowerCase(), hash);
+
+		UserPassword storedPassword = new UserPassword(STORED_PASSWORD_HASH, STORED_PASSWORD_SALT);
+		Assert.assertEquals(true, hasher.isPasswordValid("password", storedPassword));
+		Assert.assertEquals(false, hasher.isPasswordValid("wrong_password", storedPassword));
+
+		Assert.assertEquals(3, hasher.getCompletedHashCount());
+		Assert.assertEquals(0, hasher.getRejectedHashCount());
+		Assert.assertEquals(0, hasher.getQueueDepth());
+	}
+
+	@Test
+	public void testQueueFull() throws Exception {
+		final CountDownLatch hashingStarted = new CountDownLatch(1);
+		final CountDownLatch releaseHashing = new CountDownLatch(1);
+
+		PasswordHasher blockingHasher = new PasswordHasherSha256() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String calculateHash(String password, String salt) {
+				hashingStarted.countDown();
+				try {
+					releaseHashing.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.calculateHash(password, salt);
+			}
+		};
+
+		hasher = createHasher(blockingHasher, 1, 1);
+
+		Thread[] callers = new Thread[2];
+		for (int i = 0; i < callers.length; i++) {
+			callers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					hasher.calculateHash("password", STORED_PASSWORD_SALT);
+				}
+			});
+		}
+
+		// the first caller occupies the only thread, the second one waits in the queue
+		callers[0].start();
+		hashingStarted.await();
+		callers[1].start();
+		while (hasher.getQueueDepth() == 0) {
+			Thread.sleep(1);
+		}
+
+		try {
+			hasher.calculateHash("password", STORED_PASSWORD_SALT);
+			Assert.fail("Expected RejectedExecutionException");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+
+		releaseHashing.countDown();
+		for (Thread caller : callers) {
+			caller.join();
+		}
+
+		Assert.assertEquals(2, hasher.getCompletedHashCount());
+		Assert.assertEquals(1, hasher.getRejectedHashCount());
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.jardoapps.usermodule;
+
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.utils.HexUtils;
+
+public class PasswordHasherSha256Test {
+
+	// password = 'password'
+	private static final String STORED_PASSWORD_HASH = "C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD";
+	private static final String STORED_PASSWORD_SALT = "7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008";
+
+	private final PasswordHasherSha256 hasher = new PasswordHasherSha256();
+
+	private static String calculateReferenceHash(String password, String salt) throws Exception {
+		MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+		sha256.update(salt.getBytes("UTF-16"));
+		return HexUtils.toHex(sha256.digest(password.getBytes("UTF-16")));
+	}
+
+	@Test
+	public void testCalculateHash() throws Exception {
+		Assert.assertEquals(STORED_PASSWORD_HASH.toLowerCase(), hasher.calculateHash("password", STORED_PASSWORD_SALT));
+
+		String[] values = { "", "a", "\u00e1\u010d\u20ac", "\uD83D\uDE00", "\uD800", "a\uDC00b", "\uDE00\uD83D", "x\uD800",
+				new String(new char[1000]).replace('\0', 'p') };
+		for (String password : values) {
+			for (String salt : values) {
+				Assert.assertEquals(calculateReferenceHash(password, salt), hasher.calculateHash(password, salt));
+			}
+		}
+	}
+
+	@Test
+	public void testIsPasswordValid() {
+		UserPassword storedPassword = new UserPassword(STORED_PASSWORD_HASH, STORED_PASSWORD_SALT);
+		Assert.assertEquals(true, hasher.isPasswordValid("password", storedPassword));
+		Assert.assertEquals(false, hasher.isPasswordValid("Password", storedPassword));
+
+		storedPassword = new UserPassword(STORED_PASSWORD_HASH.toLowerCase(), STORED_PASSWORD_SALT);
+		Assert.assertEquals(true, hasher.isPasswordValid("password", storedPassword));
+
+		storedPassword = new UserPassword(STORED_PASSWORD_HASH.substring(2), STORED_PASSWORD_SALT);
+		Assert.assertEquals(false, hasher.isPasswordValid("password", storedPassword));
+
+		storedPassword = new UserPassword(STORED_PASSWORD_HASH.substring(0, 62) + "XD", STORED_PASSWORD_SALT);
+		Assert.assertEquals(false, hasher.isPasswordValid("password", storedPassword));
+	}
+
+	@Test
+	public void testEqualsHex() {
+		byte[] bytes = { 0x00, 0x7f, (byte) 0x80, (byte) 0xff };
+		Assert.assertEquals(true, HexUtils.equalsHex(bytes, "007f80ff"));
+		Assert.assertEquals(true, HexUtils.equalsHex(bytes, "007F80FF"));
+		Assert.assertEquals(false, HexUtils.equalsHex(bytes, "007f80fe"));
+		Assert.assertEquals(false, HexUtils.equalsHex(bytes, "007f80f"));
+		Assert.assertEquals(false, HexUtils.equalsHex(bytes, "007f80fg"));
+		Assert.assertEquals(false, HexUtils.equalsHex(bytes, null));
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UserBinaryExportSinkTest {
+
+	private static void assertUser(User expected, User actual) {
+		Assert.assertEquals(expected.getId(), actual.getId());
+		Assert.assertEquals(expected.getEmail(), actual.getEmail());
+		Assert.assertEquals(expected.getName(), actual.getName());
+		Assert.assertEquals(expected.isRegistrationConfirmed(), actual.isRegistrationConfirmed());
+		Assert.assertEquals(expected.getRank(), actual.getRank());
+		Assert.assertNull(actual.getPassword());
+		Assert.assertNull(actual.getRegistrationControlCode());
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		User[] users = { new User(1, "john", "john@test.com", null, true, null, UserRanks.NORMAL_USER),
+				new User(2, null, "mike@test.com", null, false, null, UserRanks.ADMIN),
+				new User(1000000, "", "\u00e1\u010d\u20ac@test.com", null, true, null, -1),
+				new User(5, "\uD83D\uDE00", "back@test.com", null, false, null, Integer.MAX_VALUE),
+				new User(Integer.MAX_VALUE, "max", "max@test.com", null, true, null, Integer.MIN_VALUE) };
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		UserBinaryExportSink sink = new UserBinaryExportSink(out);
+		for (User user : users) {
+			sink.write(user);
+		}
+
+		UserBinaryExportReader reader = new UserBinaryExportReader(new ByteArrayInputStream(out.toByteArray()));
+		for (User user : users) {
+			assertUser(user, reader.read());
+		}
+		Assert.assertNull(reader.read());
+	}
+
+	@Test
+	public void testRecordSize() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		UserBinaryExportSink sink = new UserBinaryExportSink(out);
+		int headerSize = out.size();
+
+		sink.write(new User(1, "john", "john@test.com", null, true, null, 100));
+		// flags, id difference, rank (2 bytes), email length, email, name length, name
+		Assert.assertEquals(1 + 1 + 2 + 1 + 13 + 1 + 4, out.size() - headerSize);
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadInvalidHeader() throws Exception {
+		new UserBinaryExportReader(new ByteArrayInputStream("id,email".getBytes("UTF-8")));
+	}
+
+	@Test(expected = EOFException.class)
+	public void testReadTruncated() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new UserBinaryExportSink(out).write(new User(1, "john", "john@test.com", null, true, null, UserRanks.NORMAL_USER));
+		byte[] bytes = out.toByteArray();
+
+		UserBinaryExportReader reader = new UserBinaryExportReader(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+		reader.read();
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UserCsvExportSinkTest {
+
+	@Test
+	public void testWrite() throws Exception {
+		StringWriter writer = new StringWriter();
+		UserCsvExportSink sink = new UserCsvExportSink(writer);
+
+		sink.write(new User(1, "john", "john@test.com", null, true, null, UserRanks.NORMAL_USER));
+		sink.write(new User(2, null, "mike@test.com", null, false, null, UserRanks.ADMIN));
+		sink.write(new User(3, "Smith, \"Al\"\r\nJr.", "al@test.com", null, true, null, -1));
+
+		Assert.assertEquals("id,email,name,registration_confirmed,rank\r\n"
+				+ "1,john@test.com,john,true,200\r\n"
+				+ "2,mike@test.com,,false,400\r\n"
+				+ "3,al@test.com,\"Smith, \"\"Al\"\"\r\nJr.\",true,-1\r\n", writer.toString());
+	}
+
+	@Test
+	public void testHeaderOnly() throws Exception {
+		StringWriter writer = new StringWriter();
+		new UserCsvExportSink(writer);
+
+		Assert.assertEquals(UserCsvExportSink.HEADER + "\r\n", writer.toString());
+	}
+
+}
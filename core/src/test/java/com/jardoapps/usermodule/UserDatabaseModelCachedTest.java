@@ -0,0 +1,218 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.jardoapps.usermodule.containers.PasswordUpgrade;
+import com.jardoapps.usermodule.containers.UserPassword;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UserDatabaseModelCachedTest {
+
+	private static final UserPassword PASSWORD = new UserPassword("7342f7c8d3d1d68ee7c03ab72b3deac613b837a4c4c07042cbeca974ea7ba218",
+			"7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008");
+
+	private static final User JOHN = new User(1, "john", "john@test.com", "029b50deea7a25c41e489e6ee3635e52", true, PASSWORD, UserRanks.NORMAL_USER);
+
+	private static final User MIKE = new User(2, "mike", "mike@test.com", "26076d153e5959c3bc7e28cb9d55c4bd", false, PASSWORD, UserRanks.NORMAL_USER);
+
+	@Mock
+	private UserDatabaseModel delegate;
+
+	private final UserManagementPropertiesImpl properties = new UserManagementPropertiesImpl();
+
+	private UserDatabaseModelCached databaseModel;
+
+	@Before
+	public void setUp() {
+		Mockito.when(delegate.getUserByEmail("john@test.com")).thenReturn(JOHN);
+		Mockito.when(delegate.getUserByName("john")).thenReturn(JOHN);
+		Mockito.when(delegate.getUserByEmail("mike@test.com")).thenReturn(MIKE);
+
+		databaseModel = new UserDatabaseModelCached(delegate, properties);
+	}
+
+	@Test
+	public void testLookUps() {
+		Assert.assertEquals(null, databaseModel.getUserByEmail("non-existing@test.com"));
+		Assert.assertEquals(null, databaseModel.getUserByEmail("non-existing@test.com"));
+		Mockito.verify(delegate, Mockito.times(2)).getUserByEmail("non-existing@test.com");
+
+		User user = databaseModel.getUserByEmail("john@test.com");
+		Assert.assertEquals(JOHN.getId(), user.getId());
+
+		// the returned users are copies
+		user.setRank(UserRanks.ADMIN);
+		user = databaseModel.getUserByName("john");
+		Assert.assertEquals(UserRanks.NORMAL_USER, user.getRank());
+		Assert.assertEquals("john@test.com", user.getEmail());
+
+		Assert.assertEquals(1, databaseModel.getUserIdByEmail("john@test.com"));
+		Assert.assertSame(PASSWORD, databaseModel.getUserPassword(1));
+		Assert.assertEquals(true, databaseModel.isEmailRegistered("john@test.com"));
+		Assert.assertEquals(true, databaseModel.isUserNameRegistered("john"));
+
+		Mockito.verify(delegate, Mockito.times(1)).getUserByEmail("john@test.com");
+		Mockito.verify(delegate, Mockito.never()).getUserByName("john");
+		Mockito.verify(delegate, Mockito.never()).getUserIdByEmail("john@test.com");
+		Mockito.verify(delegate, Mockito.never()).getUserPassword(1);
+		Mockito.verify(delegate, Mockito.never()).isEmailRegistered("john@test.com");
+		Mockito.verify(delegate, Mockito.never()).isUserNameRegistered("john");
+
+		Assert.assertEquals(5, databaseModel.getHitCount());
+		Assert.assertEquals(3, databaseModel.getMissCount());
+		Assert.assertEquals(1, databaseModel.getSize());
+	}
+
+	@Test
+	public void testGetUserForLogIn() {
+		User user = new User(2, "mike", "mike@test.com", null, false, PASSWORD, UserRanks.NORMAL_USER);
+		Mockito.when(delegate.getUserForLogIn("mike", false)).thenReturn(user);
+
+		Assert.assertEquals(2, databaseModel.getUserForLogIn("mike", false).getId());
+		Assert.assertEquals(2, databaseModel.getUserForLogIn("mike", false).getId());
+		Assert.assertEquals(2, databaseModel.getUserForLogIn("mike@test.com", true).getId());
+		Mockito.verify(delegate, Mockito.times(1)).getUserForLogIn("mike", false);
+		Mockito.verify(delegate, Mockito.never()).getUserForLogIn("mike@test.com", true);
+		Assert.assertEquals(1, databaseModel.getSize());
+
+		// it may be incomplete, so it isn't used for the full user
+		Assert.assertEquals("26076d153e5959c3bc7e28cb9d55c4bd", databaseModel.getUserByEmail("mike@test.com").getRegistrationControlCode());
+		Assert.assertEquals("26076d153e5959c3bc7e28cb9d55c4bd", databaseModel.getUserByEmail("mike@test.com").getRegistrationControlCode());
+		Mockito.verify(delegate, Mockito.times(1)).getUserByEmail("mike@test.com");
+
+		databaseModel.getUserByEmail("john@test.com");
+		Assert.assertEquals("john", databaseModel.getUserForLogIn("john@test.com", true).getName());
+		Assert.assertEquals("john", databaseModel.getUserForLogIn("john", false).getName());
+		Mockito.verify(delegate, Mockito.never()).getUserForLogIn(Mockito.eq("john@test.com"), Mockito.anyBoolean());
+		Mockito.verify(delegate, Mockito.never()).getUserForLogIn(Mockito.eq("john"), Mockito.anyBoolean());
+	}
+
+	@Test
+	public void testCheckRegistrationAvailability() {
+		Mockito.when(delegate.checkRegistrationAvailability("carl@test.com", "carl")).thenReturn(ResultCode.OK);
+		Mockito.when(delegate.isUserNameRegistered("mike")).thenReturn(true);
+
+		Assert.assertEquals(ResultCode.OK, databaseModel.checkRegistrationAvailability("carl@test.com", "carl"));
+
+		databaseModel.getUserByEmail("john@test.com");
+		Assert.assertEquals(ResultCode.USER_NAME_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("carl@test.com", "john"));
+		Assert.assertEquals(ResultCode.EMAIL_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("john@test.com", "carl"));
+		Assert.assertEquals(ResultCode.EMAIL_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("john@test.com", null));
+
+		// the name takes precedence even when only the email is cached
+		Assert.assertEquals(ResultCode.USER_NAME_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("john@test.com", "mike"));
+
+		Mockito.verify(delegate, Mockito.times(1)).checkRegistrationAvailability(Mockito.anyString(), Mockito.anyString());
+	}
+
+	@Test
+	public void testInvalidation() {
+		databaseModel.getUserByEmail("john@test.com");
+		databaseModel.setUserPassword(1, PASSWORD);
+		Assert.assertEquals(0, databaseModel.getSize());
+
+		databaseModel.getUserByEmail("john@test.com");
+		databaseModel.upgradeUserPasswords(Arrays.asList(new PasswordUpgrade(1, PASSWORD, PASSWORD)));
+		Assert.assertEquals(0, databaseModel.getSize());
+
+		databaseModel.getUserByEmail("john@test.com");
+		databaseModel.resetUserPassword(1, PASSWORD);
+		Assert.assertEquals(0, databaseModel.getSize());
+
+		databaseModel.getUserByEmail("john@test.com");
+		databaseModel.confirmUserRegistrationAndSetPassword(1, PASSWORD);
+		Assert.assertEquals(0, databaseModel.getSize());
+
+		databaseModel.getUserByEmail("john@test.com");
+		databaseModel.getUserByEmail("mike@test.com");
+		databaseModel.confirmUserRegistration("mike@test.com");
+		Assert.assertEquals(1, databaseModel.getSize());
+		Assert.assertEquals(false, databaseModel.isEmailRegistered("mike@test.com"));
+
+		databaseModel.deleteUser(1);
+		Assert.assertEquals(0, databaseModel.getSize());
+		Assert.assertEquals(false, databaseModel.isUserNameRegistered("john"));
+
+		Mockito.verify(delegate).setUserPassword(1, PASSWORD);
+		Mockito.verify(delegate).resetUserPassword(1, PASSWORD);
+		Mockito.verify(delegate).confirmUserRegistrationAndSetPassword(1, PASSWORD);
+		Mockito.verify(delegate).confirmUserRegistration("mike@test.com");
+		Mockito.verify(delegate).deleteUser(1);
+		Mockito.verify(delegate, Mockito.times(5)).getUserByEmail("john@test.com");
+	}
+
+	@Test
+	public void testInvalidationDuringLoad() {
+		// the password is changed while the user is being loaded
+		Mockito.when(delegate.getUserByEmail("john@test.com")).thenAnswer(new Answer<User>() {
+			@Override
+			public User answer(InvocationOnMock invocation) throws Throwable {
+				databaseModel.setUserPassword(1, PASSWORD);
+				return JOHN;
+			}
+		});
+
+		Assert.assertEquals(1, databaseModel.getUserByEmail("john@test.com").getId());
+		Assert.assertEquals(0, databaseModel.getSize());
+	}
+
+	@Test
+	public void testEviction() {
+		properties.setUserCacheMaxSize(1);
+		databaseModel = new UserDatabaseModelCached(delegate, properties);
+
+		databaseModel.getUserByEmail("john@test.com");
+		databaseModel.getUserByEmail("mike@test.com");
+
+		Assert.assertEquals(1, databaseModel.getSize());
+		Assert.assertEquals(1, databaseModel.getEvictionCount());
+		Assert.assertEquals(2, databaseModel.getUserIdByEmail("mike@test.com"));
+
+		databaseModel.getUserIdByEmail("john@test.com");
+		Mockito.verify(delegate).getUserIdByEmail("john@test.com");
+	}
+
+	@Test
+	public void testExpiration() throws InterruptedException {
+		properties.setUserCacheExpirationSeconds(1);
+		databaseModel = new UserDatabaseModelCached(delegate, properties);
+
+		databaseModel.getUserByEmail("john@test.com");
+		Thread.sleep(1100);
+		databaseModel.getUserByEmail("john@test.com");
+
+		Assert.assertEquals(1, databaseModel.getExpirationCount());
+		Assert.assertEquals(0, databaseModel.getHitCount());
+		Mockito.verify(delegate, Mockito.times(2)).getUserByEmail("john@test.com");
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+
+/**
+ * Tests how {@link UserManager} finds its {@link PasswordHasher} when none
+ * is injected directly.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class UserManagerPasswordHasherTest {
+
+	// password = 'password'
+	private static final UserPassword STORED_PASSWORD = new UserPassword("C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD",
+			"7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008");
+
+	@Spy
+	private UserManagementProperties properties = new UserManagementPropertiesImpl();
+
+	@Mock
+	private UserDatabaseModel databaseModel;
+
+	@Mock
+	private Provider<PasswordHasher> passwordHasherProvider;
+
+	@InjectMocks
+	private UserManager userManager;
+
+	@Test
+	public void testProvidedHasher() {
+		PasswordHasher hasher = Mockito.mock(PasswordHasher.class);
+		Mockito.when(passwordHasherProvider.get()).thenReturn(hasher);
+		Mockito.when(databaseModel.getUserPassword(1)).thenReturn(STORED_PASSWORD);
+		Mockito.when(hasher.isPasswordValid("password", STORED_PASSWORD)).thenReturn(true);
+
+		Assert.assertEquals(true, userManager.isPasswordValid(1, "password"));
+		Assert.assertEquals(true, userManager.isPasswordValid(1, "password"));
+		// looked up only once
+		Mockito.verify(passwordHasherProvider).get();
+	}
+
+	@Test
+	public void testNoHasherBean() {
+		Mockito.when(passwordHasherProvider.get()).thenThrow(new IllegalStateException("No bean of type PasswordHasher."));
+		Mockito.when(databaseModel.getUserPassword(1)).thenReturn(STORED_PASSWORD);
+
+		Assert.assertEquals(true, userManager.isPasswordValid(1, "password"));
+		Assert.assertEquals(false, userManager.isPasswordValid(1, "wrong_password"));
+	}
+
+	@Test
+	public void testNoInjection() {
+		UserManager manager = new UserManager();
+		UserPassword password = manager.createUserPassword("password");
+		Assert.assertEquals(new PasswordHasherSha256().calculateHash("password", password.getSalt()), password.getHash());
+
+		PasswordHasher hasher = Mockito.mock(PasswordHasher.class);
+		Mockito.when(hasher.calculateHash(Mockito.eq("password"), Mockito.anyString())).thenReturn("hash");
+		manager.setPasswordHasher(hasher);
+		Assert.assertEquals("hash", manager.createUserPassword("password").getHash());
+	}
+
+	@Test
+	public void testNoInjectionPbkdf2() {
+		UserManagementPropertiesImpl properties = new UserManagementPropertiesImpl();
+		properties.setPasswordHashIterations(1000);
+		PasswordHasher hasher = new PasswordHasherPbkdf2(properties);
+
+		UserManager manager = new UserManager();
+		manager.setPasswordHasher(hasher);
+		UserPassword password = manager.createUserPassword("password");
+		Assert.assertTrue(password.getHash().startsWith("pbkdf2-sha256$1000$"));
+		Assert.assertEquals(true, hasher.isPasswordValid("password", password));
+		Assert.assertEquals(false, hasher.isRehashNeeded(password));
+	}
+
+}
@@ -18,24 +18,43 @@
 
 package com.jardoapps.usermodule;
 
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
+import com.jardoapps.usermodule.containers.ImportedUser;
+import com.jardoapps.usermodule.containers.LogInRecord;
 import com.jardoapps.usermodule.containers.PasswordResetToken;
+import com.jardoapps.usermodule.containers.PasswordUpgrade;
 import com.jardoapps.usermodule.containers.UserPassword;
 import com.jardoapps.usermodule.defines.EmailType;
+import com.jardoapps.usermodule.defines.LogInRecordOverflowPolicy;
 
 @RunWith(MockitoJUnitRunner.class)
 public class UserManagerTest {
@@ -60,9 +79,15 @@ public class UserManagerTest {
 	@Mock
 	private SessionModel sessionModel;
 
+	@Spy
+	private PasswordHasher passwordHasher = new PasswordHasherSha256();
+
 	@InjectMocks
 	private UserManager userManager;
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	private final String inetAddress;
 
 	private final UserPassword storedPassword;
@@ -107,6 +132,28 @@ public class UserManagerTest {
 		}
 	}
 
+	@Test
+	public void testCalculatePasswordHashConcurrently() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return userManager.calculatePasswordHash("password", STORED_PASSWORD_SALT);
+					}
+				}));
+			}
+
+			for (Future<String> result : results) {
+				Assert.assertEquals(STORED_PASSWORD_HASH.toLowerCase(), result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	@Test
 	public void testCancelPasswordResetTokens() {
 		Mockito.when(databaseModel.cancelAllPasswordResetTokens(1)).thenReturn(true);
@@ -211,16 +258,13 @@ public class UserManagerTest {
 	@Test
 	public void testConfirmManualRegistration() throws Exception {
 		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(userWithUnfinishedRegistration);
-		Mockito.when(databaseModel.confirmUserRegistration("john@example.com")).thenReturn(true);
-		Mockito.when(databaseModel.setUserPassword(Mockito.eq(2), Mockito.any(UserPassword.class))).thenReturn(true);
+		Mockito.when(databaseModel.confirmUserRegistrationAndSetPassword(Mockito.eq(2), Mockito.any(UserPassword.class))).thenReturn(true);
 
 		ResultCode result = userManager.confirmManualRegistration("john@example.com", userWithUnfinishedRegistration.getRegistrationControlCode(), "password");
 		Assert.assertEquals(ResultCode.OK, result);
 
-		Mockito.verify(databaseModel).confirmUserRegistration("john@example.com");
-
 		ArgumentCaptor<UserPassword> passwordCaptor = ArgumentCaptor.forClass(UserPassword.class);
-		Mockito.verify(databaseModel).setUserPassword(Mockito.eq(2), passwordCaptor.capture());
+		Mockito.verify(databaseModel).confirmUserRegistrationAndSetPassword(Mockito.eq(2), passwordCaptor.capture());
 
 		UserPassword newPassword = passwordCaptor.getValue();
 		assertPasswordData("password", newPassword);
@@ -338,6 +382,88 @@ public class UserManagerTest {
 		Assert.assertEquals(since, dateCaptor.getValue());
 	}
 
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testImportUsers() throws Exception {
+		Mockito.doReturn(3).when(properties).getUserImportBatchSize();
+		Mockito.doReturn(2).when(properties).getUserImportThreads();
+		Mockito.when(databaseModel.findRegisteredEmails(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.singleton("bob@example.com"));
+		Mockito.when(databaseModel.findRegisteredUserNames(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.singleton("Dave"));
+		Mockito.when(databaseModel.addUsers(Mockito.anyListOf(User.class))).thenReturn(true);
+		UserImportListener listener = Mockito.mock(UserImportListener.class);
+
+		ImportedUser alice = new ImportedUser("alice@example.com", "Alice", "password", true, UserRanks.NORMAL_USER);
+		ImportedUser invalid = new ImportedUser("invalid", "Invalid", "password", true, UserRanks.NORMAL_USER);
+		ImportedUser bob = new ImportedUser("bob@example.com", "Bob", "password", true, UserRanks.NORMAL_USER);
+		ImportedUser carl = new ImportedUser("carl@example.com", "Alice", "password", true, UserRanks.NORMAL_USER);
+		ImportedUser dave = new ImportedUser("dave@example.com", "Dave", "password", true, UserRanks.NORMAL_USER);
+		ImportedUser eve = new ImportedUser("eve@example.com", null, null, false, UserRanks.ADMIN);
+
+		int result = userManager.importUsers(Arrays.asList(alice, invalid, carl, bob, dave, eve).iterator(), listener);
+		Assert.assertEquals(2, result);
+
+		Mockito.verify(listener).userRejected(invalid, ResultCode.INVALID_EMAIL);
+		Mockito.verify(listener).userRejected(bob, ResultCode.EMAIL_ALREADY_REGISTERED);
+		Mockito.verify(listener).userRejected(carl, ResultCode.USER_NAME_ALREADY_REGISTERED);
+		Mockito.verify(listener).userRejected(dave, ResultCode.USER_NAME_ALREADY_REGISTERED);
+		Mockito.verify(listener).importProgressed(3, 1);
+		Mockito.verify(listener).importProgressed(6, 2);
+		Mockito.verifyNoMoreInteractions(listener);
+
+		ArgumentCaptor<List> usersCaptor = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(databaseModel, Mockito.times(2)).addUsers(usersCaptor.capture());
+
+		List<User> firstBatch = usersCaptor.getAllValues().get(0);
+		Assert.assertEquals(1, firstBatch.size());
+		Assert.assertEquals("alice@example.com", firstBatch.get(0).getEmail());
+		Assert.assertEquals("Alice", firstBatch.get(0).getName());
+		Assert.assertEquals(true, firstBatch.get(0).isRegistrationConfirmed());
+		assertPasswordData("password", firstBatch.get(0).getPassword());
+
+		List<User> secondBatch = usersCaptor.getAllValues().get(1);
+		Assert.assertEquals(1, secondBatch.size());
+		Assert.assertEquals("eve@example.com", secondBatch.get(0).getEmail());
+		Assert.assertNull(secondBatch.get(0).getName());
+		Assert.assertEquals(false, secondBatch.get(0).isRegistrationConfirmed());
+		Assert.assertEquals(UserRanks.ADMIN, secondBatch.get(0).getRank());
+		Assert.assertNotNull(secondBatch.get(0).getRegistrationControlCode());
+		assertPasswordData("", secondBatch.get(0).getPassword());
+
+		Mockito.verifyZeroInteractions(emailSender);
+	}
+
+	@Test
+	public void testImportUsersDatabaseError() {
+		Mockito.when(databaseModel.findRegisteredEmails(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.<String> emptySet());
+		Mockito.when(databaseModel.findRegisteredUserNames(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.<String> emptySet());
+		Mockito.when(databaseModel.addUsers(Mockito.anyListOf(User.class))).thenReturn(false);
+		UserImportListener listener = Mockito.mock(UserImportListener.class);
+
+		ImportedUser alice = new ImportedUser("alice@example.com", "Alice", "password", true, UserRanks.NORMAL_USER);
+
+		int result = userManager.importUsers(Collections.singletonList(alice).iterator(), listener);
+		Assert.assertEquals(0, result);
+
+		Mockito.verify(listener).userRejected(alice, ResultCode.DATABASE_ERROR);
+		Mockito.verify(listener).importProgressed(1, 0);
+	}
+
+	@Test
+	public void testImportUsersHashingRejected() {
+		Mockito.when(databaseModel.findRegisteredEmails(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.<String> emptySet());
+		Mockito.when(databaseModel.findRegisteredUserNames(Mockito.anyCollectionOf(String.class))).thenReturn(Collections.<String> emptySet());
+		Mockito.doThrow(new RejectedExecutionException("Queue full.")).when(passwordHasher).calculateHash(Mockito.anyString(), Mockito.anyString());
+		UserImportListener listener = Mockito.mock(UserImportListener.class);
+
+		ImportedUser alice = new ImportedUser("alice@example.com", "Alice", "password", true, UserRanks.NORMAL_USER);
+
+		int result = userManager.importUsers(Collections.singletonList(alice).iterator(), listener);
+		Assert.assertEquals(0, result);
+
+		Mockito.verify(listener).userRejected(alice, ResultCode.SERVER_BUSY);
+		Mockito.verify(databaseModel, Mockito.never()).addUsers(Mockito.anyListOf(User.class));
+	}
+
 	@Test
 	public void testIsPasswordValidTrue() {
 		Mockito.when(databaseModel.getUserPassword(1)).thenReturn(storedPassword);
@@ -354,6 +480,19 @@ public class UserManagerTest {
 		Assert.assertEquals(false, result);
 	}
 
+	@Test
+	public void testVerifyPasswordHashingRejected() {
+		Mockito.when(databaseModel.getUserPassword(1)).thenReturn(storedPassword);
+		Mockito.doThrow(new RejectedExecutionException("Queue full.")).when(passwordHasher).isPasswordValid(Mockito.anyString(), Mockito.any(UserPassword.class));
+
+		Assert.assertEquals(ResultCode.SERVER_BUSY, userManager.verifyPassword(1, "password"));
+		Assert.assertEquals(false, userManager.isPasswordValid(1, "password"));
+		Assert.assertEquals(ResultCode.SERVER_BUSY, userManager.changePassword(1, "password", "new_password"));
+		Assert.assertEquals(ResultCode.SERVER_BUSY, userManager.cancelRegistration(1, "password"));
+		Mockito.verify(databaseModel, Mockito.never()).setUserPassword(Mockito.anyInt(), Mockito.any(UserPassword.class));
+		Mockito.verify(databaseModel, Mockito.never()).deleteUser(Mockito.anyInt());
+	}
+
 	@Test
 	public void testIsPasswordValidNoSuchUser() {
 		Mockito.when(databaseModel.getUserPassword(2)).thenReturn(null);
@@ -364,7 +503,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testLogInWithEmail() {
-		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(storedUser);
+		Mockito.when(databaseModel.getUserForLogIn("john@example.com", true)).thenReturn(storedUser);
 
 		ResultCode result = userManager.logIn("john@example.com", "password", inetAddress);
 		Assert.assertEquals(ResultCode.OK, result);
@@ -382,7 +521,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testLogInWithEmailNoSuchUser() {
-		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(null);
+		Mockito.when(databaseModel.getUserForLogIn("john@example.com", true)).thenReturn(null);
 
 		ResultCode result = userManager.logIn("john@example.com", "password", inetAddress);
 		Assert.assertEquals(ResultCode.NO_SUCH_USER, result);
@@ -390,7 +529,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testLogInWithEmailInvalidPassword() {
-		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(storedUser);
+		Mockito.when(databaseModel.getUserForLogIn("john@example.com", true)).thenReturn(storedUser);
 
 		ResultCode result = userManager.logIn("john@example.com", "wrong_password", inetAddress);
 		Assert.assertEquals(ResultCode.INVALID_PASSWORD, result);
@@ -402,9 +541,135 @@ public class UserManagerTest {
 		Assert.assertSame(inetAddress, ipCaptor.getValue());
 	}
 
+	@Test
+	public void testLogInHashingRejected() {
+		Mockito.when(databaseModel.getUserForLogIn("john@example.com", true)).thenReturn(storedUser);
+		Mockito.doThrow(new RejectedExecutionException("Queue full.")).when(passwordHasher).isPasswordValid(Mockito.anyString(), Mockito.any(UserPassword.class));
+
+		ResultCode result = userManager.logIn("john@example.com", "password", inetAddress);
+		Assert.assertEquals(ResultCode.SERVER_BUSY, result);
+
+		Mockito.verify(sessionModel, Mockito.never()).setCurrentUser(Mockito.notNull(User.class));
+		Mockito.verify(databaseModel, Mockito.never()).makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString());
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testLogInWithEmailOutdatedPasswordHash() throws Exception {
+		Mockito.when(databaseModel.getUserForLogIn("john@example.com", true)).thenReturn(storedUser);
+		Mockito.when(databaseModel.upgradeUserPasswords(Mockito.anyListOf(PasswordUpgrade.class))).thenReturn(true);
+		Mockito.doReturn(true).when(passwordHasher).isRehashNeeded(storedPassword);
+
+		ResultCode result = userManager.logIn("john@example.com", "password", inetAddress);
+		Assert.assertEquals(ResultCode.OK, result);
+
+		// the password is re-hashed in the background
+		ArgumentCaptor<List> upgradesCaptor = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(databaseModel, Mockito.timeout(5000)).upgradeUserPasswords(upgradesCaptor.capture());
+
+		List<PasswordUpgrade> upgrades = upgradesCaptor.getValue();
+		Assert.assertEquals(1, upgrades.size());
+		Assert.assertEquals(1, upgrades.get(0).getUserId());
+		Assert.assertSame(storedPassword, upgrades.get(0).getOldPassword());
+		assertPasswordData("password", upgrades.get(0).getNewPassword());
+	}
+
+	@Test
+	public void testLogInWithEmailWriteBehind() throws Exception {
+		Mockito.doReturn(true).when(properties).isLogInRecordWriteBehindEnabled();
+		Mockito.when(databaseModel.getUserForLogIn("john@example.com", true)).thenReturn(storedUser);
+
+		// the batch list is reused by the writer, so its content must be copied
+		final List<LogInRecord> records = Collections.synchronizedList(new ArrayList<LogInRecord>());
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenAnswer(new Answer<Boolean>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				records.addAll((List<LogInRecord>) invocation.getArguments()[0]);
+				return true;
+			}
+		});
+
+		ResultCode result = userManager.logIn("john@example.com", "password", inetAddress);
+		Assert.assertEquals(ResultCode.OK, result);
+
+		result = userManager.logIn("john@example.com", "wrong_password", inetAddress);
+		Assert.assertEquals(ResultCode.INVALID_PASSWORD, result);
+
+		// pending records are written on shutdown at the latest
+		userManager.shutdown();
+
+		Mockito.verify(databaseModel, Mockito.never()).makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString());
+
+		Assert.assertEquals(2, records.size());
+		Assert.assertEquals(1, records.get(0).getUserId());
+		Assert.assertEquals(true, records.get(0).isSuccessful());
+		Assert.assertEquals(inetAddress, records.get(0).getIp());
+		Assert.assertEquals(false, records.get(1).isSuccessful());
+	}
+
+	@Test
+	public void testStartReplaysSpool() throws Exception {
+		File spoolFile = temporaryFolder.newFile();
+
+		// a record left in the spool by the previous run
+		UserDatabaseModel unavailableDatabase = Mockito.mock(UserDatabaseModel.class);
+		LogInRecordSpool spool = new LogInRecordSpool(spoolFile, 4096, unavailableDatabase, properties);
+		spool.offer(new LogInRecord(1, true, inetAddress, new Date()));
+		spool.shutdown(100);
+
+		Mockito.doReturn(spoolFile.getPath()).when(properties).getLogInRecordSpoolFile();
+		Mockito.doReturn(4096).when(properties).getLogInRecordSpoolSizeBytes();
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenReturn(true);
+
+		// replayed without any log in
+		userManager.start();
+		Mockito.verify(databaseModel, Mockito.timeout(5000)).makeLogInRecords(Mockito.anyListOf(LogInRecord.class));
+
+		userManager.shutdown();
+	}
+
+	@Test
+	public void testLogInWithEmailWriteBehindQueueFull() throws Exception {
+		Mockito.doReturn(true).when(properties).isLogInRecordWriteBehindEnabled();
+		Mockito.doReturn(1).when(properties).getLogInRecordQueueCapacity();
+		Mockito.when(databaseModel.getUserForLogIn("john@example.com", true)).thenReturn(storedUser);
+		Mockito.when(databaseModel.makeLogInRecord(1, true, inetAddress)).thenReturn(true);
+
+		// the writer thread is blocked by the first batch
+		final CountDownLatch writeStarted = new CountDownLatch(1);
+		final CountDownLatch releaseWrite = new CountDownLatch(1);
+		Mockito.when(databaseModel.makeLogInRecords(Mockito.anyListOf(LogInRecord.class))).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				writeStarted.countDown();
+				releaseWrite.await();
+				return true;
+			}
+		});
+
+		userManager.logIn("john@example.com", "password", inetAddress);
+		writeStarted.await();
+
+		// fills the queue
+		userManager.logIn("john@example.com", "password", inetAddress);
+		Mockito.verify(databaseModel, Mockito.never()).makeLogInRecord(Mockito.anyInt(), Mockito.anyBoolean(), Mockito.anyString());
+
+		// written synchronously by default
+		userManager.logIn("john@example.com", "password", inetAddress);
+		Mockito.verify(databaseModel).makeLogInRecord(1, true, inetAddress);
+
+		Mockito.doReturn(LogInRecordOverflowPolicy.DISCARD).when(properties).getLogInRecordOverflowPolicy();
+		userManager.logIn("john@example.com", "password", inetAddress);
+		Mockito.verify(databaseModel).makeLogInRecord(1, true, inetAddress);
+
+		releaseWrite.countDown();
+		userManager.shutdown();
+	}
+
 	@Test
 	public void testLogInWithEmailRegistrationNotConfirmed() {
-		Mockito.when(databaseModel.getUserByEmail("carl@example.com")).thenReturn(userWithUnfinishedRegistration);
+		Mockito.when(databaseModel.getUserForLogIn("carl@example.com", true)).thenReturn(userWithUnfinishedRegistration);
 
 		ResultCode result = userManager.logIn("carl@example.com", "wrong_password", inetAddress);
 		Assert.assertEquals(ResultCode.REGISTRATION_NOT_CONFIRMED, result);
@@ -414,7 +679,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testLogInWithoutPasswordWithEmail() {
-		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(storedUser);
+		Mockito.when(databaseModel.getUserForLogIn("john@example.com", true)).thenReturn(storedUser);
 
 		ResultCode result = userManager.logInWithoutPassword("john@example.com");
 		Assert.assertEquals(ResultCode.OK, result);
@@ -429,7 +694,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testLogInWithoutPasswordWithEmailNoSuchUser() {
-		Mockito.when(databaseModel.getUserByEmail("john@example.com")).thenReturn(null);
+		Mockito.when(databaseModel.getUserForLogIn("john@example.com", true)).thenReturn(null);
 
 		ResultCode result = userManager.logInWithoutPassword("john@example.com");
 		Assert.assertEquals(ResultCode.NO_SUCH_USER, result);
@@ -437,7 +702,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testLogInWithoutPasswordWithEmailRegistrationNotConfirmed() {
-		Mockito.when(databaseModel.getUserByEmail("carl@example.com")).thenReturn(userWithUnfinishedRegistration);
+		Mockito.when(databaseModel.getUserForLogIn("carl@example.com", true)).thenReturn(userWithUnfinishedRegistration);
 
 		ResultCode result = userManager.logInWithoutPassword("carl@example.com");
 		Assert.assertEquals(ResultCode.REGISTRATION_NOT_CONFIRMED, result);
@@ -447,7 +712,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testLogInWithoutPasswordWithUserName() {
-		Mockito.when(databaseModel.getUserByName("john")).thenReturn(storedUser);
+		Mockito.when(databaseModel.getUserForLogIn("john", false)).thenReturn(storedUser);
 
 		ResultCode result = userManager.logInWithoutPassword("john");
 		Assert.assertEquals(ResultCode.OK, result);
@@ -462,7 +727,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testLogInWithUserName() {
-		Mockito.when(databaseModel.getUserByName("john")).thenReturn(storedUser);
+		Mockito.when(databaseModel.getUserForLogIn("john", false)).thenReturn(storedUser);
 
 		ResultCode result = userManager.logIn("john", "password", inetAddress);
 		Assert.assertEquals(ResultCode.OK, result);
@@ -486,8 +751,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testRegisterUser() throws Exception {
-		Mockito.when(databaseModel.isEmailRegistered("carl@example.com")).thenReturn(false);
-		Mockito.when(databaseModel.isUserNameRegistered("Carl")).thenReturn(false);
+		Mockito.when(databaseModel.checkRegistrationAvailability("carl@example.com", "Carl")).thenReturn(ResultCode.OK);
 		Mockito.when(databaseModel.addUser(Mockito.notNull(User.class))).thenReturn(2);
 		Mockito.when(emailSender.sendRegistrationEmail(Mockito.eq("carl@example.com"), Mockito.eq("Carl"), Mockito.eq(2), Mockito.notNull(String.class))).thenReturn(true);
 
@@ -512,10 +776,19 @@ public class UserManagerTest {
 		Mockito.verify(emailSender).sendRegistrationEmail("carl@example.com", "Carl", 2, addedUser.getRegistrationControlCode());
 	}
 
+	@Test
+	public void testRegisterUserHashingRejected() {
+		Mockito.when(databaseModel.checkRegistrationAvailability("carl@example.com", "Carl")).thenReturn(ResultCode.OK);
+		Mockito.doThrow(new RejectedExecutionException("Queue full.")).when(passwordHasher).calculateHash(Mockito.anyString(), Mockito.anyString());
+
+		Assert.assertEquals(ResultCode.SERVER_BUSY, userManager.registerUser("carl@example.com", "Carl", "password", false));
+		Assert.assertEquals(ResultCode.SERVER_BUSY, userManager.registerUserManually("carl@example.com", "Carl", UserRanks.NORMAL_USER));
+		Mockito.verify(databaseModel, Mockito.never()).addUser(Mockito.any(User.class));
+	}
+
 	@Test
 	public void testRegisterUserEmailAlreadyRegistered() {
-		Mockito.when(databaseModel.isEmailRegistered("carl@example.com")).thenReturn(true);
-		Mockito.when(databaseModel.isUserNameRegistered("Carl")).thenReturn(false);
+		Mockito.when(databaseModel.checkRegistrationAvailability("carl@example.com", "Carl")).thenReturn(ResultCode.EMAIL_ALREADY_REGISTERED);
 
 		ResultCode result = userManager.registerUser("carl@example.com", "Carl", "password", false);
 		Assert.assertEquals(ResultCode.EMAIL_ALREADY_REGISTERED, result);
@@ -523,8 +796,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testRegisterUserNameAlreadyRegistered() {
-		Mockito.when(databaseModel.isEmailRegistered("carl@example.com")).thenReturn(false);
-		Mockito.when(databaseModel.isUserNameRegistered("Carl")).thenReturn(true);
+		Mockito.when(databaseModel.checkRegistrationAvailability("carl@example.com", "Carl")).thenReturn(ResultCode.USER_NAME_ALREADY_REGISTERED);
 
 		ResultCode result = userManager.registerUser("carl@example.com", "Carl", "password", false);
 		Assert.assertEquals(ResultCode.USER_NAME_ALREADY_REGISTERED, result);
@@ -532,8 +804,7 @@ public class UserManagerTest {
 
 	@Test
 	public void testRegisterUserNameFailedToSendEmail() {
-		Mockito.when(databaseModel.isEmailRegistered("carl@example.com")).thenReturn(false);
-		Mockito.when(databaseModel.isUserNameRegistered("Carl")).thenReturn(false);
+		Mockito.when(databaseModel.checkRegistrationAvailability("carl@example.com", "Carl")).thenReturn(ResultCode.OK);
 		Mockito.when(databaseModel.addUser(Mockito.notNull(User.class))).thenReturn(2);
 		Mockito.when(emailSender.sendRegistrationEmail(Mockito.eq("carl@example.com"), Mockito.eq("Carl"), Mockito.eq(2), Mockito.notNull(String.class))).thenReturn(false);
 
@@ -556,10 +827,24 @@ public class UserManagerTest {
 		Mockito.verify(emailSender).sendRegistrationEmail("carl@example.com", "Carl", 2, addedUser.getRegistrationControlCode());
 	}
 
+	@Test
+	public void testRegisterUserOptimistic() {
+		Mockito.doReturn(true).when(properties).isOptimisticRegistrationEnabled();
+		Mockito.when(databaseModel.addUser(Mockito.notNull(User.class))).thenReturn(UserDatabaseModel.ADD_USER_NAME_ALREADY_REGISTERED,
+				UserDatabaseModel.ADD_USER_EMAIL_ALREADY_REGISTERED, -1, 2);
+
+		Assert.assertEquals(ResultCode.USER_NAME_ALREADY_REGISTERED, userManager.registerUser("carl@example.com", "Carl", "password", true));
+		Assert.assertEquals(ResultCode.EMAIL_ALREADY_REGISTERED, userManager.registerUser("carl@example.com", "Carl", "password", true));
+		Assert.assertEquals(ResultCode.DATABASE_ERROR, userManager.registerUser("carl@example.com", "Carl", "password", true));
+		Assert.assertEquals(ResultCode.OK, userManager.registerUser("carl@example.com", "Carl", "password", true));
+
+		Mockito.verify(databaseModel, Mockito.times(4)).addUser(Mockito.notNull(User.class));
+		Mockito.verify(databaseModel, Mockito.never()).checkRegistrationAvailability(Mockito.anyString(), Mockito.anyString());
+	}
+
 	@Test
 	public void testRegisterUserRegistrationConfirmed() {
-		Mockito.when(databaseModel.isEmailRegistered("carl@example.com")).thenReturn(false);
-		Mockito.when(databaseModel.isUserNameRegistered("Carl")).thenReturn(false);
+		Mockito.when(databaseModel.checkRegistrationAvailability("carl@example.com", "Carl")).thenReturn(ResultCode.OK);
 		Mockito.when(databaseModel.addUser(Mockito.notNull(User.class))).thenReturn(2);
 		Mockito.when(emailSender.sendRegistrationEmail(Mockito.eq("carl@example.com"), Mockito.eq("Carl"), Mockito.eq(2), Mockito.notNull(String.class))).thenReturn(true);
 
@@ -583,8 +868,7 @@ public class UserManagerTest {
 	@Test
 	public void testRegisterUserManually() throws Exception {
 
-		Mockito.when(databaseModel.isEmailRegistered("carl@example.com")).thenReturn(false);
-		Mockito.when(databaseModel.isUserNameRegistered("Carl")).thenReturn(false);
+		Mockito.when(databaseModel.checkRegistrationAvailability("carl@example.com", "Carl")).thenReturn(ResultCode.OK);
 		Mockito.when(databaseModel.addUser(Mockito.notNull(User.class))).thenReturn(2);
 		Mockito.when(
 				emailSender.sendManualRegistrationEmail(Mockito.eq("carl@example.com"), Mockito.eq("Carl"), Mockito.eq(2), Mockito.notNull(String.class), Mockito.any(User.class)))
@@ -654,26 +938,25 @@ public class UserManagerTest {
 	public void testResetPassword() throws Exception {
 		PasswordResetToken token = new PasswordResetToken(1, "a4d21f702e44af5d0ce7228dae878672", new Date());
 		Mockito.when(databaseModel.getNewestPasswordResetToken("john@example.com")).thenReturn(token);
-		Mockito.when(databaseModel.getUserIdByEmail("john@example.com")).thenReturn(1);
-		Mockito.when(databaseModel.setUserPassword(Mockito.eq(1), Mockito.notNull(UserPassword.class))).thenReturn(true);
+		Mockito.when(databaseModel.resetUserPassword(Mockito.eq(1), Mockito.notNull(UserPassword.class))).thenReturn(ResultCode.OK);
 
 		ResultCode result = userManager.resetPassword("john@example.com", token.getKey(), "new_password");
 		Assert.assertEquals(ResultCode.OK, result);
 
 		ArgumentCaptor<UserPassword> passwordCaptor = ArgumentCaptor.forClass(UserPassword.class);
-		Mockito.verify(databaseModel).setUserPassword(Mockito.eq(1), passwordCaptor.capture());
+		Mockito.verify(databaseModel).resetUserPassword(Mockito.eq(1), passwordCaptor.capture());
 
 		UserPassword newPassword = passwordCaptor.getValue();
 		assertPasswordData("new_password", newPassword);
 
-		Mockito.verify(databaseModel).cancelAllPasswordResetTokens(1);
+		Mockito.verify(databaseModel, Mockito.never()).getUserIdByEmail(Mockito.anyString());
 	}
 
 	@Test
 	public void testResetPasswordNoSuchUser() {
 		PasswordResetToken token = new PasswordResetToken(1, "a4d21f702e44af5d0ce7228dae878672", new Date());
 		Mockito.when(databaseModel.getNewestPasswordResetToken("john@example.com")).thenReturn(token);
-		Mockito.when(databaseModel.getUserIdByEmail("john@example.com")).thenReturn(-1);
+		Mockito.when(databaseModel.resetUserPassword(Mockito.eq(1), Mockito.notNull(UserPassword.class))).thenReturn(ResultCode.NO_SUCH_USER);
 
 		ResultCode result = userManager.resetPassword("john@example.com", token.getKey(), "new_password");
 		Assert.assertEquals(ResultCode.NO_SUCH_USER, result);
@@ -682,7 +965,6 @@ public class UserManagerTest {
 	@Test
 	public void testResetPasswordNoToken() {
 		Mockito.when(databaseModel.getNewestPasswordResetToken("john@example.com")).thenReturn(null);
-		Mockito.when(databaseModel.getUserIdByEmail("john@example.com")).thenReturn(1);
 
 		ResultCode result = userManager.resetPassword("john@example.com", "a4d21f702e44af5d0ce7228dae878672", "new_password");
 		Assert.assertEquals(ResultCode.NO_VALID_PASSWORD_RESET_TOKEN, result);
@@ -693,26 +975,24 @@ public class UserManagerTest {
 		long now = new Date().getTime();
 		PasswordResetToken token = new PasswordResetToken(1, "a4d21f702e44af5d0ce7228dae878672", new Date(now - ONE_DAY));
 		Mockito.when(databaseModel.getNewestPasswordResetToken("john@example.com")).thenReturn(token);
-		Mockito.when(databaseModel.getUserIdByEmail("john@example.com")).thenReturn(1);
-		Mockito.when(databaseModel.setUserPassword(Mockito.eq(1), Mockito.notNull(UserPassword.class))).thenReturn(true);
+		Mockito.when(databaseModel.resetUserPassword(Mockito.eq(1), Mockito.notNull(UserPassword.class))).thenReturn(ResultCode.OK);
 
 		ResultCode result = userManager.resetPassword("john@example.com", token.getKey(), "new_password");
 		Assert.assertEquals(ResultCode.NO_VALID_PASSWORD_RESET_TOKEN, result);
 
-		Mockito.verify(databaseModel, Mockito.never()).setUserPassword(Mockito.eq(1), Mockito.any(UserPassword.class));
+		Mockito.verify(databaseModel, Mockito.never()).resetUserPassword(Mockito.eq(1), Mockito.any(UserPassword.class));
 	}
 
 	@Test
 	public void testResetPasswordWrongTokenKey() {
 		PasswordResetToken token = new PasswordResetToken(1, "a4d21f702e44af5d0ce7228dae878672", new Date());
 		Mockito.when(databaseModel.getNewestPasswordResetToken("john@example.com")).thenReturn(token);
-		Mockito.when(databaseModel.getUserIdByEmail("john@example.com")).thenReturn(1);
-		Mockito.when(databaseModel.setUserPassword(Mockito.eq(1), Mockito.notNull(UserPassword.class))).thenReturn(true);
+		Mockito.when(databaseModel.resetUserPassword(Mockito.eq(1), Mockito.notNull(UserPassword.class))).thenReturn(ResultCode.OK);
 
 		ResultCode result = userManager.resetPassword("john@example.com", "4ea15b4ed08e48a6d766e976a4387fd2", "new_password");
 		Assert.assertEquals(ResultCode.NO_VALID_PASSWORD_RESET_TOKEN, result);
 
-		Mockito.verify(databaseModel, Mockito.never()).setUserPassword(Mockito.eq(1), Mockito.any(UserPassword.class));
+		Mockito.verify(databaseModel, Mockito.never()).resetUserPassword(Mockito.eq(1), Mockito.any(UserPassword.class));
 	}
 
 	@Test
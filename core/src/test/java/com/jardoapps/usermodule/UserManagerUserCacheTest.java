@@ -0,0 +1,68 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.jardoapps.usermodule.containers.UserPassword;
+
+/**
+ * Tests {@link UserManager} on top of a {@link UserDatabaseModelCached}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class UserManagerUserCacheTest {
+
+	// password = 'password'
+	private static final UserPassword STORED_PASSWORD = new UserPassword("C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD",
+			"7886788CB39BF33C856EF18206A81CE4B498DC5A1A4199ABC0CB0FB686EAB008");
+
+	private final UserDatabaseModel delegate = Mockito.mock(UserDatabaseModel.class);
+
+	@Spy
+	private UserManagementProperties properties = new UserManagementPropertiesImpl();
+
+	@Spy
+	private UserDatabaseModel databaseModel = new UserDatabaseModelCached(delegate, new UserManagementPropertiesImpl());
+
+	@Mock
+	private SessionModel sessionModel;
+
+	@InjectMocks
+	private UserManager userManager;
+
+	@Test
+	public void testRepeatedLogIn() {
+		User user = new User(1, "john", "john@example.com", null, true, STORED_PASSWORD, UserRanks.NORMAL_USER);
+		Mockito.when(delegate.getUserForLogIn("john@example.com", true)).thenReturn(user);
+
+		Assert.assertEquals(ResultCode.OK, userManager.logIn("john@example.com", "password", "127.0.0.1"));
+		Assert.assertEquals(ResultCode.OK, userManager.logIn("john@example.com", "password", "127.0.0.1"));
+
+		Mockito.verify(delegate, Mockito.times(1)).getUserForLogIn("john@example.com", true);
+		Mockito.verify(delegate, Mockito.times(2)).makeLogInRecord(1, true, "127.0.0.1");
+	}
+
+}
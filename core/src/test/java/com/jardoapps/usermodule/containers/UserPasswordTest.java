@@ -0,0 +1,99 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.jardoapps.usermodule.containers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UserPasswordTest {
+
+	private static void assertBinaryForm(String hash, String salt, int binaryHashLength) {
+		UserPassword password = new UserPassword(hash, salt);
+		Assert.assertEquals(true, password.isBinaryFormSupported());
+		Assert.assertEquals(binaryHashLength, password.getBinaryHash().length);
+
+		UserPassword restored = new UserPassword(password.getBinaryHash(), password.getBinarySalt());
+		Assert.assertEquals(hash, restored.getHash());
+		Assert.assertEquals(salt, restored.getSalt());
+	}
+
+	@Test
+	public void testBinaryForm() {
+		String salt = "7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008";
+
+		assertBinaryForm("c0794dcf71360c8a6302c49b3228cbcffc8cd07bbc55250eac7d2c599b9ae2bd", salt, 33);
+		assertBinaryForm("C0794DCF71360C8A6302C49B3228CBCFFC8CD07BBC55250EAC7D2C599B9AE2BD", salt.toUpperCase(), 33);
+		assertBinaryForm("pbkdf2-sha256$1000$c0794dcf71360c8a6302c49b3228cbcffc8cd07bbc55250eac7d2c599b9ae2bd", salt, 52);
+		assertBinaryForm("0123456789", salt, 6);
+		assertBinaryForm("", salt, 1);
+	}
+
+	@Test
+	public void testNoBinaryForm() {
+		String salt = "7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008";
+
+		Assert.assertEquals(false, new UserPassword("C0794dcf", salt).isBinaryFormSupported());
+		Assert.assertEquals(false, new UserPassword("c0794dc", salt).isBinaryFormSupported());
+		Assert.assertEquals(false, new UserPassword("c0794dcg", salt).isBinaryFormSupported());
+		Assert.assertEquals(false, new UserPassword("\u00e1$c0794dcf", salt).isBinaryFormSupported());
+		Assert.assertEquals(false, new UserPassword("c0794dcf", "salt").isBinaryFormSupported());
+		Assert.assertEquals(false, new UserPassword(null, salt).isBinaryFormSupported());
+	}
+
+	@Test
+	public void testSharedConversion() throws Exception {
+		final String hash = "pbkdf2-sha256$1000$c0794dcf71360c8a6302c49b3228cbcffc8cd07bbc55250eac7d2c599b9ae2bd";
+		final byte[] binaryHash = new UserPassword(hash, "").getBinaryHash();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int round = 0; round < 100; round++) {
+				// every thread converts the same instance, in both directions
+				final UserPassword fromText = new UserPassword(hash, "");
+				final UserPassword fromBinary = new UserPassword(binaryHash, new byte[] { 0 });
+
+				List<Future<Boolean>> results = new ArrayList<>();
+				for (int i = 0; i < 4; i++) {
+					results.add(executor.submit(new Callable<Boolean>() {
+						@Override
+						public Boolean call() {
+							return Arrays.equals(binaryHash, fromText.getBinaryHash()) && hash.equals(fromBinary.getHash());
+						}
+					}));
+				}
+				for (Future<Boolean> result : results) {
+					Assert.assertEquals(true, result.get());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchingWorkerTest {
+
+	private static class CountingWorker extends BatchingWorker<Integer> {
+
+		private final AtomicInteger processedCount = new AtomicInteger();
+
+		CountingWorker() {
+			super("test-worker", 100, 10, 1);
+		}
+
+		@Override
+		protected void processBatch(List<Integer> batch) {
+			processedCount.addAndGet(batch.size());
+		}
+	}
+
+	@Test
+	public void testProcessing() throws InterruptedException {
+		CountingWorker worker = new CountingWorker();
+		for (int i = 0; i < 50; i++) {
+			Assert.assertEquals(true, worker.offer(i));
+		}
+		worker.shutdown(5000);
+
+		Assert.assertEquals(50, worker.processedCount.get());
+		Assert.assertEquals(false, worker.offer(50));
+		Assert.assertEquals(0, worker.getQueueDepth());
+	}
+
+	@Test
+	public void testOfferDuringShutdown() throws InterruptedException {
+		for (int round = 0; round < 20; round++) {
+			final CountingWorker worker = new CountingWorker();
+			final AtomicInteger acceptedCount = new AtomicInteger();
+			final CountDownLatch started = new CountDownLatch(2);
+
+			Thread[] producers = new Thread[2];
+			for (int p = 0; p < producers.length; p++) {
+				producers[p] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						started.countDown();
+						for (int i = 0; i < 1000; i++) {
+							if (worker.offer(i)) {
+								acceptedCount.incrementAndGet();
+							}
+						}
+					}
+				});
+				producers[p].start();
+			}
+			started.await();
+
+			worker.shutdown(5000);
+			for (Thread producer : producers) {
+				producer.join();
+			}
+
+			// every accepted item is processed, none is left behind in the queue
+			Assert.assertEquals(acceptedCount.get(), worker.processedCount.get());
+			Assert.assertEquals(0, worker.getQueueDepth());
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+	@Test
+	public void testSize() {
+		BloomFilter filter = new BloomFilter(1000000, 0.01);
+		Assert.assertEquals(9585088, filter.getBitCount());
+		Assert.assertEquals(7, filter.getHashCount());
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		int size = 100000;
+		BloomFilter filter = new BloomFilter(size, 0.01);
+		for (int i = 0; i < size; i++) {
+			filter.put("user" + i + "@test.com");
+		}
+
+		for (int i = 0; i < size; i++) {
+			Assert.assertTrue(filter.mightContain("user" + i + "@test.com"));
+		}
+
+		int falsePositives = 0;
+		for (int i = size; i < 2 * size; i++) {
+			if (filter.mightContain("user" + i + "@test.com")) {
+				falsePositives++;
+			}
+		}
+		Assert.assertTrue("False positives: " + falsePositives, falsePositives < size * 0.015);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidFalsePositiveRate() {
+		new BloomFilter(1000, 1);
+	}
+
+}
@@ -19,6 +19,10 @@
 package com.jardoapps.usermodule.utils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.regex.Pattern;
 
 import org.junit.Test;
 
@@ -45,4 +49,52 @@ public class EmailUtilsTest {
 		assertEquals(true, EmailUtils.isEmailValid("valid1.user2@example3.co.uk"));
 	}
 
+	private static final Pattern EMAIL_PATTERN = Pattern.compile(EmailUtils.EMAIL_REGEX);
+
+	private static final char[] ALPHABET = { 'a', 'Z', '0', '-', '_', '.', '@' };
+
+	private static final char[] RANDOM_ALPHABET = { 'a', 'b', 'Z', '0', '9', '-', '_', '.', '.', '@', '@', '+', ' ', '\u00e9', '\n' };
+
+	private static int assertSameAsRegex(String email) {
+		boolean expected = EMAIL_PATTERN.matcher(email).matches();
+		assertEquals(email, expected, EmailUtils.isEmailValid(email));
+		return expected ? 1 : 0;
+	}
+
+	@Test
+	public void testIsEmailValidSameAsRegex() {
+		int validCount = 0;
+
+		// all strings up to 6 characters from a small alphabet
+		char[] chars = new char[6];
+		for (int length = 0; length <= chars.length; ++length) {
+			int combinations = (int) Math.pow(ALPHABET.length, length);
+			for (int combination = 0; combination < combinations; ++combination) {
+				int value = combination;
+				for (int idx = 0; idx < length; ++idx) {
+					chars[idx] = ALPHABET[value % ALPHABET.length];
+					value /= ALPHABET.length;
+				}
+				validCount += assertSameAsRegex(new String(chars, 0, length));
+			}
+		}
+
+		// longer random strings and mutations of a valid address
+		Random random = new Random(42);
+		for (int count = 0; count < 100000; ++count) {
+			char[] randomChars = new char[random.nextInt(20)];
+			for (int idx = 0; idx < randomChars.length; ++idx) {
+				randomChars[idx] = RANDOM_ALPHABET[random.nextInt(RANDOM_ALPHABET.length)];
+			}
+			validCount += assertSameAsRegex(new String(randomChars));
+
+			StringBuilder mutated = new StringBuilder("valid.user-1@sub-domain.example2.co.uk");
+			mutated.setCharAt(random.nextInt(mutated.length()), RANDOM_ALPHABET[random.nextInt(RANDOM_ALPHABET.length)]);
+			validCount += assertSameAsRegex(mutated.toString());
+		}
+
+		// make sure the corpus isn't trivial
+		assertTrue(validCount > 1000);
+	}
+
 }
@@ -0,0 +1,137 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrefixIndexTest {
+
+	private static List<String> expectedPrefixResult(TreeSet<String> expected, String prefix, int maxResults) {
+		List<String> result = new ArrayList<String>();
+		for (String value : expected.tailSet(prefix)) {
+			if (!value.startsWith(prefix) || result.size() == maxResults) {
+				break;
+			}
+			result.add(value);
+		}
+		return result;
+	}
+
+	@Test
+	public void testLookUps() {
+		PrefixIndex index = new PrefixIndex.Builder().add("john").add("johnny").add("mike").add("jo").add("john").add("žofie").add("zoe")
+				.build();
+
+		Assert.assertEquals(6, index.size());
+		Assert.assertEquals(true, index.contains("john"));
+		Assert.assertEquals(true, index.contains("jo"));
+		Assert.assertEquals(false, index.contains("j"));
+		Assert.assertEquals(false, index.contains("John"));
+		Assert.assertEquals(false, index.contains("johnn"));
+		Assert.assertEquals(false, index.contains("zzz"));
+
+		Assert.assertEquals(Arrays.asList("jo", "john", "johnny"), index.findByPrefix("jo", 10));
+		Assert.assertEquals(Arrays.asList("jo", "john"), index.findByPrefix("jo", 2));
+		Assert.assertEquals(Arrays.asList("john", "johnny"), index.findByPrefix("john", 10));
+		Assert.assertEquals(Collections.emptyList(), index.findByPrefix("b", 10));
+		// code point order
+		Assert.assertEquals(Arrays.asList("jo", "john", "johnny", "mike", "zoe", "žofie"), index.findByPrefix("", 10));
+
+		index.remove("john");
+		index.add("joe");
+		index.add("mike");
+		Assert.assertEquals(false, index.contains("john"));
+		Assert.assertEquals(true, index.contains("joe"));
+		Assert.assertEquals(Arrays.asList("jo", "joe", "johnny"), index.findByPrefix("jo", 10));
+		Assert.assertEquals(6, index.size());
+
+		index.add("john");
+		Assert.assertEquals(Arrays.asList("jo", "joe", "john", "johnny"), index.findByPrefix("jo", 10));
+	}
+
+	@Test
+	public void testEmptyIndex() {
+		PrefixIndex index = new PrefixIndex();
+		Assert.assertEquals(false, index.contains(""));
+		Assert.assertEquals(Collections.emptyList(), index.findByPrefix("", 10));
+
+		index.add("anna");
+		Assert.assertEquals(Arrays.asList("anna"), index.findByPrefix("", 10));
+	}
+
+	/**
+	 * Compares the index with a tree set through random updates and several
+	 * compactions.
+	 */
+	@Test
+	public void testRandomUpdates() {
+		Random random = new Random(42);
+		String[] alphabet = { "a", "b", "c", "á", "š", "😀" };
+
+		TreeSet<String> expected = new TreeSet<String>(PrefixIndex.CODE_POINT_ORDER);
+		PrefixIndex.Builder builder = new PrefixIndex.Builder();
+		for (int i = 0; i < 20000; i++) {
+			String value = randomString(random, alphabet);
+			expected.add(value);
+			builder.add(value);
+		}
+		PrefixIndex index = builder.build();
+
+		for (int i = 0; i < 50000; i++) {
+			String value = randomString(random, alphabet);
+			if (random.nextBoolean()) {
+				expected.add(value);
+				index.add(value);
+			} else {
+				expected.remove(value);
+				index.remove(value);
+			}
+
+			if (i % 100 == 0) {
+				int prefixLength = Math.min(value.codePointCount(0, value.length()), random.nextInt(4));
+				String prefix = value.substring(0, value.offsetByCodePoints(0, prefixLength));
+				Assert.assertEquals(expectedPrefixResult(expected, prefix, 20), index.findByPrefix(prefix, 20));
+				Assert.assertEquals(expected.size(), index.size());
+			}
+		}
+
+		for (String value : expected) {
+			Assert.assertEquals(true, index.contains(value));
+		}
+		Assert.assertEquals(new ArrayList<String>(expected), index.findByPrefix("", Integer.MAX_VALUE));
+	}
+
+	private static String randomString(Random random, String[] alphabet) {
+		StringBuilder result = new StringBuilder();
+		int length = 1 + random.nextInt(8);
+		for (int i = 0; i < length; i++) {
+			result.append(alphabet[random.nextInt(alphabet.length)]);
+		}
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.jardoapps.usermodule.utils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SecureTokenGeneratorTest {
+
+	@Test
+	public void testStripeCount() {
+		Assert.assertEquals(1, new SecureTokenGenerator(1, 64).getStripeCount());
+		Assert.assertEquals(4, new SecureTokenGenerator(3, 64).getStripeCount());
+		Assert.assertEquals(16, new SecureTokenGenerator(16, 64).getStripeCount());
+	}
+
+	@Test
+	public void testGenerateToken() {
+		SecureTokenGenerator generator = new SecureTokenGenerator(2, 64);
+
+		Set<String> tokens = new HashSet<String>();
+		for (int idx = 0; idx < 1000; ++idx) {
+			String token = generator.generateToken(16);
+			Assert.assertTrue(token.matches("[0-9a-f]{32}"));
+			Assert.assertTrue(tokens.add(token));
+		}
+
+		// longer than the buffer
+		Assert.assertEquals(200, generator.generateToken(100).length());
+	}
+
+	@Test
+	public void testGenerateTokenConcurrently() throws InterruptedException {
+		final SecureTokenGenerator generator = new SecureTokenGenerator(2, 64);
+		final Set<String> tokens = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final CountDownLatch finished = new CountDownLatch(8);
+
+		for (int thread = 0; thread < 8; ++thread) {
+			new Thread() {
+				@Override
+				public void run() {
+					for (int idx = 0; idx < 1000; ++idx) {
+						tokens.add(generator.generateToken(16));
+					}
+					finished.countDown();
+				}
+			}.start();
+		}
+
+		finished.await();
+		Assert.assertEquals(8000, tokens.size());
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.jardoapps.usermodule.jpa;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs callbacks once the current transaction is committed, e.g. to update
+ * in-memory structures only with data which really made it to the database.
+ * Transactions managed by Spring and JTA transactions (found through the
+ * standard JNDI name <code>java:comp/TransactionSynchronizationRegistry</code>)
+ * are recognized, neither of them is required on the class path. Without an
+ * active transaction, the callback is run immediately.
+ * 
+ * @since 0.2.0
+ */
+final class AfterCommitCallbacks {
+
+	private static final boolean SPRING_PRESENT = isClassPresent("org.springframework.transaction.support.TransactionSynchronizationManager");
+
+	private static final boolean JTA_PRESENT = isClassPresent("javax.transaction.TransactionSynchronizationRegistry");
+
+	private AfterCommitCallbacks() {
+	}
+
+	private static boolean isClassPresent(String className) {
+		try {
+			Class.forName(className, false, AfterCommitCallbacks.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Runs the callback after the current transaction commits, or right away
+	 * if there is no transaction. The callback is dropped if the transaction
+	 * is rolled back.
+	 */
+	static void run(Runnable callback) {
+		if (SPRING_PRESENT && SpringTransactions.registerAfterCommit(callback)) {
+			return;
+		}
+		if (JTA_PRESENT && JtaTransactions.registerAfterCommit(callback)) {
+			return;
+		}
+		callback.run();
+	}
+
+	/**
+	 * Loaded only when Spring is on the class path.
+	 */
+	private static final class SpringTransactions {
+
+		static boolean registerAfterCommit(final Runnable callback) {
+			if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+				return false;
+			}
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					callback.run();
+				}
+			});
+			return true;
+		}
+	}
+
+	/**
+	 * Loaded only when the JTA API is on the class path.
+	 */
+	private static final class JtaTransactions {
+
+		private static final String REGISTRY_NAME = "java:comp/TransactionSynchronizationRegistry";
+
+		static boolean registerAfterCommit(final Runnable callback) {
+			TransactionSynchronizationRegistry registry = lookUpRegistry();
+			if (registry == null || registry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+				return false;
+			}
+			registry.registerInterposedSynchronization(new Synchronization() {
+
+				@Override
+				public void beforeCompletion() {
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					if (status == Status.STATUS_COMMITTED) {
+						callback.run();
+					}
+				}
+			});
+			return true;
+		}
+
+		private static TransactionSynchronizationRegistry lookUpRegistry() {
+			try {
+				return (TransactionSynchronizationRegistry) new InitialContext().lookup(REGISTRY_NAME);
+			} catch (NamingException e) {
+				// not running in a container
+				return null;
+			}
+		}
+	}
+
+}
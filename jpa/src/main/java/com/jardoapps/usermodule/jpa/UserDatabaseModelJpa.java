@@ -18,22 +18,44 @@
 
 package com.jardoapps.usermodule.jpa;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 
+import com.jardoapps.usermodule.ResultCode;
 import com.jardoapps.usermodule.User;
 import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserExportSink;
+import com.jardoapps.usermodule.containers.LogInRecord;
 import com.jardoapps.usermodule.containers.PasswordResetToken;
+import com.jardoapps.usermodule.containers.PasswordUpgrade;
+import com.jardoapps.usermodule.containers.UserListFilter;
+import com.jardoapps.usermodule.containers.UserPage;
 import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.defines.UserListOrder;
 import com.jardoapps.usermodule.jpa.dao.LogInRecordEntityDao;
 import com.jardoapps.usermodule.jpa.dao.PasswordResetTokenEntityDao;
 import com.jardoapps.usermodule.jpa.dao.UserEntityDao;
 import com.jardoapps.usermodule.jpa.entities.LogInRecordEntity;
 import com.jardoapps.usermodule.jpa.entities.PasswordResetTokenEntity;
 import com.jardoapps.usermodule.jpa.entities.UserEntity;
+import com.jardoapps.usermodule.utils.BloomFilter;
+import com.jardoapps.usermodule.utils.PrefixIndex;
 
 /**
  * A Hibernate implementation of the user database model. It uses internal entity 
@@ -59,6 +81,10 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final int USER_LOAD_BATCH_SIZE = 10000;
+
+	private static final int USER_EXPORT_BATCH_SIZE = 10000;
+
 	@Inject
 	private UserEntityDao userEntityDao;
 
@@ -68,6 +94,86 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 	@Inject
 	private LogInRecordEntityDao logInRecordEntityDao;
 
+	@Inject
+	private UserDatabaseModelJpaProperties properties = new UserDatabaseModelJpaPropertiesImpl();
+
+	/**
+	 * Ids of users who may have valid password reset tokens, see
+	 * {@link UserDatabaseModelJpaProperties#isPasswordResetTokenTrackingEnabled()}.
+	 * Loaded by {@link #start()}, or on first use.
+	 */
+	private transient volatile Set<Integer> passwordResetTokenUsers;
+
+	/**
+	 * Emails and names of registered users, see
+	 * {@link UserDatabaseModelJpaProperties#isRegisteredUserFilterEnabled()}.
+	 * Loaded by {@link #start()}, or on first use.
+	 */
+	private transient volatile RegisteredUserFilter registeredUserFilter;
+
+	/**
+	 * Names of registered users, see
+	 * {@link UserDatabaseModelJpaProperties#isUserNameIndexEnabled()}. Loaded
+	 * by {@link #start()}, or on first use.
+	 */
+	private transient volatile PrefixIndex userNameIndex;
+
+	// each structure is loaded under its own lock, so a slow load doesn't
+	// block the others
+	private transient Object passwordResetTokenUsersLock = new Object();
+
+	private transient Object registeredUserFilterLock = new Object();
+
+	private transient Object userNameIndexLock = new Object();
+
+	private static class RegisteredUserFilter {
+
+		private final BloomFilter emails;
+
+		private final BloomFilter names;
+
+		/**
+		 * The keys are normalized, so that the filter never rules out an email
+		 * or name which a case insensitive database would find.
+		 */
+		private static String normalize(String key) {
+			return key.trim().toLowerCase(Locale.ENGLISH);
+		}
+
+		public void add(String email, String name) {
+			if (email != null) {
+				emails.put(normalize(email));
+			}
+			if (name != null) {
+				names.put(normalize(name));
+			}
+		}
+
+		public boolean mightContainEmail(String email) {
+			return email == null || emails.mightContain(normalize(email));
+		}
+
+		public boolean mightContainName(String name) {
+			return name == null || names.mightContain(normalize(name));
+		}
+
+		public RegisteredUserFilter(int expectedSize, double falsePositiveRate) {
+			this.emails = new BloomFilter(expectedSize, falsePositiveRate);
+			this.names = new BloomFilter(expectedSize, falsePositiveRate);
+		}
+	}
+
+	private static LogInRecordEntity createLogInRecordEntity(int userId, boolean logInSuccessfull, String usersIp, Date time) {
+
+		LogInRecordEntity logInRecordEntity = new LogInRecordEntity();
+		logInRecordEntity.setUserId(userId);
+		logInRecordEntity.setTime(time);
+		logInRecordEntity.setIp(usersIp);
+		logInRecordEntity.setSuccessful(logInSuccessfull);
+
+		return logInRecordEntity;
+	}
+
 	@Transactional
 	public boolean addPasswordResetToken(PasswordResetToken token) {
 		PasswordResetTokenEntity tokenEntity = new PasswordResetTokenEntity(token);
@@ -75,23 +181,143 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 
 		passwordResetTokenEntityDao.add(tokenEntity);
 
+		if (properties.isPasswordResetTokenTrackingEnabled()) {
+			getPasswordResetTokenUsers().add(token.getUserId());
+		}
+
 		return true;
 	}
 
-	@Transactional
+	/**
+	 * The user is inserted in its own transaction (unless the caller has one),
+	 * so that duplicate emails and names refused by unique constraints (see
+	 * sql/usermodule-indexes.sql) are reported as
+	 * {@link UserDatabaseModel#ADD_USER_NAME_ALREADY_REGISTERED} or
+	 * {@link UserDatabaseModel#ADD_USER_EMAIL_ALREADY_REGISTERED}. The taken
+	 * value is then looked up in a new transaction. The caller's transaction,
+	 * if any, is marked for rollback by the failed insert and can only be
+	 * rolled back afterwards. The user is added to the registered user filter
+	 * and the user name index only when the insert is committed.
+	 */
 	public int addUser(User newUser) {
+		UserEntity userEntity = createUserEntity(newUser, new Date());
+
+		try {
+			userEntityDao.addAndFlush(userEntity);
+		} catch (RuntimeException e) {
+			if (!isIntegrityConstraintViolation(e)) {
+				throw e;
+			}
+			// only the failed registrations pay for finding out which value is taken
+			ResultCode conflict = userEntityDao.checkRegistrationAvailabilityInNewTransaction(newUser.getEmail(), newUser.getName());
+			if (conflict == ResultCode.USER_NAME_ALREADY_REGISTERED) {
+				return ADD_USER_NAME_ALREADY_REGISTERED;
+			}
+			if (conflict == ResultCode.EMAIL_ALREADY_REGISTERED) {
+				return ADD_USER_EMAIL_ALREADY_REGISTERED;
+			}
+			throw e;
+		}
+
+		rememberRegisteredUsersAfterCommit(Collections.singletonList(newUser));
+		return userEntity.getId();
+	}
+
+	/**
+	 * Inserts all users in a single transaction. Set Hibernate property
+	 * <code>hibernate.jdbc.batch_size</code> to let Hibernate send the
+	 * inserts as JDBC batches, the ids are allocated from the pooled sequence
+	 * without a round trip per user. The users are added to the registered
+	 * user filter and the user name index only when the transaction is
+	 * committed.
+	 */
+	@Transactional
+	public boolean addUsers(List<User> newUsers) {
+		Date registrationDate = new Date();
+		for (User newUser : newUsers) {
+			userEntityDao.add(createUserEntity(newUser, registrationDate));
+		}
+		rememberRegisteredUsersAfterCommit(new ArrayList<>(newUsers));
+		return true;
+	}
+
+	private UserEntity createUserEntity(User newUser, Date registrationDate) {
 		UserEntity userEntity = new UserEntity();
 		userEntity.copyUser(newUser);
-		userEntity.setRegistrationDate(new Date());
+		// new users come with id -1 (see UserManager), the id is generated
+		userEntity.setId(0);
+		userEntity.setPassword(newUser.getPassword(), properties.isBinaryPasswordStorageEnabled());
+		userEntity.setRegistrationDate(registrationDate);
+		return userEntity;
+	}
 
-		userEntityDao.add(userEntity);
+	/**
+	 * Adds the new users to the registered user filter and the user name
+	 * index, if they are enabled, once the current transaction commits. The
+	 * index is the only source of truth for the registered names, so a name
+	 * whose insert fails or is rolled back must not get there.
+	 */
+	private void rememberRegisteredUsersAfterCommit(final List<User> newUsers) {
+		if (!properties.isRegisteredUserFilterEnabled() && !properties.isUserNameIndexEnabled()) {
+			return;
+		}
+		AfterCommitCallbacks.run(new Runnable() {
+
+			@Override
+			public void run() {
+				for (User newUser : newUsers) {
+					rememberRegisteredUser(newUser);
+				}
+			}
+		});
+	}
 
-		return userEntity.getId();
+	private void rememberRegisteredUser(User newUser) {
+		if (properties.isRegisteredUserFilterEnabled()) {
+			getRegisteredUserFilter().add(newUser.getEmail(), newUser.getName());
+		}
+		if (properties.isUserNameIndexEnabled() && newUser.getName() != null) {
+			getUserNameIndex().add(newUser.getName());
+		}
 	}
 
-	@Transactional
+	/**
+	 * Returns true if the exception was caused by a violated constraint, which
+	 * SQL reports by SQL state class 23.
+	 */
+	private static boolean isIntegrityConstraintViolation(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException) {
+				String sqlState = ((SQLException) cause).getSQLState();
+				return sqlState != null && sqlState.startsWith("23");
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * When {@link UserDatabaseModelJpaProperties#isPasswordResetTokenTrackingEnabled()
+	 * password reset token tracking} is enabled, the tokens are updated (and a
+	 * transaction is started) only if the user has any valid tokens.
+	 */
 	public boolean cancelAllPasswordResetTokens(int userId) {
-		passwordResetTokenEntityDao.cancelTokensForUser(userId);
+		if (!properties.isPasswordResetTokenTrackingEnabled()) {
+			passwordResetTokenEntityDao.cancelTokensForUser(userId);
+			return true;
+		}
+
+		// removed before the update, so that a token added concurrently isn't forgotten
+		Set<Integer> users = getPasswordResetTokenUsers();
+		if (!users.remove(userId)) {
+			return true;
+		}
+
+		try {
+			passwordResetTokenEntityDao.cancelTokensForUser(userId);
+		} catch (RuntimeException e) {
+			users.add(userId);
+			throw e;
+		}
 		return true;
 	}
 
@@ -100,9 +326,155 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 		return userEntityDao.confirmRegistration(email);
 	}
 
+	@Transactional
+	public boolean confirmUserRegistrationAndSetPassword(int userId, UserPassword password) {
+		return userEntityDao.confirmRegistrationAndSetPassword(userId, password, properties.isBinaryPasswordStorageEnabled());
+	}
+
+	/**
+	 * Converts stored passwords into the format selected by
+	 * {@link UserDatabaseModelJpaProperties#isBinaryPasswordStorageEnabled()}.
+	 * Users are processed in batches ordered by their ids, call this method
+	 * repeatedly until it returns zero:
+	 * 
+	 * <pre>
+	 * int lastUserId = 0;
+	 * while ((lastUserId = databaseModel.convertUserPasswords(lastUserId, 1000)) &gt; 0);
+	 * </pre>
+	 * 
+	 * Passwords which have no binary form are left in the text columns.
+	 * 
+	 * @param afterUserId
+	 *            only users with greater ids are processed
+	 * @param batchSize
+	 *            maximal number of users processed by this call
+	 * @return Id of the last processed user, or zero if there are no more
+	 *         users to convert.
+	 * @since 0.2.0
+	 */
+	@Transactional
+	public int convertUserPasswords(int afterUserId, int batchSize) {
+		boolean binary = properties.isBinaryPasswordStorageEnabled();
+		List<UserEntity> users = userEntityDao.findUsersToConvertPassword(afterUserId, batchSize, binary);
+
+		int lastUserId = 0;
+		for (UserEntity user : users) {
+			user.setPassword(user.getPassword(), binary);
+			lastUserId = user.getId();
+		}
+		return lastUserId;
+	}
+
 	@Transactional
 	public boolean deleteUser(int userId) {
-		return userEntityDao.deleteUserEntity(userId);
+		if (!properties.isUserNameIndexEnabled()) {
+			return userEntityDao.deleteUserEntity(userId);
+		}
+
+		final String name = userEntityDao.getUserName(userId);
+		boolean deleted = userEntityDao.deleteUserEntity(userId);
+		if (deleted && name != null) {
+			// the index is the only source of registered names, so the name
+			// must stay taken until the deletion is really committed
+			AfterCommitCallbacks.run(new Runnable() {
+
+				@Override
+				public void run() {
+					getUserNameIndex().remove(name);
+				}
+			});
+		}
+		return deleted;
+	}
+
+	/**
+	 * Reads the users in batches ordered by their ids, each batch is found
+	 * by an index seek on the primary key (keyset pagination), so every batch
+	 * takes about the same time regardless of how many users have been
+	 * exported before. Only the exported columns are loaded, without creating
+	 * managed entities, and every batch is a separate query, so a long export
+	 * doesn't hold a transaction open.
+	 */
+	public int exportUsers(UserExportSink sink) throws IOException {
+		int exportedCount = 0;
+		int lastUserId = 0;
+		List<Object[]> users;
+		do {
+			users = userEntityDao.findUsersToExport(lastUserId, USER_EXPORT_BATCH_SIZE);
+			for (Object[] user : users) {
+				lastUserId = (Integer) user[0];
+				sink.write(new User(lastUserId, (String) user[2], (String) user[1], null, (Boolean) user[3], null, (Integer) user[4]));
+			}
+			exportedCount += users.size();
+		} while (users.size() == USER_EXPORT_BATCH_SIZE);
+
+		return exportedCount;
+	}
+
+	public Set<String> findRegisteredEmails(Collection<String> emails) {
+		if (properties.isRegisteredUserFilterEnabled()) {
+			RegisteredUserFilter filter = getRegisteredUserFilter();
+			List<String> candidates = new ArrayList<>();
+			for (String email : emails) {
+				if (filter.mightContainEmail(email)) {
+					candidates.add(email);
+				}
+			}
+			emails = candidates;
+		}
+		if (emails.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return userEntityDao.findRegisteredEmails(emails);
+	}
+
+	public Set<String> findRegisteredUserNames(Collection<String> names) {
+		if (properties.isUserNameIndexEnabled()) {
+			PrefixIndex index = getUserNameIndex();
+			Set<String> result = new HashSet<>();
+			for (String name : names) {
+				if (index.contains(name)) {
+					result.add(name);
+				}
+			}
+			return result;
+		}
+		if (properties.isRegisteredUserFilterEnabled()) {
+			RegisteredUserFilter filter = getRegisteredUserFilter();
+			List<String> candidates = new ArrayList<>();
+			for (String name : names) {
+				if (filter.mightContainName(name)) {
+					candidates.add(name);
+				}
+			}
+			names = candidates;
+		}
+		if (names.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return userEntityDao.findRegisteredNames(names);
+	}
+
+	/**
+	 * Returns names of registered users which start with the specified
+	 * prefix, e.g. to suggest a free name when the requested one is taken.
+	 * When the {@link UserDatabaseModelJpaProperties#isUserNameIndexEnabled()
+	 * user name index} is enabled, the names are found in memory, compared
+	 * case sensitively and ordered by their Unicode code points. Otherwise
+	 * the database is queried and its collation applies.
+	 * 
+	 * @param prefix
+	 *            prefix of the returned names
+	 * @param maxResults
+	 *            maximal number of returned names
+	 * @return Matching names, or an empty list if there are none.
+	 * @since 0.2.0
+	 */
+	public List<String> findUserNamesByPrefix(String prefix, int maxResults) {
+		if (properties.isUserNameIndexEnabled()) {
+			return getUserNameIndex().findByPrefix(prefix, maxResults);
+		}
+		return userEntityDao.findNamesByPrefix(prefix, maxResults);
 	}
 
 	@Transactional
@@ -117,7 +489,7 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 			return null;
 		}
 
-		return new PasswordResetToken(tokenEntity.getUser().getId(), tokenEntity.getKey(), tokenEntity.getTime());
+		return new PasswordResetToken(tokenEntity.getUserId(), tokenEntity.getKey(), tokenEntity.getTime());
 	}
 
 	public User getUserByEmail(String email) {
@@ -140,6 +512,52 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 		return userEntity.toUser();
 	}
 
+	private Set<Integer> getPasswordResetTokenUsers() {
+		Set<Integer> users = passwordResetTokenUsers;
+		if (users == null) {
+			synchronized (passwordResetTokenUsersLock) {
+				users = passwordResetTokenUsers;
+				if (users == null) {
+					users = loadPasswordResetTokenUsers();
+					passwordResetTokenUsers = users;
+				}
+			}
+		}
+		return users;
+	}
+
+	private RegisteredUserFilter getRegisteredUserFilter() {
+		RegisteredUserFilter filter = registeredUserFilter;
+		if (filter == null) {
+			synchronized (registeredUserFilterLock) {
+				filter = registeredUserFilter;
+				if (filter == null) {
+					filter = loadRegisteredUserFilter();
+					registeredUserFilter = filter;
+				}
+			}
+		}
+		return filter;
+	}
+
+	public User getUserForLogIn(String userNameOrEmail, boolean email) {
+		return userEntityDao.getLogInUser(userNameOrEmail, email);
+	}
+
+	private PrefixIndex getUserNameIndex() {
+		PrefixIndex index = userNameIndex;
+		if (index == null) {
+			synchronized (userNameIndexLock) {
+				index = userNameIndex;
+				if (index == null) {
+					index = loadUserNameIndex();
+					userNameIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
 	public int getUserIdByEmail(String email) {
 		return userEntityDao.getUserIdByEmail(email);
 	}
@@ -149,33 +567,304 @@ public class UserDatabaseModelJpa implements UserDatabaseModel, Serializable {
 	}
 
 	public boolean isEmailRegistered(String email) {
+		if (properties.isRegisteredUserFilterEnabled() && !getRegisteredUserFilter().mightContainEmail(email)) {
+			return false;
+		}
 		return userEntityDao.isEmailRegistered(email);
 	}
 
 	public boolean isUserNameRegistered(String name) {
+		if (properties.isUserNameIndexEnabled()) {
+			return name != null && getUserNameIndex().contains(name);
+		}
+		if (properties.isRegisteredUserFilterEnabled() && !getRegisteredUserFilter().mightContainName(name)) {
+			return false;
+		}
 		return userEntityDao.isUserNameRegistered(name);
 	}
 
+	public ResultCode checkRegistrationAvailability(String email, String name) {
+		boolean checkName = name != null;
+		if (checkName && properties.isUserNameIndexEnabled()) {
+			if (getUserNameIndex().contains(name)) {
+				return ResultCode.USER_NAME_ALREADY_REGISTERED;
+			}
+			checkName = false;
+		}
+
+		boolean checkEmail = true;
+		if (properties.isRegisteredUserFilterEnabled()) {
+			RegisteredUserFilter filter = getRegisteredUserFilter();
+			checkName = checkName && filter.mightContainName(name);
+			checkEmail = filter.mightContainEmail(email);
+		}
+
+		if (checkName && checkEmail) {
+			return userEntityDao.checkRegistrationAvailability(email, name);
+		}
+		if (checkName && userEntityDao.isUserNameRegistered(name)) {
+			return ResultCode.USER_NAME_ALREADY_REGISTERED;
+		}
+		if (checkEmail && userEntityDao.isEmailRegistered(email)) {
+			return ResultCode.EMAIL_ALREADY_REGISTERED;
+		}
+		return ResultCode.OK;
+	}
+
+	/**
+	 * The page token is the position of the last listed user: its id,
+	 * prefixed by the first letter of the order, followed by its name or
+	 * registration date (milliseconds and nanoseconds) separated by colons.
+	 * The next page is found by a range scan of an index on the sort column
+	 * and id (the primary key, <code>um_user_name_idx</code> or
+	 * <code>um_user_reg_date_idx</code>), so loading it takes the same time
+	 * at any depth. Users of a rank can be listed by id using
+	 * <code>um_user_rank_idx</code>; when listed by name or registration date,
+	 * the index of the sort column is scanned and users of other ranks are
+	 * skipped, so the time depends on how many users have the rank, but not
+	 * on the depth.
+	 */
+	public UserPage listUsers(UserListFilter filter, UserListOrder order, String pageToken, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+		}
+
+		Integer afterUserId = null;
+		Object afterValue = null;
+		if (pageToken != null) {
+			String[] parts = pageToken.split(":", order == UserListOrder.NAME ? 2 : 3);
+			if (parts[0].isEmpty() || parts[0].charAt(0) != getPageTokenPrefix(order) || parts.length != getPageTokenPartCount(order)) {
+				throw new IllegalArgumentException("Invalid page token for order " + order + ": " + pageToken);
+			}
+			afterUserId = Integer.valueOf(parts[0].substring(1));
+			if (order == UserListOrder.NAME) {
+				afterValue = parts[1];
+			} else if (order == UserListOrder.REGISTRATION_DATE) {
+				Timestamp registrationDate = new Timestamp(Long.parseLong(parts[1]));
+				registrationDate.setNanos(Integer.parseInt(parts[2]));
+				afterValue = registrationDate;
+			}
+		}
+
+		List<Object[]> rows = userEntityDao.findUsersPage(filter, order, afterValue, afterUserId, pageSize + 1);
+
+		List<User> users = new ArrayList<>(Math.min(rows.size(), pageSize));
+		for (int i = 0; i < rows.size() && i < pageSize; i++) {
+			Object[] row = rows.get(i);
+			users.add(new User((Integer) row[0], (String) row[1], (String) row[2], null, (Boolean) row[3], null, (Integer) row[4]));
+		}
+
+		String nextPageToken = null;
+		if (rows.size() > pageSize) {
+			nextPageToken = createPageToken(order, rows.get(pageSize - 1));
+		}
+		return new UserPage(users, nextPageToken);
+	}
+
+	private static char getPageTokenPrefix(UserListOrder order) {
+		switch (order) {
+			case NAME:
+				return 'n';
+			case REGISTRATION_DATE:
+				return 'd';
+			default:
+				return 'i';
+		}
+	}
+
+	private static int getPageTokenPartCount(UserListOrder order) {
+		switch (order) {
+			case NAME:
+				return 2;
+			case REGISTRATION_DATE:
+				return 3;
+			default:
+				return 1;
+		}
+	}
+
+	private static String createPageToken(UserListOrder order, Object[] lastRow) {
+		StringBuilder token = new StringBuilder();
+		token.append(getPageTokenPrefix(order)).append(lastRow[0]);
+		if (order == UserListOrder.NAME) {
+			token.append(':').append(lastRow[1]);
+		} else if (order == UserListOrder.REGISTRATION_DATE) {
+			Date registrationDate = (Date) lastRow[5];
+			int nanos = registrationDate instanceof Timestamp ? ((Timestamp) registrationDate).getNanos() : (int) (registrationDate.getTime() % 1000) * 1000000;
+			token.append(':').append(registrationDate.getTime()).append(':').append(nanos);
+		}
+		return token.toString();
+	}
+
 	@Transactional
 	public boolean makeLogInRecord(int userId, boolean logInSuccessfull, String usersIp) {
+		logInRecordEntityDao.add(createLogInRecordEntity(userId, logInSuccessfull, usersIp, new Date()));
+		return true;
+	}
 
-		UserEntity user = new UserEntity();
-		user.setId(userId);
+	/**
+	 * Inserts all records in a single transaction. Set Hibernate property
+	 * <code>hibernate.jdbc.batch_size</code> to let Hibernate send the
+	 * inserts as JDBC batches.
+	 */
+	@Transactional
+	public boolean makeLogInRecords(List<LogInRecord> records) {
+		for (LogInRecord record : records) {
+			logInRecordEntityDao.add(createLogInRecordEntity(record.getUserId(), record.isSuccessful(), record.getIp(), record.getTime()));
+		}
+		return true;
+	}
 
-		LogInRecordEntity logInRecordEntity = new LogInRecordEntity();
-		logInRecordEntity.setUser(user);
-		logInRecordEntity.setTime(new Date());
-		logInRecordEntity.setIp(usersIp);
-		logInRecordEntity.setSuccessful(logInSuccessfull);
+	/**
+	 * Loads the ids of users with valid password reset tokens from the
+	 * database again, if the tracking is enabled. The previous ids are used
+	 * until the new ones are loaded. Call this method when password reset
+	 * tokens have been added into the database by someone else than this
+	 * instance.
+	 * 
+	 * @see UserDatabaseModelJpaProperties#isPasswordResetTokenTrackingEnabled()
+	 * @since 0.2.0
+	 */
+	public void reloadPasswordResetTokenUsers() {
+		synchronized (passwordResetTokenUsersLock) {
+			passwordResetTokenUsers = properties.isPasswordResetTokenTrackingEnabled() ? loadPasswordResetTokenUsers() : null;
+		}
+	}
 
-		logInRecordEntityDao.add(logInRecordEntity);
+	/**
+	 * Loads the registered user filter from the database again, if it is
+	 * enabled. The previous filter is used until the new one is loaded. Call
+	 * this method when users have been added into the database by someone
+	 * else than this instance. Deleted users stay in the filter until it is
+	 * reloaded, which only costs a database query when their email or name is
+	 * checked.
+	 * 
+	 * @see UserDatabaseModelJpaProperties#isRegisteredUserFilterEnabled()
+	 * @since 0.2.0
+	 */
+	public void reloadRegisteredUserFilter() {
+		synchronized (registeredUserFilterLock) {
+			registeredUserFilter = properties.isRegisteredUserFilterEnabled() ? loadRegisteredUserFilter() : null;
+		}
+	}
 
-		return true;
+	/**
+	 * Loads the user name index from the database again, if it is enabled.
+	 * The previous index is used until the new one is loaded. Call this
+	 * method when users have been added or deleted by someone else than this
+	 * instance.
+	 * 
+	 * @see UserDatabaseModelJpaProperties#isUserNameIndexEnabled()
+	 * @since 0.2.0
+	 */
+	public void reloadUserNameIndex() {
+		synchronized (userNameIndexLock) {
+			userNameIndex = properties.isUserNameIndexEnabled() ? loadUserNameIndex() : null;
+		}
+	}
+
+	/**
+	 * Loads the in-memory structures enabled by the properties (password reset
+	 * token tracking, registered user filter, user name index). Each of them
+	 * is loaded by a full scan of its table, which would otherwise run on the
+	 * first request which needs it and make it (and the concurrent requests
+	 * waiting for the same structure) slow. Called by the container after the
+	 * dependencies are injected. Without it, the structures are loaded on
+	 * first use.
+	 * 
+	 * @since 0.2.0
+	 */
+	@PostConstruct
+	public void start() {
+		if (properties.isPasswordResetTokenTrackingEnabled()) {
+			getPasswordResetTokenUsers();
+		}
+		if (properties.isRegisteredUserFilterEnabled()) {
+			getRegisteredUserFilter();
+		}
+		if (properties.isUserNameIndexEnabled()) {
+			getUserNameIndex();
+		}
+	}
+
+	private Set<Integer> loadPasswordResetTokenUsers() {
+		Set<Integer> users = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+		users.addAll(passwordResetTokenEntityDao.getUserIdsWithValidTokens());
+		return users;
+	}
+
+	private RegisteredUserFilter loadRegisteredUserFilter() {
+		RegisteredUserFilter filter = new RegisteredUserFilter(properties.getRegisteredUserFilterExpectedSize(), properties.getRegisteredUserFilterFalsePositiveRate());
+
+		int lastUserId = 0;
+		List<Object[]> users;
+		do {
+			users = userEntityDao.findEmailsAndNames(lastUserId, USER_LOAD_BATCH_SIZE);
+			for (Object[] user : users) {
+				lastUserId = (Integer) user[0];
+				filter.add((String) user[1], (String) user[2]);
+			}
+		} while (users.size() == USER_LOAD_BATCH_SIZE);
+
+		return filter;
+	}
+
+	private PrefixIndex loadUserNameIndex() {
+		PrefixIndex.Builder builder = new PrefixIndex.Builder();
+
+		int lastUserId = 0;
+		List<Object[]> users;
+		do {
+			users = userEntityDao.findEmailsAndNames(lastUserId, USER_LOAD_BATCH_SIZE);
+			for (Object[] user : users) {
+				lastUserId = (Integer) user[0];
+				if (user[2] != null) {
+					builder.add((String) user[2]);
+				}
+			}
+		} while (users.size() == USER_LOAD_BATCH_SIZE);
+
+		return builder.build();
+	}
+
+	private void createLocks() {
+		passwordResetTokenUsersLock = new Object();
+		registeredUserFilterLock = new Object();
+		userNameIndexLock = new Object();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		createLocks();
+	}
+
+	/**
+	 * The password is set and the tokens are canceled in the same
+	 * transaction. With {@link UserDatabaseModelJpaProperties#isPasswordResetTokenTrackingEnabled()
+	 * password reset token tracking}, the token update is skipped for users
+	 * without valid tokens.
+	 */
+	@Transactional
+	public ResultCode resetUserPassword(int userId, UserPassword password) {
+		if (!userEntityDao.resetUserPassword(userId, password, properties.isBinaryPasswordStorageEnabled())) {
+			return ResultCode.NO_SUCH_USER;
+		}
+		cancelAllPasswordResetTokens(userId);
+		return ResultCode.OK;
 	}
 
 	@Transactional
 	public boolean setUserPassword(int userId, UserPassword password) {
-		return userEntityDao.setUserPassword(userId, password);
+		return userEntityDao.setUserPassword(userId, password, properties.isBinaryPasswordStorageEnabled());
+	}
+
+	@Transactional
+	public boolean upgradeUserPasswords(List<PasswordUpgrade> upgrades) {
+		for (PasswordUpgrade upgrade : upgrades) {
+			userEntityDao.replaceUserPassword(upgrade.getUserId(), upgrade.getOldPassword(), upgrade.getNewPassword(),
+					properties.isBinaryPasswordStorageEnabled());
+		}
+		return true;
 	}
 
 }
@@ -0,0 +1,105 @@
+/*
+ * This file is part of the User Module library.
+ * Copyright (C) 2014 Jaroslav Brtiš
+ *
+ * User Module library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * User Module library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with User Module library. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jardoapps.usermodule.jpa;
+
+/**
+ * Use an instance of this interface to configure {@link UserDatabaseModelJpa}.
+ * 
+ * @since 0.2.0
+ */
+public interface UserDatabaseModelJpaProperties {
+
+	/**
+	 * Returns true if password hashes and salts should be stored in the binary
+	 * columns <code>password_bin</code> and <code>salt_bin</code> instead of
+	 * the hexadecimal text columns <code>password</code> and <code>salt</code>.
+	 * Passwords are always read from whichever columns are filled, so this
+	 * setting can be changed at any time. Use
+	 * {@link UserDatabaseModelJpa#convertUserPasswords(int, int)} to convert
+	 * the existing rows.
+	 */
+	boolean isBinaryPasswordStorageEnabled();
+
+	/**
+	 * Returns true if the ids of users who have valid password reset tokens
+	 * should be kept in memory, so that
+	 * {@link UserDatabaseModelJpa#cancelAllPasswordResetTokens(int)}, which is
+	 * called on every log in, doesn't have to update the token table for
+	 * users without tokens. The ids are loaded from the token table when they
+	 * are needed for the first time and updated by this instance afterwards.
+	 * Enable this only if no other application (or another node of this one)
+	 * adds password reset tokens into the same database, or call
+	 * {@link UserDatabaseModelJpa#reloadPasswordResetTokenUsers()} when it
+	 * does.
+	 * 
+	 * @since 0.2.0
+	 */
+	boolean isPasswordResetTokenTrackingEnabled();
+
+	/**
+	 * Returns true if emails and names of registered users should be kept in
+	 * a Bloom filter, so that
+	 * {@link UserDatabaseModelJpa#isEmailRegistered(String)} and
+	 * {@link UserDatabaseModelJpa#isUserNameRegistered(String)} answer
+	 * without a database query when the email or name is certainly free. The
+	 * filter is loaded from the user table when it is needed for the first
+	 * time and updated by users added by this instance afterwards. Enable
+	 * this only if no other application (or another node of this one) adds
+	 * users into the same database, or call
+	 * {@link UserDatabaseModelJpa#reloadRegisteredUserFilter()} when it does.
+	 * 
+	 * @since 0.2.0
+	 */
+	boolean isRegisteredUserFilterEnabled();
+
+	/**
+	 * Returns number of users the registered user filter is sized for. When
+	 * more users are registered, the filter still works, but falls back to
+	 * the database more often.
+	 * 
+	 * @since 0.2.0
+	 */
+	int getRegisteredUserFilterExpectedSize();
+
+	/**
+	 * Returns the probability that the registered user filter can't rule out
+	 * an email or name which isn't registered, so the database has to be
+	 * queried.
+	 * 
+	 * @since 0.2.0
+	 */
+	double getRegisteredUserFilterFalsePositiveRate();
+
+	/**
+	 * Returns true if names of registered users should be kept in a compact
+	 * in-memory index, which answers
+	 * {@link UserDatabaseModelJpa#isUserNameRegistered(String)} and
+	 * {@link UserDatabaseModelJpa#findUserNamesByPrefix(String, int)} without
+	 * database queries. The index is loaded from the user table when it is
+	 * needed for the first time and updated by users added and deleted by
+	 * this instance afterwards. Names are compared case sensitively. Enable
+	 * this only if no other application (or another node of this one) adds or
+	 * deletes users in the same database, or call
+	 * {@link UserDatabaseModelJpa#reloadUserNameIndex()} when it does.
+	 * 
+	 * @since 0.2.0
+	 */
+	boolean isUserNameIndexEnabled();
+
+}
@@ -0,0 +1,71 @@
+package com.jardoapps.usermodule.jpa;
+
+public class UserDatabaseModelJpaPropertiesImpl implements UserDatabaseModelJpaProperties {
+
+	private boolean binaryPasswordStorageEnabled = false;
+
+	private boolean passwordResetTokenTrackingEnabled = false;
+
+	private boolean registeredUserFilterEnabled = false;
+
+	private int registeredUserFilterExpectedSize = 1000000;
+
+	private double registeredUserFilterFalsePositiveRate = 0.01;
+
+	private boolean userNameIndexEnabled = false;
+
+	@Override
+	public boolean isBinaryPasswordStorageEnabled() {
+		return binaryPasswordStorageEnabled;
+	}
+
+	public void setBinaryPasswordStorageEnabled(boolean binaryPasswordStorageEnabled) {
+		this.binaryPasswordStorageEnabled = binaryPasswordStorageEnabled;
+	}
+
+	@Override
+	public boolean isPasswordResetTokenTrackingEnabled() {
+		return passwordResetTokenTrackingEnabled;
+	}
+
+	public void setPasswordResetTokenTrackingEnabled(boolean passwordResetTokenTrackingEnabled) {
+		this.passwordResetTokenTrackingEnabled = passwordResetTokenTrackingEnabled;
+	}
+
+	@Override
+	public boolean isRegisteredUserFilterEnabled() {
+		return registeredUserFilterEnabled;
+	}
+
+	public void setRegisteredUserFilterEnabled(boolean registeredUserFilterEnabled) {
+		this.registeredUserFilterEnabled = registeredUserFilterEnabled;
+	}
+
+	@Override
+	public int getRegisteredUserFilterExpectedSize() {
+		return registeredUserFilterExpectedSize;
+	}
+
+	public void setRegisteredUserFilterExpectedSize(int registeredUserFilterExpectedSize) {
+		this.registeredUserFilterExpectedSize = registeredUserFilterExpectedSize;
+	}
+
+	@Override
+	public double getRegisteredUserFilterFalsePositiveRate() {
+		return registeredUserFilterFalsePositiveRate;
+	}
+
+	public void setRegisteredUserFilterFalsePositiveRate(double registeredUserFilterFalsePositiveRate) {
+		this.registeredUserFilterFalsePositiveRate = registeredUserFilterFalsePositiveRate;
+	}
+
+	@Override
+	public boolean isUserNameIndexEnabled() {
+		return userNameIndexEnabled;
+	}
+
+	public void setUserNameIndexEnabled(boolean userNameIndexEnabled) {
+		this.userNameIndexEnabled = userNameIndexEnabled;
+	}
+
+}
@@ -32,8 +32,16 @@ public class CommonDao<T> {
 		entityManager.persist(entity);
 	}
 
-	protected Query createQuery(String queryStr) {
-		return entityManager.createQuery(queryStr);
+	protected void flush() {
+		entityManager.flush();
+	}
+
+	/**
+	 * Creates an instance of a query declared on an entity. The query text is
+	 * parsed and validated only once, when the persistence unit starts.
+	 */
+	protected Query createNamedQuery(String queryName) {
+		return entityManager.createNamedQuery(queryName);
 	}
 
 	@SuppressWarnings("unchecked")
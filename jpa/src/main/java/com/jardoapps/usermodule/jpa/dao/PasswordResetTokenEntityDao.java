@@ -19,8 +19,10 @@
 package com.jardoapps.usermodule.jpa.dao;
 
 import java.io.Serializable;
+import java.util.List;
 
 import javax.persistence.Query;
+import javax.transaction.Transactional;
 
 import com.jardoapps.usermodule.jpa.entities.PasswordResetTokenEntity;
 
@@ -28,22 +30,34 @@ public class PasswordResetTokenEntityDao extends CommonDao<PasswordResetTokenEnt
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Runs in its own transaction (unless there already is one), so that
+	 * callers which may skip the update don't have to open a transaction.
+	 */
+	@Transactional
 	public void cancelTokensForUser(int userId) {
-		String queryStr = "UPDATE PasswordResetTokenEntity prt SET prt.valid = false WHERE prt.user.id = :userId";
-
-		Query query = createQuery(queryStr);
+		Query query = createNamedQuery(PasswordResetTokenEntity.QUERY_CANCEL_FOR_USER);
 		query.setParameter("userId", userId);
 		query.executeUpdate();
 	}
 
 	public PasswordResetTokenEntity getNewestToken(String email) {
-		String queryStr = "FROM PasswordResetTokenEntity prt WHERE prt.user.email = :email ORDER BY prt.time DESC";
-
-		Query query = createQuery(queryStr);
+		Query query = createNamedQuery(PasswordResetTokenEntity.QUERY_FIND_NEWEST);
 		query.setParameter("email", email);
 		query.setMaxResults(1);
 
 		return getSingleResult(query);
 	}
 
+	/**
+	 * Returns ids of users who have at least one valid token, including the
+	 * expired ones.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Integer> getUserIdsWithValidTokens() {
+		Query query = createNamedQuery(PasswordResetTokenEntity.QUERY_GET_USER_IDS_WITH_VALID_TOKENS);
+
+		return query.getResultList();
+	}
+
 }
@@ -19,34 +19,70 @@
 package com.jardoapps.usermodule.jpa.dao;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.persistence.Query;
+import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
 
+import com.jardoapps.usermodule.ResultCode;
+import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.containers.UserListFilter;
 import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.defines.UserListOrder;
 import com.jardoapps.usermodule.jpa.entities.UserEntity;
 
 public class UserEntityDao extends CommonDao<UserEntity> implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Maximal number of values bound to a single IN condition. Some databases
+	 * limit the length of IN lists (e.g. Oracle to 1000 values).
+	 */
+	private static final int MAX_IN_LIST_SIZE = 1000;
+
 	public boolean confirmRegistration(String email) {
-		String queryStr = "UPDATE UserEntity u SET u.registrationConfirmed = true WHERE u.email = :email";
-		Query query = createQuery(queryStr);
+		Query query = createNamedQuery(UserEntity.QUERY_CONFIRM_REGISTRATION);
 		query.setParameter("email", email);
 
 		int updatedRows = query.executeUpdate();
 		return updatedRows == 1;
 	}
 
+	/**
+	 * Runs in its own transaction (unless there already is one) and flushes
+	 * the insert, so that a violated unique constraint is thrown by this
+	 * method rather than when the caller's transaction is committed.
+	 */
+	@Transactional
+	public void addAndFlush(UserEntity entity) {
+		add(entity);
+		flush();
+	}
+
+	public boolean confirmRegistrationAndSetPassword(int userId, UserPassword password, boolean binary) {
+		Query query = createNamedQuery(UserEntity.QUERY_CONFIRM_REGISTRATION_AND_SET_PASSWORD);
+		query.setParameter("userId", userId);
+		setPasswordParameters(query, password, binary);
+
+		int updatedRows = query.executeUpdate();
+		return updatedRows == 1;
+	}
+
 	public int getRegisteredUserCount(Date since) {
 		if (since == null) {
 			since = new Date(0);
 		}
 
-		String queryStr = "SELECT count(*) FROM UserEntity u WHERE u.registrationConfirmed = true AND u.deleted = false AND u.registrationDate >= :since";
-
-		Query query = createQuery(queryStr);
+		Query query = createNamedQuery(UserEntity.QUERY_COUNT_REGISTERED_USERS);
 		query.setParameter("since", since);
 
 		Long result = getSingleResult(query);
@@ -54,9 +90,7 @@ public class UserEntityDao extends CommonDao<UserEntity> implements Serializable
 	}
 
 	public int getUserIdByEmail(String email) {
-		String queryStr = "SELECT u.id FROM UserEntity u WHERE u.email= :email AND u.deleted = false";
-
-		Query query = createQuery(queryStr);
+		Query query = createNamedQuery(UserEntity.QUERY_GET_ID_BY_EMAIL);
 		query.setParameter("email", email);
 
 		Integer result = getSingleResult(query);
@@ -67,19 +101,59 @@ public class UserEntityDao extends CommonDao<UserEntity> implements Serializable
 		return result.intValue();
 	}
 
-	public UserPassword getUserPassword(int userId) {
-		String queryStr = String.format("SELECT new %s(u.passwordHash, u.passwordSalt) FROM UserEntity u WHERE u.id= :id AND u.deleted = false", UserPassword.class.getName());
+	private static UserPassword toUserPassword(Object[] row, int offset) {
+		if (row[offset + 2] != null) {
+			return new UserPassword((byte[]) row[offset + 2], (byte[]) row[offset + 3]);
+		}
+		return new UserPassword((String) row[offset], (String) row[offset + 1]);
+	}
+
+	/**
+	 * Loads only the columns needed to log in, without creating a managed
+	 * entity. The registration control code is left out.
+	 */
+	public User getLogInUser(String userNameOrEmail, boolean email) {
+		Query query = createNamedQuery(email ? UserEntity.QUERY_GET_LOG_IN_USER_BY_EMAIL : UserEntity.QUERY_GET_LOG_IN_USER_BY_NAME);
+		query.setParameter("userNameOrEmail", userNameOrEmail);
+		query.setMaxResults(1);
+
+		Object[] result = getSingleResult(query);
+		if (result == null) {
+			return null;
+		}
 
-		Query query = createQuery(queryStr);
+		return new User((Integer) result[0], (String) result[1], (String) result[2], null, (Boolean) result[3], toUserPassword(result, 5),
+				(Integer) result[4]);
+	}
+
+	public UserPassword getUserPassword(int userId) {
+		Query query = createNamedQuery(UserEntity.QUERY_GET_PASSWORD);
 		query.setParameter("id", userId);
 
-		return getSingleResult(query);
+		Object[] result = getSingleResult(query);
+		if (result == null) {
+			return null;
+		}
+
+		return toUserPassword(result, 0);
 	}
 
-	public boolean deleteUserEntity(int userId) {
-		String queryStr = "UPDATE UserEntity u SET u.deleted = true WHERE u.id = :userId";
+	/**
+	 * Returns users (including the deleted ones) with id greater than the
+	 * given one, whose password is stored in the other format than the
+	 * requested one. The users are ordered by their ids.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<UserEntity> findUsersToConvertPassword(int afterUserId, int maxResults, boolean binary) {
+		Query query = createNamedQuery(binary ? UserEntity.QUERY_FIND_TO_CONVERT_TO_BINARY : UserEntity.QUERY_FIND_TO_CONVERT_TO_TEXT);
+		query.setParameter("afterUserId", afterUserId);
+		query.setMaxResults(maxResults);
+
+		return query.getResultList();
+	}
 
-		Query query = createQuery(queryStr);
+	public boolean deleteUserEntity(int userId) {
+		Query query = createNamedQuery(UserEntity.QUERY_DELETE);
 		query.setParameter("userId", userId);
 
 		int updatedRows = query.executeUpdate();
@@ -87,9 +161,7 @@ public class UserEntityDao extends CommonDao<UserEntity> implements Serializable
 	}
 
 	public UserEntity findByEmail(String email) {
-		String queryStr = "FROM UserEntity u WHERE u.email = :email AND u.deleted = false";
-
-		Query query = createQuery(queryStr);
+		Query query = createNamedQuery(UserEntity.QUERY_FIND_BY_EMAIL);
 		query.setParameter("email", email);
 		query.setMaxResults(1);
 
@@ -97,44 +169,285 @@ public class UserEntityDao extends CommonDao<UserEntity> implements Serializable
 	}
 
 	public UserEntity findByName(String name) {
-		String queryStr = "FROM UserEntity u WHERE u.name = :name AND u.deleted = false";
-
-		Query query = createQuery(queryStr);
+		Query query = createNamedQuery(UserEntity.QUERY_FIND_BY_NAME);
 		query.setParameter("name", name);
 		query.setMaxResults(1);
 
 		return getSingleResult(query);
 	}
 
-	public boolean isEmailRegistered(String email) {
-		String queryStr = "SELECT count(*) FROM UserEntity u WHERE u.email = :email AND u.deleted = false";
+	/**
+	 * Returns ids, emails and names of not deleted users with id greater than
+	 * the given one, ordered by their ids.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Object[]> findEmailsAndNames(int afterUserId, int maxResults) {
+		Query query = createNamedQuery(UserEntity.QUERY_FIND_EMAILS_AND_NAMES);
+		query.setParameter("afterUserId", afterUserId);
+		query.setMaxResults(maxResults);
+
+		return query.getResultList();
+	}
+
+	/**
+	 * Returns ids, emails, names, registration confirmations and ranks of not
+	 * deleted users with id greater than the given one, ordered by their
+	 * ids. Only the selected columns are loaded, no entities are added to the
+	 * persistence context.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Object[]> findUsersToExport(int afterUserId, int maxResults) {
+		Query query = createNamedQuery(UserEntity.QUERY_FIND_TO_EXPORT);
+		query.setParameter("afterUserId", afterUserId);
+		query.setMaxResults(maxResults);
+
+		return query.getResultList();
+	}
+
+	/**
+	 * Returns ids, names, emails, registration confirmations, ranks and
+	 * registration dates of not deleted users matching the filter, which
+	 * follow the user with the given id and sort value in the given order
+	 * (keyset pagination). Instead of skipping the preceding rows, the
+	 * database seeks in the index of the sort column and id (see the indexes
+	 * of {@link UserEntity}) right behind the given user: first the users
+	 * with the same sort value and a greater id are read, then the users with
+	 * a greater sort value. A single query with
+	 * <code>(value = :value AND id > :id) OR value > :value</code> would
+	 * have to scan through all users sharing the sort value, e.g. all users
+	 * added by the same {@link UserDatabaseModelJpa#addUsers} call. The
+	 * users are always ordered by all columns of the scanned index, even
+	 * those compared by equality, otherwise some databases (e.g. HSQLDB)
+	 * sort all matching rows instead of reading the index in order. Each
+	 * combination of the order, the rank filter and the step is a named query
+	 * of {@link UserEntity}.
+	 * 
+	 * @param afterValue
+	 *            name or registration date of the preceding user, ignored
+	 *            when ordering by id
+	 * @param afterUserId
+	 *            id of the preceding user, or null to return the first page
+	 */
+	public List<Object[]> findUsersPage(UserListFilter filter, UserListOrder order, Object afterValue, Integer afterUserId, int maxResults) {
+		boolean ofRank = filter.getRank() != null;
+		if (order == UserListOrder.ID) {
+			String queryName;
+			if (afterUserId == null) {
+				queryName = ofRank ? UserEntity.QUERY_LIST_USERS_BY_ID_OF_RANK : UserEntity.QUERY_LIST_USERS_BY_ID;
+			} else {
+				queryName = ofRank ? UserEntity.QUERY_LIST_USERS_BY_ID_AFTER_OF_RANK : UserEntity.QUERY_LIST_USERS_BY_ID_AFTER;
+			}
+			return findUsersPage(queryName, filter, null, afterUserId, maxResults);
+		}
+
+		boolean byName = order == UserListOrder.NAME;
+		if (afterUserId == null) {
+			String queryName;
+			if (byName) {
+				queryName = ofRank ? UserEntity.QUERY_LIST_USERS_BY_NAME_OF_RANK : UserEntity.QUERY_LIST_USERS_BY_NAME;
+			} else {
+				queryName = ofRank ? UserEntity.QUERY_LIST_USERS_BY_REG_DATE_OF_RANK : UserEntity.QUERY_LIST_USERS_BY_REG_DATE;
+			}
+			return findUsersPage(queryName, filter, null, null, maxResults);
+		}
+
+		String sameValueQueryName;
+		String greaterValueQueryName;
+		if (byName) {
+			sameValueQueryName = ofRank ? UserEntity.QUERY_LIST_USERS_BY_NAME_SAME_OF_RANK : UserEntity.QUERY_LIST_USERS_BY_NAME_SAME;
+			greaterValueQueryName = ofRank ? UserEntity.QUERY_LIST_USERS_BY_NAME_AFTER_OF_RANK : UserEntity.QUERY_LIST_USERS_BY_NAME_AFTER;
+		} else {
+			sameValueQueryName = ofRank ? UserEntity.QUERY_LIST_USERS_BY_REG_DATE_SAME_OF_RANK : UserEntity.QUERY_LIST_USERS_BY_REG_DATE_SAME;
+			greaterValueQueryName = ofRank ? UserEntity.QUERY_LIST_USERS_BY_REG_DATE_AFTER_OF_RANK : UserEntity.QUERY_LIST_USERS_BY_REG_DATE_AFTER;
+		}
+
+		List<Object[]> result = findUsersPage(sameValueQueryName, filter, afterValue, afterUserId, maxResults);
+		if (result.size() < maxResults) {
+			result = new ArrayList<>(result);
+			result.addAll(findUsersPage(greaterValueQueryName, filter, afterValue, null, maxResults - result.size()));
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> findUsersPage(String queryName, UserListFilter filter, Object afterValue, Integer afterUserId, int maxResults) {
+		Query query = createNamedQuery(queryName);
+		if (filter.getRank() != null) {
+			query.setParameter("rank", filter.getRank());
+		}
+		if (filter.getRegistrationConfirmed() != null) {
+			query.setParameter("registrationConfirmed", Collections.singletonList(filter.getRegistrationConfirmed()));
+		} else {
+			query.setParameter("registrationConfirmed", Arrays.asList(Boolean.TRUE, Boolean.FALSE));
+		}
+		if (afterValue != null) {
+			query.setParameter("afterValue", afterValue);
+		}
+		if (afterUserId != null) {
+			query.setParameter("afterUserId", afterUserId);
+		}
+		query.setMaxResults(maxResults);
 
-		Query query = createQuery(queryStr);
+		return query.getResultList();
+	}
+
+	/**
+	 * Returns those of the given emails which belong to not deleted users.
+	 * Runs a single query per {@value #MAX_IN_LIST_SIZE} emails.
+	 */
+	public Set<String> findRegisteredEmails(Collection<String> emails) {
+		return findRegisteredValues(UserEntity.QUERY_FIND_REGISTERED_EMAILS, "emails", emails);
+	}
+
+	/**
+	 * Returns those of the given names which belong to not deleted users.
+	 * Runs a single query per {@value #MAX_IN_LIST_SIZE} names.
+	 */
+	public Set<String> findRegisteredNames(Collection<String> names) {
+		return findRegisteredValues(UserEntity.QUERY_FIND_REGISTERED_NAMES, "names", names);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<String> findRegisteredValues(String queryName, String parameterName, Collection<String> values) {
+		Set<String> result = new HashSet<>();
+		List<String> chunk = new ArrayList<>(Math.min(values.size(), MAX_IN_LIST_SIZE));
+		for (String value : values) {
+			chunk.add(value);
+			if (chunk.size() == MAX_IN_LIST_SIZE) {
+				Query query = createNamedQuery(queryName);
+				query.setParameter(parameterName, chunk);
+				result.addAll(query.getResultList());
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			Query query = createNamedQuery(queryName);
+			query.setParameter(parameterName, chunk);
+			result.addAll(query.getResultList());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns names of not deleted users starting with the given prefix,
+	 * ordered by the database's collation.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> findNamesByPrefix(String prefix, int maxResults) {
+		Query query = createNamedQuery(UserEntity.QUERY_FIND_NAMES_BY_PREFIX);
+		query.setParameter("pattern", prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+		query.setMaxResults(maxResults);
+
+		return query.getResultList();
+	}
+
+	public String getUserName(int userId) {
+		Query query = createNamedQuery(UserEntity.QUERY_GET_NAME);
+		query.setParameter("id", userId);
+
+		return getSingleResult(query);
+	}
+
+	/**
+	 * Checks whether a not deleted user with the given email exists. Unlike
+	 * counting the matching rows, the database can stop at the first match.
+	 */
+	public boolean isEmailRegistered(String email) {
+		Query query = createNamedQuery(UserEntity.QUERY_GET_ID_BY_EMAIL);
 		query.setParameter("email", email);
+		query.setMaxResults(1);
 
-		Long result = getSingleResult(query);
-		return result > 0;
+		return !query.getResultList().isEmpty();
 	}
 
+	/**
+	 * Checks whether a not deleted user with the given name exists. Unlike
+	 * counting the matching rows, the database can stop at the first match.
+	 */
 	public boolean isUserNameRegistered(String name) {
-		String queryStr = "SELECT count(*) FROM UserEntity u WHERE u.name = :name AND u.deleted = false";
+		Query query = createNamedQuery(UserEntity.QUERY_GET_ID_BY_NAME);
+		query.setParameter("name", name);
+		query.setMaxResults(1);
+
+		return !query.getResultList().isEmpty();
+	}
 
-		Query query = createQuery(queryStr);
+	/**
+	 * Same as {@link #checkRegistrationAvailability(String, String)}, but
+	 * always runs in a new transaction with its own persistence context. Used
+	 * after a failed insert, which marks the current transaction for rollback
+	 * (some databases, e.g. PostgreSQL, refuse further statements in it) and
+	 * leaves the failed entity in the current persistence context.
+	 */
+	@Transactional(TxType.REQUIRES_NEW)
+	public ResultCode checkRegistrationAvailabilityInNewTransaction(String email, String name) {
+		return checkRegistrationAvailability(email, name);
+	}
+
+	/**
+	 * Checks by a single query whether the given user name or email is
+	 * already registered. A registered user name takes precedence over a
+	 * registered email.
+	 */
+	public ResultCode checkRegistrationAvailability(String email, String name) {
+		Query query = createNamedQuery(UserEntity.QUERY_GET_REGISTRATION_CONFLICT);
+		query.setParameter("email", email);
 		query.setParameter("name", name);
 
-		Long result = getSingleResult(query);
-		return result > 0;
+		Integer result = getSingleResult(query);
+		if (result == null) {
+			return ResultCode.OK;
+		}
+
+		return result == 2 ? ResultCode.USER_NAME_ALREADY_REGISTERED : ResultCode.EMAIL_ALREADY_REGISTERED;
+	}
+
+	public boolean replaceUserPassword(int userId, UserPassword oldPassword, UserPassword newPassword, boolean binary) {
+		boolean oldBinary = oldPassword.isBinaryFormSupported();
+
+		Query query = createNamedQuery(oldBinary ? UserEntity.QUERY_REPLACE_PASSWORD_OR_BINARY : UserEntity.QUERY_REPLACE_PASSWORD);
+		query.setParameter("userId", userId);
+		setPasswordParameters(query, newPassword, binary);
+		query.setParameter("oldHash", oldPassword.getHash());
+		query.setParameter("oldSalt", oldPassword.getSalt());
+		if (oldBinary) {
+			query.setParameter("oldBinaryHash", oldPassword.getBinaryHash());
+			query.setParameter("oldBinarySalt", oldPassword.getBinarySalt());
+		}
+
+		int updatedRows = query.executeUpdate();
+		return updatedRows == 1;
 	}
 
-	public boolean setUserPassword(int userId, UserPassword password) {
-		String queryStr = "UPDATE UserEntity u SET u.passwordHash = :hash, u.passwordSalt = :salt WHERE u.id = :userId";
+	/**
+	 * Same as {@link #setUserPassword(int, UserPassword, boolean)}, but skips
+	 * deleted users.
+	 */
+	public boolean resetUserPassword(int userId, UserPassword password, boolean binary) {
+		Query query = createNamedQuery(UserEntity.QUERY_RESET_PASSWORD);
+		query.setParameter("userId", userId);
+		setPasswordParameters(query, password, binary);
+
+		int updatedRows = query.executeUpdate();
+		return updatedRows == 1;
+	}
 
-		Query query = createQuery(queryStr);
+	public boolean setUserPassword(int userId, UserPassword password, boolean binary) {
+		Query query = createNamedQuery(UserEntity.QUERY_SET_PASSWORD);
 		query.setParameter("userId", userId);
-		query.setParameter("hash", password.getHash());
-		query.setParameter("salt", password.getSalt());
+		setPasswordParameters(query, password, binary);
 
 		int updatedRows = query.executeUpdate();
 		return updatedRows == 1;
 	}
+
+	private void setPasswordParameters(Query query, UserPassword password, boolean binary) {
+		UserEntity entity = new UserEntity();
+		entity.setPassword(password, binary);
+
+		query.setParameter("hash", entity.getPasswordHash());
+		query.setParameter("salt", entity.getPasswordSalt());
+		query.setParameter("binaryHash", entity.getBinaryPasswordHash());
+		query.setParameter("binarySalt", entity.getBinaryPasswordSalt());
+	}
 }
@@ -22,10 +22,14 @@ import java.util.Date;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 /**
@@ -37,15 +41,32 @@ import javax.persistence.Table;
  *
  */
 @Entity
-@Table(name = "um_login_record")
+@Table(name = "um_login_record", indexes = @Index(name = "um_login_record_user_time_idx", columnList = "user_id, date_time"))
 public class LogInRecordEntity {
 
+	/**
+	 * Ids are allocated from the sequence in blocks of 50 (Hibernate's pooled
+	 * optimizer), so most inserts don't need a round trip to the sequence. The
+	 * block size can be overridden by a sequence generator of the same name
+	 * in orm.xml.
+	 */
 	@Id
-	@GeneratedValue
+	@SequenceGenerator(name = "um_login_record_id_seq", sequenceName = "um_login_record_id_seq", allocationSize = 50)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "um_login_record_id_seq")
 	private long id;
 
-	@ManyToOne
-	@JoinColumn(name = "user_id")
+	/**
+	 * Id of the user, so that the user doesn't have to be loaded or
+	 * referenced to read or write it.
+	 */
+	@Column(name = "user_id")
+	int userId;
+
+	/**
+	 * Read only view of {@link #userId}, loaded only when accessed.
+	 */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "user_id", insertable = false, updatable = false)
 	UserEntity user;
 
 	@Column(name = "date_time")
@@ -69,8 +90,27 @@ public class LogInRecordEntity {
 		return user;
 	}
 
+	/**
+	 * Sets the user and the user id. Prefer {@link #setUserId(int)} when only the id
+	 * is known, the user is not written to the database.
+	 */
 	public void setUser(UserEntity user) {
 		this.user = user;
+		this.userId = user == null ? 0 : user.getId();
+	}
+
+	/**
+	 * @since 0.2.0
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * @since 0.2.0
+	 */
+	public void setUserId(int userId) {
+		this.userId = userId;
 	}
 
 	public Date getTime() {
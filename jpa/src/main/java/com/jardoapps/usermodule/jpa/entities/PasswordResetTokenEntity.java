@@ -22,10 +22,16 @@ import java.util.Date;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 import com.jardoapps.usermodule.containers.PasswordResetToken;
@@ -39,15 +45,46 @@ import com.jardoapps.usermodule.containers.PasswordResetToken;
  *
  */
 @Entity
-@Table(name = "um_password_reset_token")
+@Table(name = "um_password_reset_token", indexes = @Index(name = "um_password_reset_token_user_valid_time_idx", columnList = "user_id, valid, date_time"))
+@NamedQueries({
+		@NamedQuery(name = PasswordResetTokenEntity.QUERY_CANCEL_FOR_USER, query = "UPDATE PasswordResetTokenEntity prt SET prt.valid = false WHERE prt.userId = :userId"),
+		@NamedQuery(name = PasswordResetTokenEntity.QUERY_FIND_NEWEST, query = "FROM PasswordResetTokenEntity prt WHERE prt.user.email = :email ORDER BY prt.time DESC"),
+		@NamedQuery(name = PasswordResetTokenEntity.QUERY_GET_USER_IDS_WITH_VALID_TOKENS, query = "SELECT DISTINCT prt.userId FROM PasswordResetTokenEntity prt WHERE prt.valid = true") })
 public class PasswordResetTokenEntity {
 
+	/**
+	 * Names of the queries declared by this entity. They are parsed and
+	 * validated once, when the persistence unit starts.
+	 * 
+	 * @since 0.2.0
+	 */
+	public static final String QUERY_CANCEL_FOR_USER = "PasswordResetTokenEntity.cancelForUser";
+	public static final String QUERY_FIND_NEWEST = "PasswordResetTokenEntity.findNewest";
+	public static final String QUERY_GET_USER_IDS_WITH_VALID_TOKENS = "PasswordResetTokenEntity.getUserIdsWithValidTokens";
+
+	/**
+	 * Ids are allocated from the sequence in blocks of 50 (Hibernate's pooled
+	 * optimizer), so most inserts don't need a round trip to the sequence. The
+	 * block size can be overridden by a sequence generator of the same name
+	 * in orm.xml.
+	 */
 	@Id
-	@GeneratedValue
+	@SequenceGenerator(name = "um_password_reset_token_id_seq", sequenceName = "um_password_reset_token_id_seq", allocationSize = 50)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "um_password_reset_token_id_seq")
 	long id;
 
-	@ManyToOne
-	@JoinColumn(name = "user_id")
+	/**
+	 * Id of the user, so that the user doesn't have to be loaded or
+	 * referenced to read or write it.
+	 */
+	@Column(name = "user_id")
+	int userId;
+
+	/**
+	 * Read only view of {@link #userId}, loaded only when accessed.
+	 */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "user_id", insertable = false, updatable = false)
 	UserEntity user;
 
 	@Column(name = "date_time")
@@ -64,8 +101,7 @@ public class PasswordResetTokenEntity {
 	}
 
 	public PasswordResetTokenEntity(PasswordResetToken passwordResetToken) {
-		this.user = new UserEntity();
-		this.user.setId(passwordResetToken.getUserId());
+		this.userId = passwordResetToken.getUserId();
 		this.time = passwordResetToken.getCreationTime();
 		this.key = passwordResetToken.getKey();
 	}
@@ -82,8 +118,27 @@ public class PasswordResetTokenEntity {
 		return user;
 	}
 
+	/**
+	 * Sets the user and the user id. Prefer {@link #setUserId(int)} when only the id
+	 * is known, the user is not written to the database.
+	 */
 	public void setUser(UserEntity user) {
 		this.user = user;
+		this.userId = user == null ? 0 : user.getId();
+	}
+
+	/**
+	 * @since 0.2.0
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * @since 0.2.0
+	 */
+	public void setUserId(int userId) {
+		this.userId = userId;
 	}
 
 	public Date getTime() {
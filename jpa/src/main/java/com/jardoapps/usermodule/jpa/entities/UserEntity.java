@@ -25,6 +25,9 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
@@ -40,12 +43,133 @@ import com.jardoapps.usermodule.containers.UserPassword;
  *
  */
 @Entity
-@Table(name = "um_user")
+@Table(name = "um_user", indexes = { @Index(name = "um_user_email_idx", columnList = "email"),
+		@Index(name = "um_user_name_idx", columnList = "name, id"), @Index(name = "um_user_reg_date_idx", columnList = "reg_date, id"),
+		@Index(name = "um_user_rank_idx", columnList = "rank, id") })
+@NamedQueries({
+		@NamedQuery(name = UserEntity.QUERY_CONFIRM_REGISTRATION, query = "UPDATE UserEntity u SET u.registrationConfirmed = true WHERE u.email = :email"),
+		@NamedQuery(name = UserEntity.QUERY_CONFIRM_REGISTRATION_AND_SET_PASSWORD, query = "UPDATE UserEntity u SET u.registrationConfirmed = true, "
+				+ UserEntity.PASSWORD_ASSIGNMENTS + " WHERE u.id = :userId"),
+		@NamedQuery(name = UserEntity.QUERY_COUNT_REGISTERED_USERS, query = "SELECT count(*) FROM UserEntity u WHERE u.registrationConfirmed = true AND u.deleted = false AND u.registrationDate >= :since"),
+		@NamedQuery(name = UserEntity.QUERY_GET_ID_BY_EMAIL, query = "SELECT u.id FROM UserEntity u WHERE u.email = :email AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_GET_ID_BY_NAME, query = "SELECT u.id FROM UserEntity u WHERE u.name = :name AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_GET_REGISTRATION_CONFLICT, query = "SELECT max(CASE WHEN u.name = :name THEN 2 ELSE 1 END) FROM UserEntity u WHERE (u.name = :name OR u.email = :email) AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_GET_LOG_IN_USER_BY_EMAIL, query = UserEntity.LOG_IN_USER_SELECT + "u.email = :userNameOrEmail AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_GET_LOG_IN_USER_BY_NAME, query = UserEntity.LOG_IN_USER_SELECT + "u.name = :userNameOrEmail AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_GET_PASSWORD, query = "SELECT u.passwordHash, u.passwordSalt, u.binaryPasswordHash, u.binaryPasswordSalt FROM UserEntity u WHERE u.id = :id AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_FIND_TO_CONVERT_TO_BINARY, query = "FROM UserEntity u WHERE u.id > :afterUserId AND u.binaryPasswordHash IS NULL AND u.passwordHash IS NOT NULL ORDER BY u.id"),
+		@NamedQuery(name = UserEntity.QUERY_FIND_TO_CONVERT_TO_TEXT, query = "FROM UserEntity u WHERE u.id > :afterUserId AND u.binaryPasswordHash IS NOT NULL ORDER BY u.id"),
+		@NamedQuery(name = UserEntity.QUERY_DELETE, query = "UPDATE UserEntity u SET u.deleted = true WHERE u.id = :userId"),
+		@NamedQuery(name = UserEntity.QUERY_FIND_BY_EMAIL, query = "FROM UserEntity u WHERE u.email = :email AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_FIND_BY_NAME, query = "FROM UserEntity u WHERE u.name = :name AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_FIND_EMAILS_AND_NAMES, query = "SELECT u.id, u.email, u.name FROM UserEntity u WHERE u.id > :afterUserId AND u.deleted = false ORDER BY u.id"),
+		@NamedQuery(name = UserEntity.QUERY_FIND_TO_EXPORT, query = "SELECT u.id, u.email, u.name, u.registrationConfirmed, u.rank FROM UserEntity u WHERE u.id > :afterUserId AND u.deleted = false ORDER BY u.id"),
+		@NamedQuery(name = UserEntity.QUERY_FIND_REGISTERED_EMAILS, query = "SELECT u.email FROM UserEntity u WHERE u.email IN (:emails) AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_FIND_REGISTERED_NAMES, query = "SELECT u.name FROM UserEntity u WHERE u.name IN (:names) AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_FIND_NAMES_BY_PREFIX, query = "SELECT u.name FROM UserEntity u WHERE u.name LIKE :pattern ESCAPE '\\' AND u.deleted = false ORDER BY u.name"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_ID, query = UserEntity.LIST_USERS_SELECT + " ORDER BY u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_ID_OF_RANK, query = UserEntity.LIST_USERS_OF_RANK_SELECT + " ORDER BY u.rank, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_ID_AFTER, query = UserEntity.LIST_USERS_SELECT + " AND u.id > :afterUserId ORDER BY u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_ID_AFTER_OF_RANK, query = UserEntity.LIST_USERS_OF_RANK_SELECT
+				+ " AND u.id > :afterUserId ORDER BY u.rank, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_NAME, query = UserEntity.LIST_USERS_SELECT + " AND u.name IS NOT NULL ORDER BY u.name, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_NAME_OF_RANK, query = UserEntity.LIST_USERS_OF_RANK_SELECT
+				+ " AND u.name IS NOT NULL ORDER BY u.name, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_NAME_SAME, query = UserEntity.LIST_USERS_SELECT
+				+ " AND u.name = :afterValue AND u.id > :afterUserId ORDER BY u.name, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_NAME_SAME_OF_RANK, query = UserEntity.LIST_USERS_OF_RANK_SELECT
+				+ " AND u.name = :afterValue AND u.id > :afterUserId ORDER BY u.name, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_NAME_AFTER, query = UserEntity.LIST_USERS_SELECT + " AND u.name > :afterValue ORDER BY u.name, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_NAME_AFTER_OF_RANK, query = UserEntity.LIST_USERS_OF_RANK_SELECT
+				+ " AND u.name > :afterValue ORDER BY u.name, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_REG_DATE, query = UserEntity.LIST_USERS_SELECT
+				+ " AND u.registrationDate IS NOT NULL ORDER BY u.registrationDate, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_REG_DATE_OF_RANK, query = UserEntity.LIST_USERS_OF_RANK_SELECT
+				+ " AND u.registrationDate IS NOT NULL ORDER BY u.registrationDate, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_REG_DATE_SAME, query = UserEntity.LIST_USERS_SELECT
+				+ " AND u.registrationDate = :afterValue AND u.id > :afterUserId ORDER BY u.registrationDate, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_REG_DATE_SAME_OF_RANK, query = UserEntity.LIST_USERS_OF_RANK_SELECT
+				+ " AND u.registrationDate = :afterValue AND u.id > :afterUserId ORDER BY u.registrationDate, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_REG_DATE_AFTER, query = UserEntity.LIST_USERS_SELECT
+				+ " AND u.registrationDate > :afterValue ORDER BY u.registrationDate, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_LIST_USERS_BY_REG_DATE_AFTER_OF_RANK, query = UserEntity.LIST_USERS_OF_RANK_SELECT
+				+ " AND u.registrationDate > :afterValue ORDER BY u.registrationDate, u.id"),
+		@NamedQuery(name = UserEntity.QUERY_GET_NAME, query = "SELECT u.name FROM UserEntity u WHERE u.id = :id AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_REPLACE_PASSWORD, query = UserEntity.SET_PASSWORD_UPDATE + " AND (u.passwordHash = :oldHash AND u.passwordSalt = :oldSalt)"),
+		@NamedQuery(name = UserEntity.QUERY_REPLACE_PASSWORD_OR_BINARY, query = UserEntity.SET_PASSWORD_UPDATE
+				+ " AND ((u.passwordHash = :oldHash AND u.passwordSalt = :oldSalt) OR (u.binaryPasswordHash = :oldBinaryHash AND u.binaryPasswordSalt = :oldBinarySalt))"),
+		@NamedQuery(name = UserEntity.QUERY_RESET_PASSWORD, query = UserEntity.SET_PASSWORD_UPDATE + " AND u.deleted = false"),
+		@NamedQuery(name = UserEntity.QUERY_SET_PASSWORD, query = UserEntity.SET_PASSWORD_UPDATE) })
 public class UserEntity {
 
+	/**
+	 * Names of the queries declared by this entity. They are parsed and
+	 * validated once, when the persistence unit starts.
+	 * 
+	 * @since 0.2.0
+	 */
+	public static final String QUERY_CONFIRM_REGISTRATION = "UserEntity.confirmRegistration";
+	public static final String QUERY_CONFIRM_REGISTRATION_AND_SET_PASSWORD = "UserEntity.confirmRegistrationAndSetPassword";
+	public static final String QUERY_COUNT_REGISTERED_USERS = "UserEntity.countRegisteredUsers";
+	public static final String QUERY_GET_ID_BY_EMAIL = "UserEntity.getIdByEmail";
+	public static final String QUERY_GET_ID_BY_NAME = "UserEntity.getIdByName";
+	public static final String QUERY_GET_REGISTRATION_CONFLICT = "UserEntity.getRegistrationConflict";
+	public static final String QUERY_GET_LOG_IN_USER_BY_EMAIL = "UserEntity.getLogInUserByEmail";
+	public static final String QUERY_GET_LOG_IN_USER_BY_NAME = "UserEntity.getLogInUserByName";
+	public static final String QUERY_GET_PASSWORD = "UserEntity.getPassword";
+	public static final String QUERY_FIND_TO_CONVERT_TO_BINARY = "UserEntity.findToConvertToBinary";
+	public static final String QUERY_FIND_TO_CONVERT_TO_TEXT = "UserEntity.findToConvertToText";
+	public static final String QUERY_DELETE = "UserEntity.delete";
+	public static final String QUERY_FIND_BY_EMAIL = "UserEntity.findByEmail";
+	public static final String QUERY_FIND_BY_NAME = "UserEntity.findByName";
+	public static final String QUERY_FIND_EMAILS_AND_NAMES = "UserEntity.findEmailsAndNames";
+	public static final String QUERY_FIND_TO_EXPORT = "UserEntity.findToExport";
+	public static final String QUERY_FIND_REGISTERED_EMAILS = "UserEntity.findRegisteredEmails";
+	public static final String QUERY_FIND_REGISTERED_NAMES = "UserEntity.findRegisteredNames";
+	public static final String QUERY_FIND_NAMES_BY_PREFIX = "UserEntity.findNamesByPrefix";
+	public static final String QUERY_LIST_USERS_BY_ID = "UserEntity.listUsersById";
+	public static final String QUERY_LIST_USERS_BY_ID_OF_RANK = "UserEntity.listUsersByIdOfRank";
+	public static final String QUERY_LIST_USERS_BY_ID_AFTER = "UserEntity.listUsersByIdAfter";
+	public static final String QUERY_LIST_USERS_BY_ID_AFTER_OF_RANK = "UserEntity.listUsersByIdAfterOfRank";
+	public static final String QUERY_LIST_USERS_BY_NAME = "UserEntity.listUsersByName";
+	public static final String QUERY_LIST_USERS_BY_NAME_OF_RANK = "UserEntity.listUsersByNameOfRank";
+	public static final String QUERY_LIST_USERS_BY_NAME_SAME = "UserEntity.listUsersByNameSame";
+	public static final String QUERY_LIST_USERS_BY_NAME_SAME_OF_RANK = "UserEntity.listUsersByNameSameOfRank";
+	public static final String QUERY_LIST_USERS_BY_NAME_AFTER = "UserEntity.listUsersByNameAfter";
+	public static final String QUERY_LIST_USERS_BY_NAME_AFTER_OF_RANK = "UserEntity.listUsersByNameAfterOfRank";
+	public static final String QUERY_LIST_USERS_BY_REG_DATE = "UserEntity.listUsersByRegDate";
+	public static final String QUERY_LIST_USERS_BY_REG_DATE_OF_RANK = "UserEntity.listUsersByRegDateOfRank";
+	public static final String QUERY_LIST_USERS_BY_REG_DATE_SAME = "UserEntity.listUsersByRegDateSame";
+	public static final String QUERY_LIST_USERS_BY_REG_DATE_SAME_OF_RANK = "UserEntity.listUsersByRegDateSameOfRank";
+	public static final String QUERY_LIST_USERS_BY_REG_DATE_AFTER = "UserEntity.listUsersByRegDateAfter";
+	public static final String QUERY_LIST_USERS_BY_REG_DATE_AFTER_OF_RANK = "UserEntity.listUsersByRegDateAfterOfRank";
+	public static final String QUERY_GET_NAME = "UserEntity.getName";
+	public static final String QUERY_REPLACE_PASSWORD = "UserEntity.replacePassword";
+	public static final String QUERY_REPLACE_PASSWORD_OR_BINARY = "UserEntity.replacePasswordOrBinary";
+	public static final String QUERY_RESET_PASSWORD = "UserEntity.resetPassword";
+	public static final String QUERY_SET_PASSWORD = "UserEntity.setPassword";
+
+	static final String LOG_IN_USER_SELECT = "SELECT u.id, u.name, u.email, u.registrationConfirmed, u.rank, u.passwordHash, u.passwordSalt, u.binaryPasswordHash, u.binaryPasswordSalt FROM UserEntity u WHERE ";
+
+	/**
+	 * The registration confirmation is always bound as a list of the allowed
+	 * values, so the filter doesn't need its own variants of the queries.
+	 */
+	static final String LIST_USERS_SELECT = "SELECT u.id, u.name, u.email, u.registrationConfirmed, u.rank, u.registrationDate FROM UserEntity u WHERE u.deleted = false AND u.registrationConfirmed IN (:registrationConfirmed)";
+
+	static final String LIST_USERS_OF_RANK_SELECT = LIST_USERS_SELECT + " AND u.rank = :rank";
+
+	static final String PASSWORD_ASSIGNMENTS = "u.passwordHash = :hash, u.passwordSalt = :salt, u.binaryPasswordHash = :binaryHash, u.binaryPasswordSalt = :binarySalt";
+
+	static final String SET_PASSWORD_UPDATE = "UPDATE UserEntity u SET " + PASSWORD_ASSIGNMENTS + " WHERE u.id = :userId";
+
+	/**
+	 * Ids are allocated from the sequence in blocks of 50 by the pooled
+	 * optimizer, like the ids of the other entities.
+	 */
 	@Id
 	@Column(name = "id")
-	@SequenceGenerator(name = "um_user_id_seq", sequenceName = "um_user_id_seq")
+	@SequenceGenerator(name = "um_user_id_seq", sequenceName = "um_user_id_seq", allocationSize = 50)
 	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "um_user_id_seq")
 	private int id;
 
@@ -76,6 +200,12 @@ public class UserEntity {
 	@Column(name = "salt")
 	private String passwordSalt;
 
+	@Column(name = "password_bin")
+	private byte[] binaryPasswordHash;
+
+	@Column(name = "salt_bin")
+	private byte[] binaryPasswordSalt;
+
 	public UserEntity() {
 		super();
 	}
@@ -131,6 +261,27 @@ public class UserEntity {
 		return passwordSalt;
 	}
 
+	public byte[] getBinaryPasswordHash() {
+		return binaryPasswordHash;
+	}
+
+	public byte[] getBinaryPasswordSalt() {
+		return binaryPasswordSalt;
+	}
+
+	/**
+	 * Returns the user's password, read from the binary columns if they are
+	 * filled, otherwise from the text columns.
+	 * 
+	 * @since 0.2.0
+	 */
+	public UserPassword getPassword() {
+		if (binaryPasswordHash != null) {
+			return new UserPassword(binaryPasswordHash, binaryPasswordSalt);
+		}
+		return new UserPassword(passwordHash, passwordSalt);
+	}
+
 	public void setId(int id) {
 		this.id = id;
 	}
@@ -171,9 +322,41 @@ public class UserEntity {
 		this.passwordSalt = passwordSalt;
 	}
 
+	public void setBinaryPasswordHash(byte[] binaryPasswordHash) {
+		this.binaryPasswordHash = binaryPasswordHash;
+	}
+
+	public void setBinaryPasswordSalt(byte[] binaryPasswordSalt) {
+		this.binaryPasswordSalt = binaryPasswordSalt;
+	}
+
+	/**
+	 * Stores the given password either in the binary or in the text columns,
+	 * the other pair of columns is cleared. If the password has no binary form,
+	 * it is stored in the text columns.
+	 * 
+	 * @param password
+	 *            the password to store
+	 * @param binary
+	 *            true to prefer the binary columns
+	 * @since 0.2.0
+	 */
+	public void setPassword(UserPassword password, boolean binary) {
+		if (binary && password.isBinaryFormSupported()) {
+			binaryPasswordHash = password.getBinaryHash();
+			binaryPasswordSalt = password.getBinarySalt();
+			passwordHash = null;
+			passwordSalt = null;
+		} else {
+			passwordHash = password.getHash();
+			passwordSalt = password.getSalt();
+			binaryPasswordHash = null;
+			binaryPasswordSalt = null;
+		}
+	}
+
 	public User toUser() {
-		UserPassword password = new UserPassword(passwordHash, passwordSalt);
-		User result = new User(id, name, email, registrationControlCode, registrationConfirmed, password, rank);
+		User result = new User(id, name, email, registrationControlCode, registrationConfirmed, getPassword(), rank);
 		return result;
 	}
 
@@ -0,0 +1,29 @@
+-- Indexes of the usermodule-jpa tables.
+--
+-- The same indexes are declared on the entities, so schemas created by
+-- hibernate.hbm2ddl.auto already have them. Run this script on schemas
+-- created before version 0.2.0 or maintained by hand.
+
+CREATE INDEX um_user_email_idx ON um_user (email);
+CREATE INDEX um_user_name_idx ON um_user (name, id);
+CREATE INDEX um_user_reg_date_idx ON um_user (reg_date, id);
+CREATE INDEX um_user_rank_idx ON um_user (rank, id);
+CREATE INDEX um_login_record_user_time_idx ON um_login_record (user_id, date_time);
+CREATE INDEX um_password_reset_token_user_valid_time_idx ON um_password_reset_token (user_id, valid, date_time);
+
+-- Optional: unique emails and names of not deleted users.
+--
+-- Deleted users keep their email and name, which may be registered again,
+-- so a plain unique constraint can't be used. Databases with partial
+-- (filtered) indexes, e.g. PostgreSQL or SQL Server (use deleted = 0
+-- there), can enforce the uniqueness of the not deleted users instead of
+-- relying on the checks made before every registration, which can then be
+-- skipped (UserManagementProperties.isOptimisticRegistrationEnabled).
+-- Don't enable that property without these indexes, otherwise duplicate
+-- emails and names are registered:
+--
+-- CREATE UNIQUE INDEX um_user_email_uidx ON um_user (email) WHERE deleted = false;
+-- CREATE UNIQUE INDEX um_user_name_uidx ON um_user (name) WHERE deleted = false;
+--
+-- The unique indexes make um_user_email_idx and um_user_name_idx redundant
+-- for look ups of not deleted users.
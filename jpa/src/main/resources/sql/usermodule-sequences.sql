@@ -0,0 +1,26 @@
+-- Id sequences of the usermodule-jpa tables.
+--
+-- Since version 0.2.0, every table has its own sequence, from which ids are
+-- allocated in blocks of 50 (the allocationSize of the entities), so the
+-- sequences must be incremented by 50. Schemas created by
+-- hibernate.hbm2ddl.auto already have them. Earlier versions generated the
+-- ids of log in records and password reset tokens from the shared
+-- hibernate_sequence, one call per insert.
+--
+-- To migrate a schema created before version 0.2.0, stop the application,
+-- replace :start by a value at least 50 higher than the current value of
+-- hibernate_sequence (and the highest id in the table), and run:
+
+CREATE SEQUENCE um_login_record_id_seq START WITH :start INCREMENT BY 50;
+CREATE SEQUENCE um_password_reset_token_id_seq START WITH :start INCREMENT BY 50;
+
+-- um_user_id_seq must be incremented by 50 as well. If it was created with
+-- a different increment, change it (the ids allocated afterwards continue
+-- above the current value):
+--
+-- ALTER SEQUENCE um_user_id_seq INCREMENT BY 50;
+--
+-- A different block size can be set by sequence generators of the same
+-- names (um_user_id_seq, um_login_record_id_seq,
+-- um_password_reset_token_id_seq) in orm.xml, the sequences must then be
+-- incremented by the same value.
@@ -58,6 +58,9 @@ public class UMDatabaseTestCase extends DBTestCase {
 			actualTable = DefaultColumnFilter.excludedColumnsTable(actualTable, excludedColumns);
 		}
 
+		// columns missing in the expected data set are not compared
+		actualTable = DefaultColumnFilter.includedColumnsTable(actualTable, expectedTable.getTableMetaData().getColumns());
+
 		Assertion.assertEquals(expectedTable, actualTable);
 	}
 
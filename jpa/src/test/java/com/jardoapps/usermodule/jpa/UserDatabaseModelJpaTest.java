@@ -18,24 +18,45 @@
 
 package com.jardoapps.usermodule.jpa;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 
 import javax.inject.Inject;
 
 import org.dbunit.DatabaseUnitException;
 import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ReplacementDataSet;
+import org.junit.After;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.jardoapps.usermodule.ResultCode;
 import com.jardoapps.usermodule.User;
+import com.jardoapps.usermodule.UserCsvExportSink;
 import com.jardoapps.usermodule.UserDatabaseModel;
+import com.jardoapps.usermodule.UserExportSink;
 import com.jardoapps.usermodule.UserRanks;
+import com.jardoapps.usermodule.containers.LogInRecord;
 import com.jardoapps.usermodule.containers.PasswordResetToken;
+import com.jardoapps.usermodule.containers.PasswordUpgrade;
+import com.jardoapps.usermodule.containers.UserListFilter;
+import com.jardoapps.usermodule.containers.UserPage;
 import com.jardoapps.usermodule.containers.UserPassword;
+import com.jardoapps.usermodule.defines.UserListOrder;
 import com.jardoapps.usermodule.jpa.config.DatabaseTestConfig;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -45,6 +66,23 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 	@Inject
 	private UserDatabaseModel databaseModel;
 
+	@Inject
+	private UserDatabaseModelJpaPropertiesImpl properties;
+
+	@Inject
+	private PlatformTransactionManager transactionManager;
+
+	@After
+	public void tearDown() {
+		properties.setBinaryPasswordStorageEnabled(false);
+		properties.setPasswordResetTokenTrackingEnabled(false);
+		properties.setRegisteredUserFilterEnabled(false);
+		((UserDatabaseModelJpa) databaseModel).reloadPasswordResetTokenUsers();
+		properties.setUserNameIndexEnabled(false);
+		((UserDatabaseModelJpa) databaseModel).reloadRegisteredUserFilter();
+		((UserDatabaseModelJpa) databaseModel).reloadUserNameIndex();
+	}
+
 	@Test
 	public void testAddPasswordResetToken() throws SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/beforeAddPasswordResetToken.xml");
@@ -77,6 +115,125 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertTableContent(expectedDataSet, "um_user", new String[] { "reg_date" });
 	}
 
+	@Test
+	public void testAddUserDuplicate() throws SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeAddUser.xml");
+		// new ids above the ones in the data set
+		getConnection().getConnection().prepareStatement("ALTER SEQUENCE um_user_id_seq RESTART WITH 100").execute();
+		getConnection().getConnection().prepareStatement("ALTER TABLE um_user ADD CONSTRAINT um_user_email_uq UNIQUE (email)").execute();
+		getConnection().getConnection().prepareStatement("ALTER TABLE um_user ADD CONSTRAINT um_user_name_uq UNIQUE (name)").execute();
+
+		try {
+			UserPassword password = new UserPassword("ea1baa4cad9d822a51a1aa267a618fb2ac6d5d98a89709a595487ea493a69e90",
+					"7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008");
+
+			User user = new User(0, "john", "carl@test.com", "ea587b759f423f0bfadfe7aeba0ee3fe", false, password, UserRanks.NORMAL_USER);
+			assertEquals(UserDatabaseModel.ADD_USER_NAME_ALREADY_REGISTERED, databaseModel.addUser(user));
+
+			user = new User(0, "carl", "mike@test.com", "ea587b759f423f0bfadfe7aeba0ee3fe", false, password, UserRanks.NORMAL_USER);
+			assertEquals(UserDatabaseModel.ADD_USER_EMAIL_ALREADY_REGISTERED, databaseModel.addUser(user));
+
+			user = new User(0, "carl", "carl@test.com", "ea587b759f423f0bfadfe7aeba0ee3fe", false, password, UserRanks.NORMAL_USER);
+			assertTrue(databaseModel.addUser(user) > 0);
+			assertEquals(4, getConnection().getRowCount("um_user"));
+		} finally {
+			getConnection().getConnection().prepareStatement("ALTER TABLE um_user DROP CONSTRAINT um_user_email_uq").execute();
+			getConnection().getConnection().prepareStatement("ALTER TABLE um_user DROP CONSTRAINT um_user_name_uq").execute();
+		}
+	}
+
+	@Test
+	public void testAddUserDuplicateInTransaction() throws SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeAddUser.xml");
+		getConnection().getConnection().prepareStatement("ALTER SEQUENCE um_user_id_seq RESTART WITH 100").execute();
+		getConnection().getConnection().prepareStatement("ALTER TABLE um_user ADD CONSTRAINT um_user_email_uq UNIQUE (email)").execute();
+
+		try {
+			final UserPassword password = new UserPassword("ea1baa4cad9d822a51a1aa267a618fb2ac6d5d98a89709a595487ea493a69e90",
+					"7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008");
+
+			// the conflict is found although the caller's transaction is marked for rollback
+			new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					User user = new User(-1, "carl", "mike@test.com", "ea587b759f423f0bfadfe7aeba0ee3fe", false, password, UserRanks.NORMAL_USER);
+					assertEquals(UserDatabaseModel.ADD_USER_EMAIL_ALREADY_REGISTERED, databaseModel.addUser(user));
+					status.setRollbackOnly();
+				}
+			});
+			assertEquals(3, getConnection().getRowCount("um_user"));
+		} finally {
+			getConnection().getConnection().prepareStatement("ALTER TABLE um_user DROP CONSTRAINT um_user_email_uq").execute();
+		}
+	}
+
+	@Test
+	public void testAddUserFailedNotRemembered() throws SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeAddUser.xml");
+		getConnection().getConnection().prepareStatement("ALTER SEQUENCE um_user_id_seq RESTART WITH 100").execute();
+		getConnection().getConnection().prepareStatement("ALTER TABLE um_user ADD CONSTRAINT um_user_email_uq UNIQUE (email)").execute();
+		properties.setUserNameIndexEnabled(true);
+		properties.setRegisteredUserFilterEnabled(true);
+
+		try {
+			UserPassword password = new UserPassword("ea1baa4cad9d822a51a1aa267a618fb2ac6d5d98a89709a595487ea493a69e90",
+					"7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008");
+
+			User user = new User(-1, "carl", "mike@test.com", "ea587b759f423f0bfadfe7aeba0ee3fe", false, password, UserRanks.NORMAL_USER);
+			assertEquals(UserDatabaseModel.ADD_USER_EMAIL_ALREADY_REGISTERED, databaseModel.addUser(user));
+			assertEquals(false, databaseModel.isUserNameRegistered("carl"));
+			assertEquals(ResultCode.OK, databaseModel.checkRegistrationAvailability("carl@test.com", "carl"));
+
+			// the whole import is rolled back
+			User tony = new User(-1, "tony", "tony@test.com", "029b50deea7a25c41e489e6ee3635e52", false, password, UserRanks.NORMAL_USER);
+			try {
+				databaseModel.addUsers(Arrays.asList(tony, user));
+				fail("Duplicate email inserted.");
+			} catch (RuntimeException e) {
+				// expected
+			}
+			assertEquals(3, getConnection().getRowCount("um_user"));
+			assertEquals(false, databaseModel.isUserNameRegistered("tony"));
+			assertEquals(ResultCode.OK, databaseModel.checkRegistrationAvailability("tony@test.com", "tony"));
+
+			user = new User(-1, "carl", "carl@test.com", "ea587b759f423f0bfadfe7aeba0ee3fe", false, password, UserRanks.NORMAL_USER);
+			assertTrue(databaseModel.addUser(user) > 0);
+			assertEquals(true, databaseModel.isUserNameRegistered("carl"));
+		} finally {
+			getConnection().getConnection().prepareStatement("ALTER TABLE um_user DROP CONSTRAINT um_user_email_uq").execute();
+		}
+	}
+
+	@Test
+	public void testAddUsers() throws SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeAddUser.xml");
+		// new ids above the ones in the data set
+		getConnection().getConnection().prepareStatement("ALTER SEQUENCE um_user_id_seq RESTART WITH 100").execute();
+		properties.setUserNameIndexEnabled(true);
+
+		UserPassword password = new UserPassword("ea1baa4cad9d822a51a1aa267a618fb2ac6d5d98a89709a595487ea493a69e90",
+				"7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008");
+		User carl = new User(-1, "carl", "carl@test.com", "ea587b759f423f0bfadfe7aeba0ee3fe", true, password, UserRanks.NORMAL_USER);
+		User tony = new User(-1, null, "tony@test.com", "029b50deea7a25c41e489e6ee3635e52", false, password, UserRanks.ADMIN);
+
+		assertEquals(true, databaseModel.addUsers(Arrays.asList(carl, tony)));
+		assertEquals(5, getConnection().getRowCount("um_user"));
+
+		User result = databaseModel.getUserByEmail("carl@test.com");
+		assertEquals("carl", result.getName());
+		assertEquals(true, result.isRegistrationConfirmed());
+		assertEquals("ea1baa4cad9d822a51a1aa267a618fb2ac6d5d98a89709a595487ea493a69e90", result.getPassword().getHash());
+
+		result = databaseModel.getUserByEmail("tony@test.com");
+		assertEquals(null, result.getName());
+		assertEquals(false, result.isRegistrationConfirmed());
+		assertEquals(UserRanks.ADMIN, result.getRank());
+
+		// the user name index is updated as well
+		assertEquals(true, databaseModel.isUserNameRegistered("carl"));
+	}
+
 	@Test
 	public void testCancelAllPasswordResetTokens() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/beforeCancelAllPasswordResetTokens.xml");
@@ -86,6 +243,30 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertTableContent(expectedDataSet, "um_password_reset_token", new String[] { "id" });
 	}
 
+	@Test
+	public void testCancelAllPasswordResetTokensTracked() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeCancelAllPasswordResetTokens.xml");
+		properties.setPasswordResetTokenTrackingEnabled(true);
+
+		// loads users 1 and 2, forgets user 2 after the update
+		databaseModel.cancelAllPasswordResetTokens(2);
+
+		// user 2 gets a valid token behind the model's back, so it is not updated
+		fillDatabase("userDatabaseModelHbnTest/beforeCancelAllPasswordResetTokens.xml");
+		databaseModel.cancelAllPasswordResetTokens(2);
+		databaseModel.cancelAllPasswordResetTokens(1);
+
+		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterCancelAllPasswordResetTokens.xml");
+		assertTableContent(expectedDataSet, "um_password_reset_token", new String[] { "id" });
+
+		// tokens added through the model are tracked
+		fillDatabase("userDatabaseModelHbnTest/beforeAddPasswordResetToken.xml");
+		((UserDatabaseModelJpa) databaseModel).reloadPasswordResetTokenUsers();
+		databaseModel.addPasswordResetToken(new PasswordResetToken(1, "ea587b759f423f0bfadfe7aeba0ee3fe", new Date()));
+		databaseModel.cancelAllPasswordResetTokens(1);
+		assertEquals(0, getConnection().getRowCount("um_password_reset_token", "WHERE valid = true"));
+	}
+
 	@Test
 	public void testConfirmUserRegistration() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/beforeConfirmRegistration.xml");
@@ -95,6 +276,24 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertTableContent(expectedDataSet, "um_user", new String[] {});
 	}
 
+	@Test
+	public void testConfirmUserRegistrationAndSetPassword() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeSetUserPassword.xml");
+
+		UserPassword password = new UserPassword("362ec39d4e116faba4f8727a5e8386cfc796cfe0d9f94ac048cf90ac0b33e571",
+				"cda7fa19837cab6fc8fcefec2b8a4e2cfddd29fcbafffba420e262a41ac2a17f");
+
+		// non-existing user
+		boolean result = databaseModel.confirmUserRegistrationAndSetPassword(5, password);
+		assertEquals(false, result);
+
+		result = databaseModel.confirmUserRegistrationAndSetPassword(2, password);
+		assertEquals(true, result);
+
+		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterConfirmRegistrationAndSetPassword.xml");
+		assertTableContent(expectedDataSet, "um_user", new String[] {});
+	}
+
 	@Test
 	public void testDeleteUser() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/beforeDeleteUser.xml");
@@ -170,6 +369,33 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertEquals(1, result.getId());
 	}
 
+	@Test
+	public void testGetUserForLogIn() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		assertEquals(null, databaseModel.getUserForLogIn("non-existing@test.com", true));
+		assertEquals(null, databaseModel.getUserForLogIn("john", true));
+		assertEquals(null, databaseModel.getUserForLogIn("john@test.com", false));
+
+		// deleted user
+		assertEquals(null, databaseModel.getUserForLogIn("allan", false));
+
+		User result = databaseModel.getUserForLogIn("john@test.com", true);
+		assertNotNull(result);
+		assertEquals(1, result.getId());
+		assertEquals("john", result.getName());
+		assertEquals("john@test.com", result.getEmail());
+		assertEquals(true, result.isRegistrationConfirmed());
+		assertEquals(2, result.getRank());
+		assertEquals(databaseModel.getUserPassword(1).getHash(), result.getPassword().getHash());
+		assertEquals(databaseModel.getUserPassword(1).getSalt(), result.getPassword().getSalt());
+
+		result = databaseModel.getUserForLogIn("mike", false);
+		assertNotNull(result);
+		assertEquals(2, result.getId());
+		assertEquals(false, result.isRegistrationConfirmed());
+	}
+
 	@Test
 	public void testGetUserIdByEmail() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/userList.xml");
@@ -222,6 +448,142 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertEquals(true, result);
 	}
 
+	@Test
+	public void testExportUsers() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		// allan is deleted
+		StringWriter writer = new StringWriter();
+		assertEquals(2, databaseModel.exportUsers(new UserCsvExportSink(writer)));
+		assertEquals(UserCsvExportSink.HEADER + "\r\n"
+				+ "1,john@test.com,john,true,2\r\n"
+				+ "2,mike@test.com,mike,false,2\r\n", writer.toString());
+	}
+
+	@Test(expected = IOException.class)
+	public void testExportUsersSinkFailure() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		databaseModel.exportUsers(new UserExportSink() {
+
+			@Override
+			public void write(User user) throws IOException {
+				throw new IOException("Disk full.");
+			}
+		});
+	}
+
+	@Test
+	public void testFindRegisteredEmails() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		// allan is deleted, mike is not confirmed
+		HashSet<String> expected = new HashSet<>(Arrays.asList("john@test.com", "mike@test.com"));
+		assertEquals(expected, databaseModel.findRegisteredEmails(Arrays.asList("non-existing@test.com", "allan@test.com", "mike@test.com", "john@test.com")));
+		assertEquals(Collections.emptySet(), databaseModel.findRegisteredEmails(Arrays.asList("non-existing@test.com")));
+		assertEquals(Collections.emptySet(), databaseModel.findRegisteredEmails(Collections.<String> emptyList()));
+
+		properties.setRegisteredUserFilterEnabled(true);
+		assertEquals(expected, databaseModel.findRegisteredEmails(Arrays.asList("non-existing@test.com", "allan@test.com", "mike@test.com", "john@test.com")));
+	}
+
+	@Test
+	public void testFindRegisteredUserNames() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		HashSet<String> expected = new HashSet<>(Arrays.asList("john", "mike"));
+		assertEquals(expected, databaseModel.findRegisteredUserNames(Arrays.asList("non-existing", "allan", "mike", "john")));
+		assertEquals(Collections.emptySet(), databaseModel.findRegisteredUserNames(Collections.<String> emptyList()));
+
+		properties.setRegisteredUserFilterEnabled(true);
+		assertEquals(expected, databaseModel.findRegisteredUserNames(Arrays.asList("non-existing", "allan", "mike", "john")));
+
+		properties.setUserNameIndexEnabled(true);
+		assertEquals(expected, databaseModel.findRegisteredUserNames(Arrays.asList("non-existing", "allan", "mike", "john")));
+	}
+
+	@Test
+	public void testRegisteredUserFilter() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+		properties.setRegisteredUserFilterEnabled(true);
+
+		assertEquals(false, databaseModel.isEmailRegistered("non-existing@test.com"));
+		assertEquals(false, databaseModel.isEmailRegistered("allan@test.com"));
+		assertEquals(true, databaseModel.isEmailRegistered("john@test.com"));
+		assertEquals(false, databaseModel.isUserNameRegistered("non-existing"));
+		assertEquals(true, databaseModel.isUserNameRegistered("mike"));
+
+		// users added behind the model's back are found after the filter is reloaded
+		fillDatabase("userDatabaseModelHbnTest/beforeAddPasswordResetToken.xml");
+		((UserDatabaseModelJpa) databaseModel).reloadRegisteredUserFilter();
+		assertEquals(false, databaseModel.isEmailRegistered("mike@test.com"));
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+		assertEquals(false, databaseModel.isEmailRegistered("mike@test.com"));
+		((UserDatabaseModelJpa) databaseModel).reloadRegisteredUserFilter();
+		assertEquals(true, databaseModel.isEmailRegistered("mike@test.com"));
+	}
+
+	@Test
+	public void testStart() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+		properties.setUserNameIndexEnabled(true);
+		((UserDatabaseModelJpa) databaseModel).start();
+
+		// the index was loaded by start, so users deleted since then are still found
+		fillDatabase("userDatabaseModelHbnTest/beforeAddPasswordResetToken.xml");
+		assertEquals(true, databaseModel.isUserNameRegistered("mike"));
+		((UserDatabaseModelJpa) databaseModel).reloadUserNameIndex();
+		assertEquals(false, databaseModel.isUserNameRegistered("mike"));
+	}
+
+	@Test
+	public void testFindUserNamesByPrefix() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeDeleteUser.xml");
+		UserDatabaseModelJpa databaseModelJpa = (UserDatabaseModelJpa) databaseModel;
+
+		assertEquals(Arrays.asList("john"), databaseModelJpa.findUserNamesByPrefix("jo", 10));
+		assertEquals(Arrays.asList("john", "mike"), databaseModelJpa.findUserNamesByPrefix("", 10));
+		assertEquals(Arrays.asList(), databaseModelJpa.findUserNamesByPrefix("j%", 10));
+
+		properties.setUserNameIndexEnabled(true);
+		assertEquals(Arrays.asList("john"), databaseModelJpa.findUserNamesByPrefix("jo", 10));
+		assertEquals(Arrays.asList("john", "mike"), databaseModelJpa.findUserNamesByPrefix("", 10));
+		assertEquals(true, databaseModel.isUserNameRegistered("mike"));
+		assertEquals(false, databaseModel.isUserNameRegistered("allan"));
+
+		databaseModel.deleteUser(2);
+		assertEquals(false, databaseModel.isUserNameRegistered("mike"));
+		assertEquals(Arrays.asList("john"), databaseModelJpa.findUserNamesByPrefix("", 10));
+	}
+
+	@Test
+	public void testDeleteUserRolledBack() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeDeleteUser.xml");
+		properties.setUserNameIndexEnabled(true);
+		assertEquals(true, databaseModel.isUserNameRegistered("mike"));
+
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		transaction.execute(new TransactionCallbackWithoutResult() {
+
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				assertEquals(true, databaseModel.deleteUser(2));
+				status.setRollbackOnly();
+			}
+		});
+		assertEquals(true, databaseModel.isUserNameRegistered("mike"));
+		assertEquals(ResultCode.USER_NAME_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("carl@test.com", "mike"));
+
+		transaction.execute(new TransactionCallbackWithoutResult() {
+
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				assertEquals(true, databaseModel.deleteUser(2));
+			}
+		});
+		assertEquals(false, databaseModel.isUserNameRegistered("mike"));
+	}
+
 	@Test
 	public void testIsUserNameRegistered() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/userList.xml");
@@ -241,6 +603,104 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertEquals(true, result);
 	}
 
+	@Test
+	public void testCheckRegistrationAvailability() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/userList.xml");
+
+		assertEquals(ResultCode.OK, databaseModel.checkRegistrationAvailability("non-existing@test.com", "non-existing"));
+		assertEquals(ResultCode.OK, databaseModel.checkRegistrationAvailability("non-existing@test.com", null));
+
+		// deleted user
+		assertEquals(ResultCode.OK, databaseModel.checkRegistrationAvailability("allan@test.com", "allan"));
+
+		assertEquals(ResultCode.EMAIL_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("mike@test.com", "non-existing"));
+		assertEquals(ResultCode.EMAIL_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("mike@test.com", null));
+		assertEquals(ResultCode.USER_NAME_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("non-existing@test.com", "mike"));
+		assertEquals(ResultCode.USER_NAME_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("john@test.com", "mike"));
+
+		properties.setRegisteredUserFilterEnabled(true);
+		properties.setUserNameIndexEnabled(true);
+		assertEquals(ResultCode.OK, databaseModel.checkRegistrationAvailability("non-existing@test.com", "non-existing"));
+		assertEquals(ResultCode.EMAIL_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("mike@test.com", "non-existing"));
+		assertEquals(ResultCode.USER_NAME_ALREADY_REGISTERED, databaseModel.checkRegistrationAvailability("john@test.com", "mike"));
+	}
+
+	private static void assertUserIds(UserPage page, Integer... expectedIds) {
+		List<User> users = page.getUsers();
+		assertEquals(expectedIds.length, users.size());
+		for (int i = 0; i < expectedIds.length; i++) {
+			assertEquals(expectedIds[i].intValue(), users.get(i).getId());
+		}
+	}
+
+	@Test
+	public void testListUsers() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeListUsers.xml");
+
+		// allan is deleted
+		UserPage page = databaseModel.listUsers(UserListFilter.ALL, UserListOrder.ID, null, 2);
+		assertUserIds(page, 1, 2);
+		User user = page.getUsers().get(0);
+		assertEquals("john", user.getName());
+		assertEquals("john@test.com", user.getEmail());
+		assertEquals(true, user.isRegistrationConfirmed());
+		assertEquals(2, user.getRank());
+		assertEquals(null, user.getPassword());
+		page = databaseModel.listUsers(UserListFilter.ALL, UserListOrder.ID, page.getNextPageToken(), 2);
+		assertUserIds(page, 4, 5);
+		page = databaseModel.listUsers(UserListFilter.ALL, UserListOrder.ID, page.getNextPageToken(), 2);
+		assertUserIds(page, 6);
+		assertEquals(null, page.getNextPageToken());
+
+		// carl has no name
+		page = databaseModel.listUsers(UserListFilter.ALL, UserListOrder.NAME, null, 2);
+		assertUserIds(page, 5, 6);
+		page = databaseModel.listUsers(UserListFilter.ALL, UserListOrder.NAME, page.getNextPageToken(), 2);
+		assertUserIds(page, 1, 2);
+		assertEquals(null, page.getNextPageToken());
+
+		// dave has no registration date, mike, carl and bob registered at the same time
+		page = databaseModel.listUsers(UserListFilter.ALL, UserListOrder.REGISTRATION_DATE, null, 2);
+		assertUserIds(page, 1, 2);
+		page = databaseModel.listUsers(UserListFilter.ALL, UserListOrder.REGISTRATION_DATE, page.getNextPageToken(), 2);
+		assertUserIds(page, 4, 5);
+		assertEquals(null, page.getNextPageToken());
+	}
+
+	@Test
+	public void testListUsersFiltered() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeListUsers.xml");
+
+		UserPage page = databaseModel.listUsers(new UserListFilter(1, null), UserListOrder.ID, null, 2);
+		assertUserIds(page, 4, 5);
+		assertEquals(null, page.getNextPageToken());
+
+		page = databaseModel.listUsers(new UserListFilter(null, false), UserListOrder.REGISTRATION_DATE, null, 2);
+		assertUserIds(page, 2);
+		assertEquals(null, page.getNextPageToken());
+
+		page = databaseModel.listUsers(new UserListFilter(2, true), UserListOrder.NAME, null, 1);
+		assertUserIds(page, 6);
+		page = databaseModel.listUsers(new UserListFilter(2, true), UserListOrder.NAME, page.getNextPageToken(), 1);
+		assertUserIds(page, 1);
+		assertEquals(null, page.getNextPageToken());
+	}
+
+	@Test
+	public void testListUsersInvalidPageToken() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeListUsers.xml");
+
+		String nameToken = databaseModel.listUsers(UserListFilter.ALL, UserListOrder.NAME, null, 1).getNextPageToken();
+		for (String pageToken : Arrays.asList(nameToken, "", "x", "i", "d1:abc:0")) {
+			try {
+				databaseModel.listUsers(UserListFilter.ALL, UserListOrder.REGISTRATION_DATE, pageToken, 2);
+				fail("Page token accepted: " + pageToken);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
 	@Test
 	public void testMakeLogInRecord() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/beforeMakeLogInRecord.xml");
@@ -252,6 +712,41 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertTableContent(expectedDataSet, "um_login_record", new String[] { "date_time", "id" });
 	}
 
+	@Test
+	public void testMakeLogInRecords() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeMakeLogInRecord.xml");
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		LogInRecord record1 = new LogInRecord(1, false, "0000:0000:0000:0000:0000:0000:192.168.255.255", dateFormat.parse("2013-01-01 10:00:00"));
+		LogInRecord record2 = new LogInRecord(2, true, "195.210.29.1", dateFormat.parse("2013-01-02 10:00:00"));
+
+		boolean result = databaseModel.makeLogInRecords(Arrays.asList(record1, record2));
+		assertEquals(true, result);
+
+		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterMakeLogInRecords.xml");
+		assertTableContent(expectedDataSet, "um_login_record", new String[] { "id" });
+	}
+
+	@Test
+	public void testResetUserPassword() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeResetUserPassword.xml");
+
+		UserPassword password = new UserPassword("362ec39d4e116faba4f8727a5e8386cfc796cfe0d9f94ac048cf90ac0b33e571",
+				"cda7fa19837cab6fc8fcefec2b8a4e2cfddd29fcbafffba420e262a41ac2a17f");
+
+		// non-existing and deleted user
+		assertEquals(ResultCode.NO_SUCH_USER, databaseModel.resetUserPassword(5, password));
+		assertEquals(ResultCode.NO_SUCH_USER, databaseModel.resetUserPassword(3, password));
+
+		assertEquals(ResultCode.OK, databaseModel.resetUserPassword(1, password));
+
+		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterSetUserPassword.xml");
+		assertTableContent(expectedDataSet, "um_user", new String[] {});
+
+		expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterCancelAllPasswordResetTokens.xml");
+		assertTableContent(expectedDataSet, "um_password_reset_token", new String[] { "id" });
+	}
+
 	@Test
 	public void testSetUserPassword() throws DatabaseUnitException, SQLException, Exception {
 		fillDatabase("userDatabaseModelHbnTest/beforeSetUserPassword.xml");
@@ -270,4 +765,78 @@ public class UserDatabaseModelJpaTest extends UMDatabaseTestCase {
 		assertTableContent(expectedDataSet, "um_user", new String[] {});
 	}
 
+	@Test
+	public void testUpgradeUserPasswords() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeSetUserPassword.xml");
+
+		UserPassword johnsPassword = new UserPassword("7342f7c8d3d1d68ee7c03ab72b3deac613b837a4c4c07042cbeca974ea7ba218",
+				"7886788cb39bf33c856ef18206a81ce4b498dc5a1a4199abc0cb0fb686eab008");
+		UserPassword outdatedMikesPassword = new UserPassword("0000000000000000000000000000000000000000000000000000000000000000",
+				"53c97685a57fe4207f3bfacfd79990a55e6e3e7da086cad77fd9b6e3d374a958");
+		UserPassword newPassword = new UserPassword("pbkdf2-sha256$1000$a2f1b1ce9e2c5b8d3b4e7c0c2f2f0e9e2d4a6a8c0b5f4b2e8e6a3c1d9f7b5a31",
+				"cda7fa19837cab6fc8fcefec2b8a4e2cfddd29fcbafffba420e262a41ac2a17f");
+
+		// mike's password has been changed in the meantime, so it must not be replaced
+		boolean result = databaseModel.upgradeUserPasswords(Arrays.asList(new PasswordUpgrade(1, johnsPassword, newPassword), new PasswordUpgrade(2,
+				outdatedMikesPassword, newPassword)));
+		assertEquals(true, result);
+
+		IDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterUpgradeUserPasswords.xml");
+		assertTableContent(expectedDataSet, "um_user", new String[] {});
+	}
+
+	@Test
+	public void testSetUserPasswordBinary() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeSetUserPassword.xml");
+		properties.setBinaryPasswordStorageEnabled(true);
+
+		UserPassword password = new UserPassword("362ec39d4e116faba4f8727a5e8386cfc796cfe0d9f94ac048cf90ac0b33e571",
+				"cda7fa19837cab6fc8fcefec2b8a4e2cfddd29fcbafffba420e262a41ac2a17f");
+
+		boolean result = databaseModel.setUserPassword(1, password);
+		assertEquals(true, result);
+
+		ReplacementDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterSetUserPasswordBinary.xml");
+		expectedDataSet.addReplacementObject("[NULL]", null);
+		assertTableContent(expectedDataSet, "um_user", new String[] {});
+
+		UserPassword storedPassword = databaseModel.getUserPassword(1);
+		assertEquals(password.getHash(), storedPassword.getHash());
+		assertEquals(password.getSalt(), storedPassword.getSalt());
+
+		// the binary row is replaced only if it still holds the old password
+		UserPassword newPassword = new UserPassword("97cef022dc5bf988dab7f20f57b361f9e867bf2f67aedc78ae24c555b1eececf",
+				"53c97685a57fe4207f3bfacfd79990a55e6e3e7da086cad77fd9b6e3d374a958");
+		databaseModel.upgradeUserPasswords(Arrays.asList(new PasswordUpgrade(1, newPassword, password)));
+		assertEquals(password.getHash(), databaseModel.getUserByEmail("john@test.com").getPassword().getHash());
+
+		databaseModel.upgradeUserPasswords(Arrays.asList(new PasswordUpgrade(1, password, newPassword)));
+		assertEquals(newPassword.getHash(), databaseModel.getUserByEmail("john@test.com").getPassword().getHash());
+	}
+
+	@Test
+	public void testConvertUserPasswords() throws DatabaseUnitException, SQLException, Exception {
+		fillDatabase("userDatabaseModelHbnTest/beforeConvertUserPasswords.xml");
+		UserDatabaseModelJpa databaseModelJpa = (UserDatabaseModelJpa) databaseModel;
+
+		properties.setBinaryPasswordStorageEnabled(true);
+		assertEquals(2, databaseModelJpa.convertUserPasswords(0, 2));
+		assertEquals(4, databaseModelJpa.convertUserPasswords(2, 2));
+		assertEquals(0, databaseModelJpa.convertUserPasswords(4, 2));
+
+		ReplacementDataSet expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/afterConvertUserPasswords.xml");
+		expectedDataSet.addReplacementObject("[NULL]", null);
+		assertTableContent(expectedDataSet, "um_user", new String[] {});
+
+		User user = databaseModel.getUserByEmail("mike@test.com");
+		assertEquals("pbkdf2-sha256$1000$a2f1b1ce9e2c5b8d3b4e7c0c2f2f0e9e2d4a6a8c0b5f4b2e8e6a3c1d9f7b5a31", user.getPassword().getHash());
+		assertEquals("53c97685a57fe4207f3bfacfd79990a55e6e3e7da086cad77fd9b6e3d374a958", user.getPassword().getSalt());
+
+		properties.setBinaryPasswordStorageEnabled(false);
+		assertEquals(3, databaseModelJpa.convertUserPasswords(0, 10));
+
+		expectedDataSet = loadFlatXmlDataSet("userDatabaseModelHbnTest/beforeConvertUserPasswords.xml");
+		assertTableContent(expectedDataSet, "um_user", new String[] {});
+	}
+
 }
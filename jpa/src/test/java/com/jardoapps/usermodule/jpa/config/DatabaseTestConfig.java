@@ -8,11 +8,12 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import com.jardoapps.usermodule.UserDatabaseModel;
 import com.jardoapps.usermodule.jpa.UserDatabaseModelJpa;
+import com.jardoapps.usermodule.jpa.UserDatabaseModelJpaPropertiesImpl;
 import com.jardoapps.usermodule.jpa.dao.LogInRecordEntityDao;
 import com.jardoapps.usermodule.jpa.dao.PasswordResetTokenEntityDao;
 import com.jardoapps.usermodule.jpa.dao.UserEntityDao;
 
-@EnableTransactionManagement
+@EnableTransactionManagement(proxyTargetClass = true)
 @Import(DatasourceConfig.class)
 @PropertySource("classpath:database_test.properties")
 public class DatabaseTestConfig {
@@ -28,6 +29,11 @@ public class DatabaseTestConfig {
 		return new UserDatabaseModelJpa();
 	}
 
+	@Bean
+	public UserDatabaseModelJpaPropertiesImpl getUserDatabaseModelJpaProperties() {
+		return new UserDatabaseModelJpaPropertiesImpl();
+	}
+
 	@Bean
 	public LogInRecordEntityDao getLogInRecordEntityDao() {
 		return new LogInRecordEntityDao();
@@ -49,6 +49,7 @@ public class DatasourceConfig {
 		Properties props = new Properties();
 		props.put("hibernate.dialect", dialect);
 		props.put("hibernate.hbm2ddl.auto", ddl);
+		props.put("hibernate.jdbc.batch_size", "50");
 		if (defaultSchema != null) {
 			props.put("hibernate.default_schema", defaultSchema);
 		}